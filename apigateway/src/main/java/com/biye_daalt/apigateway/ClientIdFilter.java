@@ -0,0 +1,47 @@
+package com.biye_daalt.apigateway;
+
+import org.springframework.cloud.gateway.filter.GatewayFilterChain;
+import org.springframework.cloud.gateway.filter.GlobalFilter;
+import org.springframework.core.Ordered;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Mono;
+
+import java.net.InetSocketAddress;
+
+/**
+ * Sets {@code X-Client-Id} on every routed request to the caller's address,
+ * replacing whatever the caller sent. The code execution service queues
+ * executions fairly per client by this header, so callers must not be able
+ * to pick or rotate it.
+ */
+@Component
+public class ClientIdFilter implements GlobalFilter, Ordered {
+
+    static final String CLIENT_HEADER = "X-Client-Id";
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, GatewayFilterChain chain) {
+        String clientId = clientAddress(exchange.getRequest().getRemoteAddress());
+        ServerHttpRequest request = exchange.getRequest()
+                .mutate()
+                .headers(headers -> headers.set(CLIENT_HEADER, clientId))
+                .build();
+        return chain.filter(exchange.mutate().request(request).build());
+    }
+
+    private static String clientAddress(InetSocketAddress remoteAddress) {
+        if (remoteAddress == null) {
+            return "unknown";
+        }
+        return remoteAddress.getAddress() != null
+                ? remoteAddress.getAddress().getHostAddress()
+                : remoteAddress.getHostString();
+    }
+
+    @Override
+    public int getOrder() {
+        return Ordered.HIGHEST_PRECEDENCE;
+    }
+}
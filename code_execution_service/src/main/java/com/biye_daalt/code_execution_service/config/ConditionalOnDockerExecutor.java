@@ -0,0 +1,23 @@
+package com.biye_daalt.code_execution_service.config;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks beans that talk to Docker daemons (clients, pools, warmup, the events
+ * subscription and the Docker backend itself). They are only created when
+ * {@code execution.executor} is {@code docker}, the default, so that the
+ * service starts, reports UP and runs with the local backend on a host
+ * without a daemon.
+ */
+@Target({ElementType.TYPE, ElementType.METHOD})
+@Retention(RetentionPolicy.RUNTIME)
+@Documented
+@ConditionalOnProperty(name = "execution.executor", havingValue = "docker", matchIfMissing = true)
+public @interface ConditionalOnDockerExecutor {
+}
@@ -6,29 +6,133 @@ import com.github.dockerjava.core.DockerClientConfig;
 import com.github.dockerjava.core.DockerClientImpl;
 import com.github.dockerjava.httpclient5.ApacheDockerHttpClient;
 import com.github.dockerjava.transport.DockerHttpClient;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
 import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
 
+/**
+ * Connects to the Docker daemons sandboxes run on. {@code docker.hosts} lists
+ * them as {@code host|weight} entries separated by commas (the weight is
+ * optional, default 1); if it is empty the single {@code docker.host} (or
+ * {@code DOCKER_HOST}) is used.
+ * <p>
+ * Each daemon gets two clients, each with its own connection pool:
+ * <ul>
+ *   <li>a control client for short calls such as create, start, kill, copy
+ *   and remove;</li>
+ *   <li>a streaming client for calls that hold a connection for as long as a
+ *   program runs: followed logs, exec streams and the events
+ *   subscription.</li>
+ * </ul>
+ * That way a pile-up of long-lived streams cannot make control calls queue
+ * for a connection, and streams are not cut off by the control timeout.
+ */
+@ConditionalOnDockerExecutor
 @Configuration
 public class DockerConfig {
+
+    @Value("${docker.hosts:}")
+    private String dockerHosts;
+
     @Value("${docker.host:#{null}}")
     private String dockerHost;
 
+    @Value("${docker.control.max-connections:50}")
+    private int controlMaxConnections;
+
+    @Value("${docker.control.connection-timeout-seconds:30}")
+    private long controlConnectionTimeoutSeconds;
+
+    @Value("${docker.control.response-timeout-seconds:45}")
+    private long controlResponseTimeoutSeconds;
+
+    @Value("${docker.streaming.max-connections:200}")
+    private int streamingMaxConnections;
+
+    @Value("${docker.streaming.connection-timeout-seconds:30}")
+    private long streamingConnectionTimeoutSeconds;
+
+    // 0 disables the timeout: an idle stream (e.g. no events for a while) is not an error
+    @Value("${docker.streaming.response-timeout-seconds:0}")
+    private long streamingResponseTimeoutSeconds;
+
     @Bean
-    public DockerClient dockerClient() {
+    public List<DockerDaemon> dockerDaemons(MeterRegistry meterRegistry) {
+        List<DockerDaemon> daemons = new ArrayList<>();
+        if (dockerHosts == null || dockerHosts.isBlank()) {
+            String host = dockerHost != null ? dockerHost : System.getenv("DOCKER_HOST");
+            daemons.add(connect("daemon-0", host, 1, meterRegistry));
+            return daemons;
+        }
+        for (String entry : dockerHosts.split(",")) {
+            if (entry.isBlank()) {
+                continue;
+            }
+            String[] parts = entry.trim().split("\\|");
+            int weight = parts.length > 1 ? Integer.parseInt(parts[1].trim()) : 1;
+            daemons.add(connect("daemon-" + daemons.size(), parts[0].trim(), weight, meterRegistry));
+        }
+        return daemons;
+    }
+
+    private DockerDaemon connect(String id, String host, int weight, MeterRegistry meterRegistry) {
+        return new DockerDaemon(
+                id,
+                host,
+                weight,
+                buildClient(
+                        host,
+                        id,
+                        "control",
+                        controlMaxConnections,
+                        controlConnectionTimeoutSeconds,
+                        controlResponseTimeoutSeconds,
+                        meterRegistry
+                ),
+                buildClient(
+                        host,
+                        id,
+                        "streaming",
+                        streamingMaxConnections,
+                        streamingConnectionTimeoutSeconds,
+                        streamingResponseTimeoutSeconds,
+                        meterRegistry
+                )
+        );
+    }
+
+    private DockerClient buildClient(
+            String host,
+            String daemonId,
+            String transport,
+            int maxConnections,
+            long connectionTimeoutSeconds,
+            long responseTimeoutSeconds,
+            MeterRegistry meterRegistry
+    ) {
         DockerClientConfig configBuilder = DefaultDockerClientConfig.createDefaultConfigBuilder()
-                .withDockerHost(dockerHost != null ? dockerHost : System.getenv("DOCKER_HOST"))
+                .withDockerHost(host)
                 .build();
-        DockerHttpClient httpClient = new ApacheDockerHttpClient.Builder()
+        ApacheDockerHttpClient.Builder httpClientBuilder = new ApacheDockerHttpClient.Builder()
                 .dockerHost(configBuilder.getDockerHost())
                 .sslConfig(configBuilder.getSSLConfig())
-                .maxConnections(100)
-                .connectionTimeout(Duration.ofSeconds(30))
-                .responseTimeout(Duration.ofSeconds(45))
-                .build();
+                .maxConnections(maxConnections)
+                .connectionTimeout(Duration.ofSeconds(connectionTimeoutSeconds));
+        if (responseTimeoutSeconds > 0) {
+            httpClientBuilder.responseTimeout(Duration.ofSeconds(responseTimeoutSeconds));
+        }
+        DockerHttpClient httpClient = new InstrumentedDockerHttpClient(
+                httpClientBuilder.build(),
+                daemonId,
+                transport,
+                maxConnections,
+                meterRegistry
+        );
 
         return DockerClientImpl.getInstance(configBuilder, httpClient);
     }
@@ -0,0 +1,59 @@
+package com.biye_daalt.code_execution_service.config;
+
+import com.github.dockerjava.api.DockerClient;
+
+/**
+ * One Docker daemon the service can run sandboxes on, with its pair of
+ * clients (see {@link DockerConfig}) and its capacity weight relative to the
+ * other daemons.
+ */
+public final class DockerDaemon {
+
+    private final String id;
+    private final String host;
+    private final int weight;
+    private final DockerClient control;
+    private final DockerClient streaming;
+
+    public DockerDaemon(String id, String host, int weight, DockerClient control, DockerClient streaming) {
+        this.id = id;
+        this.host = host;
+        this.weight = weight;
+        this.control = control;
+        this.streaming = streaming;
+    }
+
+    /**
+     * Short, stable name used in logs and metric tags (e.g. {@code daemon-0}).
+     */
+    public String id() {
+        return id;
+    }
+
+    public String host() {
+        return host;
+    }
+
+    public int weight() {
+        return weight;
+    }
+
+    /**
+     * Client for short control calls: create, start, kill, copy, inspect, remove.
+     */
+    public DockerClient control() {
+        return control;
+    }
+
+    /**
+     * Client for calls held open while a program runs: logs, stats, exec, events.
+     */
+    public DockerClient streaming() {
+        return streaming;
+    }
+
+    @Override
+    public String toString() {
+        return id + " (" + host + ")";
+    }
+}
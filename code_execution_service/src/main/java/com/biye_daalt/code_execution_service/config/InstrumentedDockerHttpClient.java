@@ -0,0 +1,106 @@
+package com.biye_daalt.code_execution_service.config;
+
+import com.github.dockerjava.transport.DockerHttpClient;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Wraps a Docker transport to report how busy its connection pool is.
+ * A request holds a pooled connection from the moment it is sent until its
+ * response is closed, so the number of open responses against the pool size
+ * shows utilization. The request timer includes time spent waiting for a free
+ * connection, which is where saturation shows up first.
+ */
+class InstrumentedDockerHttpClient implements DockerHttpClient {
+
+    private final DockerHttpClient delegate;
+    private final AtomicInteger inUse = new AtomicInteger();
+    private final Timer requestTimer;
+
+    InstrumentedDockerHttpClient(
+            DockerHttpClient delegate,
+            String daemonId,
+            String transport,
+            int maxConnections,
+            MeterRegistry meterRegistry
+    ) {
+        this.delegate = delegate;
+        Gauge.builder("docker.client.connections.in-use", inUse, AtomicInteger::get)
+                .description("Docker API requests currently holding a pooled connection")
+                .tag("daemon", daemonId)
+                .tag("transport", transport)
+                .register(meterRegistry);
+        Gauge.builder("docker.client.connections.max", () -> maxConnections)
+                .description("Size of the Docker API connection pool")
+                .tag("daemon", daemonId)
+                .tag("transport", transport)
+                .register(meterRegistry);
+        this.requestTimer = Timer.builder("docker.client.requests")
+                .description("Time until the Docker daemon answered, including waiting for a connection")
+                .tag("daemon", daemonId)
+                .tag("transport", transport)
+                .publishPercentiles(0.5, 0.95, 0.99)
+                .register(meterRegistry);
+    }
+
+    @Override
+    public Response execute(Request request) {
+        inUse.incrementAndGet();
+        Timer.Sample sample = Timer.start();
+        Response response;
+        try {
+            response = delegate.execute(request);
+        } catch (RuntimeException e) {
+            inUse.decrementAndGet();
+            throw e;
+        } finally {
+            sample.stop(requestTimer);
+        }
+        return new TrackedResponse(response);
+    }
+
+    @Override
+    public void close() throws IOException {
+        delegate.close();
+    }
+
+    private final class TrackedResponse implements Response {
+        private final Response delegate;
+        private final AtomicBoolean closed = new AtomicBoolean(false);
+
+        TrackedResponse(Response delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public int getStatusCode() {
+            return delegate.getStatusCode();
+        }
+
+        @Override
+        public Map<String, List<String>> getHeaders() {
+            return delegate.getHeaders();
+        }
+
+        @Override
+        public InputStream getBody() {
+            return delegate.getBody();
+        }
+
+        @Override
+        public void close() {
+            if (closed.compareAndSet(false, true)) {
+                inUse.decrementAndGet();
+            }
+            delegate.close();
+        }
+    }
+}
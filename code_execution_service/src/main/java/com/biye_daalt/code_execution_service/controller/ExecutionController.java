@@ -1,28 +1,94 @@
 package com.biye_daalt.code_execution_service.controller;
 
+import com.biye_daalt.code_execution_service.dto.BatchExecutionRequest;
+import com.biye_daalt.code_execution_service.dto.BatchExecutionResponse;
+import com.biye_daalt.code_execution_service.dto.ExecutionExitEvent;
 import com.biye_daalt.code_execution_service.dto.ExecutionRequest;
 import com.biye_daalt.code_execution_service.dto.ExecutionResponse;
+import com.biye_daalt.code_execution_service.service.BatchExecutionService;
 import com.biye_daalt.code_execution_service.service.CodeExecutionService;
+import com.biye_daalt.code_execution_service.service.ExecutionInput;
+import com.biye_daalt.code_execution_service.service.ExecutionJobService;
+import com.biye_daalt.code_execution_service.service.ExecutionOutputListener;
+import com.biye_daalt.code_execution_service.service.ExecutionScheduler;
+import com.biye_daalt.code_execution_service.service.ExecutionScheduler.PriorityClass;
+import jakarta.servlet.http.HttpServletRequest;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RequestPart;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
+import java.io.IOException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Synchronous and streaming runs are {@link PriorityClass#INTERACTIVE} and
+ * batches are {@link PriorityClass#BATCH}. Clients are told apart by
+ * {@link ExecutionScheduler#clientKey}.
+ */
 @RestController
 @RequestMapping("/execute")
 public class ExecutionController {
 
+    private static final Logger logger = LoggerFactory
+            .getLogger(ExecutionController.class);
+
     private final CodeExecutionService codeExecutionService;
+    private final ExecutionJobService executionJobService;
+    // Null with execution.executor=local: batches always run in a Docker container
+    private final BatchExecutionService batchExecutionService;
+    private final ExecutionScheduler executionScheduler;
+    private final int maxBatchCases;
+    private final long streamTimeoutMillis;
+    private final long retryAfterSeconds;
 
     @Autowired
-    public ExecutionController(CodeExecutionService codeExecutionService) {
+    public ExecutionController(
+            CodeExecutionService codeExecutionService,
+            ExecutionJobService executionJobService,
+            ObjectProvider<BatchExecutionService> batchExecutionService,
+            ExecutionScheduler executionScheduler,
+            @Value("${execution.batch.max-cases:100}") int maxBatchCases,
+            @Value("${execution.timeout.seconds:15}") long executionTimeoutSeconds,
+            @Value("${execution.jobs.retry-after-seconds:5}") long retryAfterSeconds
+    ) {
         this.codeExecutionService = codeExecutionService;
+        this.executionJobService = executionJobService;
+        this.batchExecutionService = batchExecutionService.getIfAvailable();
+        this.executionScheduler = executionScheduler;
+        this.maxBatchCases = maxBatchCases;
+        // Leave room for queueing, container start and log draining on top of the run itself
+        this.streamTimeoutMillis = TimeUnit.SECONDS.toMillis(executionTimeoutSeconds + 60);
+        this.retryAfterSeconds = retryAfterSeconds;
     }
 
+    /**
+     * Runs the code, with {@code stdin} (if any) as its standard input, and
+     * returns its output. If {@code expectedOutput} is given
+     * the run is judged instead: stdout is compared while the program runs and
+     * only a verdict comes back.
+     */
     @PostMapping
-    public ResponseEntity<ExecutionResponse> execute(@RequestBody ExecutionRequest request) {
+    public ResponseEntity<ExecutionResponse> execute(
+            @RequestBody ExecutionRequest request,
+            @RequestHeader(value = ExecutionScheduler.CLIENT_HEADER, required = false) String clientId,
+            HttpServletRequest servletRequest
+    ) {
         if (request.getCode() == null || request.getCode().isBlank() ||
                 request.getLanguage() == null || request.getLanguage().isBlank()) {
             ExecutionResponse errorResponse = new ExecutionResponse();
@@ -30,7 +96,206 @@ public class ExecutionController {
             errorResponse.setExitCode(-1);
             return ResponseEntity.badRequest().body(errorResponse);
         }
-        ExecutionResponse response = codeExecutionService.executeCode(request.getCode(), request.getLanguage());
-        return ResponseEntity.ok(response);
+        return runInteractive(
+                request.getCode(),
+                request.getLanguage(),
+                ExecutionInput.ofText(request.getStdin()),
+                request.getExpectedOutput(),
+                request.getComparison(),
+                request.getFloatTolerance(),
+                executionScheduler.clientKey(clientId, servletRequest.getRemoteAddr())
+        );
+    }
+
+    /**
+     * Same as {@link #execute} for inputs too large to inline in JSON. The
+     * stdin part is spooled to disk by the servlet container and streamed from
+     * there into the sandbox.
+     */
+    @PostMapping(path = "/upload", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
+    public ResponseEntity<ExecutionResponse> executeUpload(
+            @RequestParam String code,
+            @RequestParam String language,
+            @RequestPart(required = false) MultipartFile stdin,
+            @RequestParam(required = false) String expectedOutput,
+            @RequestParam(required = false) String comparison,
+            @RequestParam(required = false) Double floatTolerance,
+            @RequestHeader(value = ExecutionScheduler.CLIENT_HEADER, required = false) String clientId,
+            HttpServletRequest servletRequest
+    ) {
+        if (code.isBlank() || language.isBlank()) {
+            ExecutionResponse errorResponse = new ExecutionResponse();
+            errorResponse.setError("Code and language must be provided.");
+            errorResponse.setExitCode(-1);
+            return ResponseEntity.badRequest().body(errorResponse);
+        }
+        logger.debug(
+                "Upload run for language {} with {} bytes of stdin",
+                language,
+                stdin == null ? 0 : stdin.getSize()
+        );
+        return runInteractive(
+                code,
+                language,
+                stdin == null ? null : ExecutionInput.ofStream(stdin.getSize(), stdin),
+                expectedOutput,
+                comparison,
+                floatTolerance,
+                executionScheduler.clientKey(clientId, servletRequest.getRemoteAddr())
+        );
+    }
+
+    /**
+     * Runs one program against a list of test cases inside a single container.
+     * Answers 501 when the local executor is selected, since it has no containers.
+     */
+    @PostMapping("/batch")
+    public ResponseEntity<BatchExecutionResponse> executeBatch(
+            @RequestBody BatchExecutionRequest request,
+            @RequestHeader(value = ExecutionScheduler.CLIENT_HEADER, required = false) String clientId,
+            HttpServletRequest servletRequest
+    ) {
+        if (request.getCode() == null || request.getCode().isBlank() ||
+                request.getLanguage() == null || request.getLanguage().isBlank() ||
+                request.getTestCases() == null || request.getTestCases().isEmpty()) {
+            BatchExecutionResponse errorResponse = new BatchExecutionResponse();
+            errorResponse.setError("Code, language and at least one test case must be provided.");
+            return ResponseEntity.badRequest().body(errorResponse);
+        }
+        if (request.getTestCases().size() > maxBatchCases) {
+            BatchExecutionResponse errorResponse = new BatchExecutionResponse();
+            errorResponse.setError("At most " + maxBatchCases + " test cases are allowed per batch.");
+            return ResponseEntity.badRequest().body(errorResponse);
+        }
+        if (batchExecutionService == null) {
+            BatchExecutionResponse errorResponse = new BatchExecutionResponse();
+            errorResponse.setError("Batch execution needs the Docker executor.");
+            return ResponseEntity.status(HttpStatus.NOT_IMPLEMENTED).body(errorResponse);
+        }
+        try {
+            return ResponseEntity.ok(executionScheduler.run(
+                    PriorityClass.BATCH,
+                    executionScheduler.clientKey(clientId, servletRequest.getRemoteAddr()),
+                    () -> batchExecutionService.executeBatch(request)
+            ));
+        } catch (RejectedExecutionException e) {
+            BatchExecutionResponse busyResponse = new BatchExecutionResponse();
+            busyResponse.setError("Server busy: " + e.getMessage() + ". Please try again.");
+            return tooManyRequests(busyResponse);
+        }
+    }
+
+    /**
+     * Streams output as server-sent events while the program runs: "stdout" and
+     * "stderr" events carry output chunks, and a final "exit" event carries an
+     * {@link ExecutionExitEvent}.
+     */
+    @PostMapping(path = "/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public ResponseEntity<SseEmitter> executeStreaming(
+            @RequestBody ExecutionRequest request,
+            @RequestHeader(value = ExecutionScheduler.CLIENT_HEADER, required = false) String clientId,
+            HttpServletRequest servletRequest
+    ) {
+        if (request.getCode() == null || request.getCode().isBlank() ||
+                request.getLanguage() == null || request.getLanguage().isBlank()) {
+            return ResponseEntity.badRequest().build();
+        }
+
+        SseEmitter emitter = new SseEmitter(streamTimeoutMillis);
+        ExecutionOutputListener listener = new ExecutionOutputListener() {
+            @Override
+            public void onStdout(String chunk) {
+                send(emitter, "stdout", chunk);
+            }
+
+            @Override
+            public void onStderr(String chunk) {
+                send(emitter, "stderr", chunk);
+            }
+        };
+
+        try {
+            executionJobService
+                    .submitStreaming(
+                            request.getCode(),
+                            request.getLanguage(),
+                            ExecutionInput.ofText(request.getStdin()),
+                            listener,
+                            PriorityClass.INTERACTIVE,
+                            executionScheduler.clientKey(clientId, servletRequest.getRemoteAddr())
+                    )
+                    .whenComplete((response, error) -> {
+                        if (error instanceof RejectedExecutionException) {
+                            // No slot freed up in time
+                            send(emitter, "error", "Server busy: " + error.getMessage());
+                            emitter.complete();
+                            return;
+                        }
+                        if (error != null) {
+                            emitter.completeWithError(error);
+                            return;
+                        }
+                        send(emitter, "exit", ExecutionExitEvent.from(response));
+                        emitter.complete();
+                    });
+        } catch (RejectedExecutionException e) {
+            return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                    .header(HttpHeaders.RETRY_AFTER, String.valueOf(retryAfterSeconds))
+                    .build();
+        }
+        return ResponseEntity.ok(emitter);
+    }
+
+    private ResponseEntity<ExecutionResponse> runInteractive(
+            String code,
+            String language,
+            ExecutionInput stdin,
+            String expectedOutput,
+            String comparison,
+            Double floatTolerance,
+            String clientKey
+    ) {
+        try {
+            ExecutionResponse response = executionScheduler.run(
+                    PriorityClass.INTERACTIVE,
+                    clientKey,
+                    () -> expectedOutput == null
+                            ? codeExecutionService.executeCode(code, language, stdin)
+                            : codeExecutionService.executeJudged(
+                                    code,
+                                    language,
+                                    stdin,
+                                    expectedOutput,
+                                    comparison,
+                                    floatTolerance
+                            )
+            );
+            return ResponseEntity.ok(response);
+        } catch (IllegalArgumentException e) {
+            ExecutionResponse errorResponse = new ExecutionResponse();
+            errorResponse.setError(e.getMessage());
+            errorResponse.setExitCode(-1);
+            return ResponseEntity.badRequest().body(errorResponse);
+        } catch (RejectedExecutionException e) {
+            ExecutionResponse busyResponse = new ExecutionResponse();
+            busyResponse.setError("Server busy: " + e.getMessage() + ". Please try again.");
+            busyResponse.setExitCode(-1);
+            return tooManyRequests(busyResponse);
+        }
+    }
+
+    private <T> ResponseEntity<T> tooManyRequests(T body) {
+        return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(retryAfterSeconds))
+                .body(body);
+    }
+
+    private static void send(SseEmitter emitter, String eventName, Object data) {
+        try {
+            emitter.send(SseEmitter.event().name(eventName).data(data));
+        } catch (IOException | IllegalStateException e) {
+            // Client went away; the execution still runs to completion and is cleaned up normally
+            logger.debug("Failed to send '{}' event: {}", eventName, e.getMessage());
+        }
     }
 }
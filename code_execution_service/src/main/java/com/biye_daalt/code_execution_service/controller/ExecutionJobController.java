@@ -0,0 +1,106 @@
+package com.biye_daalt.code_execution_service.controller;
+
+import com.biye_daalt.code_execution_service.dto.ExecutionJobResponse;
+import com.biye_daalt.code_execution_service.dto.ExecutionRequest;
+import com.biye_daalt.code_execution_service.service.ExecutionInput;
+import com.biye_daalt.code_execution_service.service.ExecutionJob;
+import com.biye_daalt.code_execution_service.service.ExecutionJobService;
+import com.biye_daalt.code_execution_service.service.ExecutionScheduler;
+import com.biye_daalt.code_execution_service.service.ExecutionScheduler.PriorityClass;
+import jakarta.servlet.http.HttpServletRequest;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.async.DeferredResult;
+
+import java.net.URI;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+@RestController
+@RequestMapping("/execute/jobs")
+public class ExecutionJobController {
+
+    private static final long MAX_WAIT_SECONDS = 30;
+
+    private final ExecutionJobService executionJobService;
+    private final ExecutionScheduler executionScheduler;
+    private final long retryAfterSeconds;
+
+    @Autowired
+    public ExecutionJobController(
+            ExecutionJobService executionJobService,
+            ExecutionScheduler executionScheduler,
+            @Value("${execution.jobs.retry-after-seconds:5}") long retryAfterSeconds
+    ) {
+        this.executionJobService = executionJobService;
+        this.executionScheduler = executionScheduler;
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+
+    /**
+     * Queues a run. Jobs are always {@link PriorityClass#BATCH} work.
+     */
+    @PostMapping
+    public ResponseEntity<ExecutionJobResponse> submit(
+            @RequestBody ExecutionRequest request,
+            @RequestHeader(value = ExecutionScheduler.CLIENT_HEADER, required = false) String clientId,
+            HttpServletRequest servletRequest
+    ) {
+        if (request.getCode() == null || request.getCode().isBlank() ||
+                request.getLanguage() == null || request.getLanguage().isBlank()) {
+            return ResponseEntity.badRequest().build();
+        }
+        try {
+            ExecutionJob job = executionJobService.submit(
+                    request.getCode(),
+                    request.getLanguage(),
+                    ExecutionInput.ofText(request.getStdin()),
+                    PriorityClass.BATCH,
+                    executionScheduler.clientKey(clientId, servletRequest.getRemoteAddr())
+            );
+            return ResponseEntity.accepted()
+                    .location(URI.create("/execute/jobs/" + job.getId()))
+                    .body(job.toResponse());
+        } catch (RejectedExecutionException e) {
+            return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                    .header(HttpHeaders.RETRY_AFTER, String.valueOf(retryAfterSeconds))
+                    .build();
+        }
+    }
+
+    /**
+     * Returns the job status. With {@code wait > 0} the request is held (without
+     * occupying a servlet thread) until the job completes or the wait elapses.
+     */
+    @GetMapping("/{jobId}")
+    public DeferredResult<ResponseEntity<ExecutionJobResponse>> getJob(
+            @PathVariable String jobId,
+            @RequestParam(defaultValue = "0") long wait
+    ) {
+        ExecutionJob job = executionJobService.getJob(jobId);
+        long waitSeconds = Math.min(Math.max(wait, 0), MAX_WAIT_SECONDS);
+        DeferredResult<ResponseEntity<ExecutionJobResponse>> deferred = new DeferredResult<>(
+                TimeUnit.SECONDS.toMillis(waitSeconds + 1)
+        );
+
+        if (job == null) {
+            deferred.setResult(ResponseEntity.notFound().build());
+            return deferred;
+        }
+        if (waitSeconds == 0 || job.getResult().isDone()) {
+            deferred.setResult(ResponseEntity.ok(job.toResponse()));
+            return deferred;
+        }
+
+        deferred.onTimeout(() -> deferred.setResult(ResponseEntity.ok(job.toResponse())));
+        job.getResult()
+                .copy()
+                .completeOnTimeout(null, waitSeconds, TimeUnit.SECONDS)
+                .whenComplete((result, error) -> deferred.setResult(ResponseEntity.ok(job.toResponse())));
+        return deferred;
+    }
+}
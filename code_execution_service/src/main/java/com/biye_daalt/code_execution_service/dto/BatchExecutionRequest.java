@@ -0,0 +1,46 @@
+package com.biye_daalt.code_execution_service.dto;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class BatchExecutionRequest {
+    private String code;
+    private String language;
+    private List<TestCase> testCases = new ArrayList<>();
+    private boolean failFast = false; // Stop at the first failing case
+
+    public BatchExecutionRequest() {
+    }
+
+    public String getCode() {
+        return code;
+    }
+
+    public void setCode(String code) {
+        this.code = code;
+    }
+
+    public String getLanguage() {
+        return language;
+    }
+
+    public void setLanguage(String language) {
+        this.language = language;
+    }
+
+    public List<TestCase> getTestCases() {
+        return testCases;
+    }
+
+    public void setTestCases(List<TestCase> testCases) {
+        this.testCases = testCases;
+    }
+
+    public boolean isFailFast() {
+        return failFast;
+    }
+
+    public void setFailFast(boolean failFast) {
+        this.failFast = failFast;
+    }
+}
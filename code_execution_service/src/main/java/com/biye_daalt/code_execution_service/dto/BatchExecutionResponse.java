@@ -0,0 +1,47 @@
+package com.biye_daalt.code_execution_service.dto;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class BatchExecutionResponse {
+    private List<TestCaseResult> results = new ArrayList<>();
+    private int passedCount;
+    private String compileError; // Set when compilation failed and no case was run
+    private String error; // Service-level error (unsupported language, Docker failure...)
+
+    public BatchExecutionResponse() {
+    }
+
+    // Getters and Setters
+    public List<TestCaseResult> getResults() {
+        return results;
+    }
+
+    public void setResults(List<TestCaseResult> results) {
+        this.results = results;
+    }
+
+    public int getPassedCount() {
+        return passedCount;
+    }
+
+    public void setPassedCount(int passedCount) {
+        this.passedCount = passedCount;
+    }
+
+    public String getCompileError() {
+        return compileError;
+    }
+
+    public void setCompileError(String compileError) {
+        this.compileError = compileError;
+    }
+
+    public String getError() {
+        return error;
+    }
+
+    public void setError(String error) {
+        this.error = error;
+    }
+}
@@ -0,0 +1,76 @@
+package com.biye_daalt.code_execution_service.dto;
+
+/**
+ * Final event of a streamed execution. Output has already been sent as
+ * stdout/stderr events, so only the outcome is carried here.
+ */
+public class ExecutionExitEvent {
+    private int exitCode;
+    private boolean timeout;
+    private String message; // Timeout or service error message, null on a normal exit
+    private Long cpuTimeMillis;
+    private Long peakMemoryBytes;
+
+    public ExecutionExitEvent() {
+    }
+
+    public ExecutionExitEvent(int exitCode, boolean timeout, String message) {
+        this.exitCode = exitCode;
+        this.timeout = timeout;
+        this.message = message;
+    }
+
+    public static ExecutionExitEvent from(ExecutionResponse response) {
+        // Real exit codes are 0-255; -1 means the service gave up (timeout, Docker error...)
+        boolean serviceFailure = response.isTimeout() || response.getExitCode() == -1;
+        ExecutionExitEvent event = new ExecutionExitEvent(
+                response.getExitCode(),
+                response.isTimeout(),
+                serviceFailure ? response.getError() : null
+        );
+        event.setCpuTimeMillis(response.getCpuTimeMillis());
+        event.setPeakMemoryBytes(response.getPeakMemoryBytes());
+        return event;
+    }
+
+    // Getters and Setters
+    public int getExitCode() {
+        return exitCode;
+    }
+
+    public void setExitCode(int exitCode) {
+        this.exitCode = exitCode;
+    }
+
+    public boolean isTimeout() {
+        return timeout;
+    }
+
+    public void setTimeout(boolean timeout) {
+        this.timeout = timeout;
+    }
+
+    public String getMessage() {
+        return message;
+    }
+
+    public void setMessage(String message) {
+        this.message = message;
+    }
+
+    public Long getCpuTimeMillis() {
+        return cpuTimeMillis;
+    }
+
+    public void setCpuTimeMillis(Long cpuTimeMillis) {
+        this.cpuTimeMillis = cpuTimeMillis;
+    }
+
+    public Long getPeakMemoryBytes() {
+        return peakMemoryBytes;
+    }
+
+    public void setPeakMemoryBytes(Long peakMemoryBytes) {
+        this.peakMemoryBytes = peakMemoryBytes;
+    }
+}
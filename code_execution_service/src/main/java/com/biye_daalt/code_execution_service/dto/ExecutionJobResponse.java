@@ -0,0 +1,41 @@
+package com.biye_daalt.code_execution_service.dto;
+
+public class ExecutionJobResponse {
+    private String jobId;
+    private String status; // QUEUED, RUNNING, COMPLETED
+    private ExecutionResponse result; // Only set once the job is COMPLETED
+
+    public ExecutionJobResponse() {
+    }
+
+    public ExecutionJobResponse(String jobId, String status, ExecutionResponse result) {
+        this.jobId = jobId;
+        this.status = status;
+        this.result = result;
+    }
+
+    // Getters and Setters
+    public String getJobId() {
+        return jobId;
+    }
+
+    public void setJobId(String jobId) {
+        this.jobId = jobId;
+    }
+
+    public String getStatus() {
+        return status;
+    }
+
+    public void setStatus(String status) {
+        this.status = status;
+    }
+
+    public ExecutionResponse getResult() {
+        return result;
+    }
+
+    public void setResult(ExecutionResponse result) {
+        this.result = result;
+    }
+}
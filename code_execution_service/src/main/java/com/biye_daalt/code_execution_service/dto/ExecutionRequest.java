@@ -3,6 +3,10 @@ package com.biye_daalt.code_execution_service.dto;
 public class ExecutionRequest {
     private String code;
     private String language;
+    private String stdin; // Fed to the program's standard input; larger inputs go through /execute/upload
+    private String expectedOutput; // If set, the response carries a verdict instead of the output
+    private String comparison; // exact, lines (default) or tokens
+    private Double floatTolerance; // tokens only: allowed absolute or relative error of numbers
 
     public ExecutionRequest() {}
 
@@ -26,4 +30,36 @@ public class ExecutionRequest {
     public void setLanguage(String language) {
         this.language = language;
     }
+
+    public String getStdin() {
+        return stdin;
+    }
+
+    public void setStdin(String stdin) {
+        this.stdin = stdin;
+    }
+
+    public String getExpectedOutput() {
+        return expectedOutput;
+    }
+
+    public void setExpectedOutput(String expectedOutput) {
+        this.expectedOutput = expectedOutput;
+    }
+
+    public String getComparison() {
+        return comparison;
+    }
+
+    public void setComparison(String comparison) {
+        this.comparison = comparison;
+    }
+
+    public Double getFloatTolerance() {
+        return floatTolerance;
+    }
+
+    public void setFloatTolerance(Double floatTolerance) {
+        this.floatTolerance = floatTolerance;
+    }
 }
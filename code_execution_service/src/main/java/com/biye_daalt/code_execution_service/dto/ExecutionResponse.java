@@ -5,10 +5,29 @@ public class ExecutionResponse {
     private String error;
     private int exitCode = -1; // Default to -1 if not set
     private boolean timeout = false;
+    private boolean outputTruncated = false; // Output exceeded code.execution.max.output.chars
+    private Long cpuTimeMillis; // From the sandbox cgroup when the program exited, null if unknown
+    private Long peakMemoryBytes; // Peak memory of the run, null if unknown
+    private boolean memoryLimitExceeded = false; // Killed by the out-of-memory killer
+    private Verdict verdict; // Only for runs with an expected output; null if the service failed
+    private String mismatch; // Where a wrong answer first differed from the expected output
 
     public ExecutionResponse() {
     }
 
+    public ExecutionResponse(ExecutionResponse other) {
+        this.output = other.output;
+        this.error = other.error;
+        this.exitCode = other.exitCode;
+        this.timeout = other.timeout;
+        this.outputTruncated = other.outputTruncated;
+        this.cpuTimeMillis = other.cpuTimeMillis;
+        this.peakMemoryBytes = other.peakMemoryBytes;
+        this.memoryLimitExceeded = other.memoryLimitExceeded;
+        this.verdict = other.verdict;
+        this.mismatch = other.mismatch;
+    }
+
     public ExecutionResponse(String output, String error, int exitCode, boolean timeout) {
         this.output = output;
         this.error = error;
@@ -48,4 +67,52 @@ public class ExecutionResponse {
     public void setTimeout(boolean timeout) {
         this.timeout = timeout;
     }
-}
\ No newline at end of file
+
+    public boolean isOutputTruncated() {
+        return outputTruncated;
+    }
+
+    public void setOutputTruncated(boolean outputTruncated) {
+        this.outputTruncated = outputTruncated;
+    }
+
+    public Long getCpuTimeMillis() {
+        return cpuTimeMillis;
+    }
+
+    public void setCpuTimeMillis(Long cpuTimeMillis) {
+        this.cpuTimeMillis = cpuTimeMillis;
+    }
+
+    public Long getPeakMemoryBytes() {
+        return peakMemoryBytes;
+    }
+
+    public void setPeakMemoryBytes(Long peakMemoryBytes) {
+        this.peakMemoryBytes = peakMemoryBytes;
+    }
+
+    public boolean isMemoryLimitExceeded() {
+        return memoryLimitExceeded;
+    }
+
+    public void setMemoryLimitExceeded(boolean memoryLimitExceeded) {
+        this.memoryLimitExceeded = memoryLimitExceeded;
+    }
+
+    public Verdict getVerdict() {
+        return verdict;
+    }
+
+    public void setVerdict(Verdict verdict) {
+        this.verdict = verdict;
+    }
+
+    public String getMismatch() {
+        return mismatch;
+    }
+
+    public void setMismatch(String mismatch) {
+        this.mismatch = mismatch;
+    }
+}
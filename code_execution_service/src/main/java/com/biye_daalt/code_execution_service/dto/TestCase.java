@@ -0,0 +1,30 @@
+package com.biye_daalt.code_execution_service.dto;
+
+public class TestCase {
+    private String input; // Fed to the program's stdin, may be null
+    private String expectedOutput; // Compared against stdout, null to only run the case
+
+    public TestCase() {
+    }
+
+    public TestCase(String input, String expectedOutput) {
+        this.input = input;
+        this.expectedOutput = expectedOutput;
+    }
+
+    public String getInput() {
+        return input;
+    }
+
+    public void setInput(String input) {
+        this.input = input;
+    }
+
+    public String getExpectedOutput() {
+        return expectedOutput;
+    }
+
+    public void setExpectedOutput(String expectedOutput) {
+        this.expectedOutput = expectedOutput;
+    }
+}
@@ -0,0 +1,12 @@
+package com.biye_daalt.code_execution_service.dto;
+
+/**
+ * Outcome of a run that was checked against an expected output.
+ */
+public enum Verdict {
+    AC, // Accepted: exited normally and the output matched
+    WA, // Wrong answer: the output differed (the program may have been stopped early)
+    TLE, // Time limit exceeded
+    MLE, // Memory limit exceeded
+    RE // Runtime error: non-zero exit, killed, or compilation failed
+}
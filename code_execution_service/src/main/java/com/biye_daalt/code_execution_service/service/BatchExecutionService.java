@@ -0,0 +1,390 @@
+package com.biye_daalt.code_execution_service.service;
+
+import com.biye_daalt.code_execution_service.config.ConditionalOnDockerExecutor;
+import com.biye_daalt.code_execution_service.config.DockerDaemon;
+import com.biye_daalt.code_execution_service.dto.BatchExecutionRequest;
+import com.biye_daalt.code_execution_service.dto.BatchExecutionResponse;
+import com.biye_daalt.code_execution_service.dto.ExecutionResponse;
+import com.biye_daalt.code_execution_service.dto.TestCase;
+import com.biye_daalt.code_execution_service.dto.TestCaseResult;
+import com.github.dockerjava.api.async.ResultCallback;
+import com.github.dockerjava.api.exception.DockerException;
+import com.github.dockerjava.api.model.Frame;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs one program against many test cases inside a single sandbox container,
+ * so container setup is paid once per batch instead of once per case.
+ * <p>
+ * The container is a hardened long-lived sandbox (see
+ * {@link SandboxContainerFactory#createLongLived}) holding only the code. Each
+ * case is one {@code docker exec} as {@link SandboxContainerFactory#SANDBOX_USER}
+ * that gets its input on stdin and whose output is streamed back and judged
+ * here: no other case's input or expected output ever enters the container,
+ * and the exit code and time of a case come from the daemon and the service,
+ * never from files the program could overwrite.
+ * <p>
+ * Cases must not see each other's leftovers either, so before each one every
+ * process but PID 1 is killed, {@code /tmp} and {@code /dev/shm} are wiped and
+ * the run directory is restored from a copy taken after compilation, the same
+ * way {@link ExecSandboxPool} wipes its sandboxes between runs.
+ */
+@ConditionalOnDockerExecutor
+@Service
+public class BatchExecutionService {
+
+    private static final Logger logger = LoggerFactory
+            .getLogger(BatchExecutionService.class);
+
+    private static final String RUN_DIR_NAME = "batch";
+    private static final String RUN_DIR = SandboxContainerFactory.RUNS_DIR + "/" + RUN_DIR_NAME;
+    // Root's copy of the run directory as compiled, out of the sandbox user's reach
+    private static final String PRISTINE_DIR = SandboxContainerFactory.RUNS_DIR + "/.batch-pristine";
+    // The program may write next to its code (e.g. javac output)
+    private static final int RUN_DIR_MODE = 0777;
+    private static final long DRAIN_TIMEOUT_SECONDS = 5;
+    private static final long RESET_TIMEOUT_SECONDS = 5;
+
+    private static final String[] SNAPSHOT_COMMAND = {
+            "sh", "-c",
+            "cp -a " + RUN_DIR + " " + PRISTINE_DIR + " && chmod 0700 " + PRISTINE_DIR
+    };
+    // kill(-1) signals every process except PID 1 and the calling shell itself.
+    // The sandbox user can write nowhere else, see SandboxContainerFactory#createLongLived.
+    private static final String[] RESET_COMMAND = {
+            "sh", "-c",
+            "kill -9 -1 2>/dev/null; " +
+                    "rm -rf " + RUN_DIR + " /tmp/* /tmp/.[!.]* /dev/shm/* /dev/shm/.[!.]* 2>/dev/null; " +
+                    "cp -a " + PRISTINE_DIR + " " + RUN_DIR + " && chmod 777 " + RUN_DIR + " || exit 1; " +
+                    "for dir in /tmp /dev/shm; do [ -z \"$(ls -A $dir)\" ] || exit 1; done"
+    };
+
+    private final DaemonScheduler daemonScheduler;
+    private final LanguageRegistry languageRegistry;
+    private final SandboxContainerFactory containerFactory;
+    private final CpuAllocator cpuAllocator;
+    private final ContainerReaper containerReaper;
+    private final CompilationService compilationService;
+    private final long compileTimeoutSeconds;
+    private final long caseTimeoutSeconds;
+    private final int maxOutputChars;
+    private final long maxOutputBytes;
+
+    /**
+     * How one exec in the batch container ended.
+     *
+     * @param exitCode -1 if it timed out or the daemon did not report one
+     */
+    private record ExecRun(FrameCollector output, int exitCode, boolean timedOut, long elapsedMillis) {
+    }
+
+    @Autowired
+    public BatchExecutionService(
+            DaemonScheduler daemonScheduler,
+            LanguageRegistry languageRegistry,
+            SandboxContainerFactory containerFactory,
+            CpuAllocator cpuAllocator,
+            ContainerReaper containerReaper,
+            CompilationService compilationService,
+            @Value("${execution.timeout.seconds:15}") long compileTimeoutSeconds,
+            @Value("${execution.batch.case-timeout-seconds:5}") long caseTimeoutSeconds,
+            @Value("${code.execution.max.output.chars:10000}") int maxOutputChars,
+            @Value("${code.execution.output.kill.factor:4}") double outputKillFactor
+    ) {
+        this.daemonScheduler = daemonScheduler;
+        this.languageRegistry = languageRegistry;
+        this.containerFactory = containerFactory;
+        this.cpuAllocator = cpuAllocator;
+        this.containerReaper = containerReaper;
+        this.compilationService = compilationService;
+        this.compileTimeoutSeconds = compileTimeoutSeconds;
+        this.caseTimeoutSeconds = caseTimeoutSeconds;
+        this.maxOutputChars = maxOutputChars;
+        this.maxOutputBytes = (long) (maxOutputChars * outputKillFactor);
+    }
+
+    public BatchExecutionResponse executeBatch(BatchExecutionRequest request) {
+        BatchExecutionResponse response = new BatchExecutionResponse();
+        String languageKey = request.getLanguage().toLowerCase().trim();
+        LanguageConfig config = languageRegistry.forLanguage(languageKey);
+
+        if (config == null) {
+            response.setError("Unsupported language: " + request.getLanguage());
+            logger.warn("Unsupported language request: {}", request.getLanguage());
+            return response;
+        }
+
+        List<TestCase> testCases = request.getTestCases();
+        SandboxContainer sandbox = null;
+        DockerDaemon daemon = daemonScheduler.acquire(config.imageName);
+        boolean daemonFailed = false;
+        CpuAllocator.CpuSlot cpuSlot = null;
+
+        try {
+            // 1. Compiled languages: compile once (or reuse cached artifacts) outside the batch
+            byte[] compiledArtifacts = null;
+            if (compilationService.handles(config)) {
+                CompilationService.CompilationResult compilation = compilationService.compile(
+                        daemon,
+                        languageKey,
+                        config,
+                        request.getCode()
+                );
+                if (!compilation.succeeded()) {
+                    response.setCompileError(compilation.output());
+                    buildSkippedResults(response, testCases, 0);
+                    return response;
+                }
+                compiledArtifacts = compilation.artifactTar();
+            }
+
+            // 2. All cases run on the same dedicated CPUs
+            if (cpuAllocator.isEnabled()) {
+                cpuSlot = cpuAllocator.acquire(daemon);
+                if (cpuSlot == null) {
+                    response.setError("Server busy: no CPU became available in time. Please try again.");
+                    return response;
+                }
+            }
+
+            // 3. A hardened container that idles while the cases are exec'd into it
+            sandbox = containerFactory.createLongLived(daemon, languageKey, config);
+            if (cpuSlot != null) {
+                containerFactory.applyCpuSlot(sandbox, cpuAllocator.mode(), cpuSlot);
+            }
+
+            // 4. Deliver the code (or its compiled artifacts), nothing else
+            SandboxArchive archive = new SandboxArchive().addDirectory(RUN_DIR_NAME, RUN_DIR_MODE);
+            if (compiledArtifacts == null) {
+                archive.addFile(RUN_DIR_NAME + "/" + config.scriptFileName, request.getCode());
+            }
+            containerFactory.copyToContainer(sandbox, SandboxContainerFactory.RUNS_DIR, archive);
+            if (compiledArtifacts != null) {
+                containerFactory.copyTarToContainer(sandbox, new ByteArrayInputStream(compiledArtifacts), RUN_DIR);
+            }
+
+            // 5. Compile in the container if the compilation service did not
+            if (config.compileCommand != null && compiledArtifacts == null) {
+                ExecRun compilation = exec(sandbox, "exec 2>&1; " + config.compileCommand, compileTimeoutSeconds, null, null);
+                if (compilation.timedOut() || compilation.exitCode() != 0) {
+                    String output = compilation.output().stdout().toString().trim();
+                    response.setCompileError(compilation.timedOut()
+                            ? "Compilation timed out after " + compileTimeoutSeconds + " seconds."
+                            : output.isEmpty() ? "Compilation failed." : output);
+                    buildSkippedResults(response, testCases, 0);
+                    return response;
+                }
+            }
+            Long snapshotExitCode = containerFactory.runAsRoot(sandbox, SNAPSHOT_COMMAND, RESET_TIMEOUT_SECONDS);
+            if (snapshotExitCode == null || snapshotExitCode != 0) {
+                throw new IllegalStateException("Copying the run directory exited with " + snapshotExitCode);
+            }
+
+            // 6. Run the cases one after another in a reset sandbox, judging each output as it streams in
+            int passedCount = 0;
+            for (int i = 0; i < testCases.size(); i++) {
+                if (!reset(sandbox)) {
+                    response.setError("Server error: Could not reset the sandbox between test cases.");
+                    buildSkippedResults(response, testCases, i);
+                    break;
+                }
+                TestCaseResult result = runCase(sandbox, i, testCases.get(i), config.runCommand);
+                response.getResults().add(result);
+                if (Boolean.TRUE.equals(result.getPassed())) {
+                    passedCount++;
+                }
+                boolean failed = result.getExitCode() != 0 || result.isTimeout() ||
+                        Boolean.FALSE.equals(result.getPassed());
+                if (failed && request.isFailFast()) {
+                    buildSkippedResults(response, testCases, i + 1);
+                    break;
+                }
+            }
+            response.setPassedCount(passedCount);
+            logger.info(
+                    "Batch in container {} ran {} of {} cases, {} passed",
+                    sandbox.containerId,
+                    response.getResults().stream().filter(result -> !result.isSkipped()).count(),
+                    testCases.size(),
+                    passedCount
+            );
+
+        } catch (IOException e) {
+            daemonFailed = true;
+            logger.error(
+                    "IOException during batch execution: {}",
+                    e.getMessage(),
+                    e
+            );
+            response.setError(
+                    "Server error: Could not prepare execution environment. " +
+                            e.getMessage()
+            );
+        } catch (DockerException e) {
+            daemonFailed = true;
+            logger.error(
+                    "DockerException during batch execution: {}",
+                    e.getMessage(),
+                    e
+            );
+            response.setError(
+                    "Server error: Docker operation failed. " + e.getMessage()
+            );
+        } catch (Exception e) {
+            logger.error(
+                    "Unexpected error during batch execution: {}",
+                    e.getMessage(),
+                    e
+            );
+            response.setError(
+                    "Server error: An unexpected error occurred. " + e.getMessage()
+            );
+        } finally {
+            if (sandbox != null) {
+                containerReaper.submit(sandbox);
+            }
+            if (cpuSlot != null) {
+                cpuAllocator.release(cpuSlot);
+            }
+            daemonScheduler.release(daemon, daemonFailed);
+        }
+        return response;
+    }
+
+    private TestCaseResult runCase(SandboxContainer sandbox, int index, TestCase testCase, String runCommand)
+            throws InterruptedException {
+        OutputComparator comparator = testCase.getExpectedOutput() != null
+                ? new OutputComparator(testCase.getExpectedOutput(), OutputComparator.Mode.LINES, null)
+                : null;
+        byte[] input = testCase.getInput() != null
+                ? testCase.getInput().getBytes(StandardCharsets.UTF_8)
+                : new byte[0];
+        // The daemon never closes an exec's stdin, so the program gets exactly the input and then EOF
+        ExecRun run = exec(
+                sandbox,
+                "head -c " + input.length + " | { " + runCommand + "\n}",
+                caseTimeoutSeconds,
+                comparator,
+                input
+        );
+
+        TestCaseResult result = new TestCaseResult(index);
+        ExecutionResponse output = new ExecutionResponse();
+        run.output().applyTo(output, false);
+        result.setOutput(output.getOutput());
+        result.setError(output.getError());
+        result.setExitCode(run.exitCode());
+        result.setTimeMillis(run.elapsedMillis());
+        result.setTimeout(run.timedOut());
+        if (comparator != null) {
+            // Same rule as single runs: trailing whitespace on each line and trailing newlines are ignored
+            result.setPassed(run.exitCode() == 0 && !run.timedOut() && comparator.finish());
+        }
+        return result;
+    }
+
+    /**
+     * Runs a shell command in the batch's run directory as the sandbox user and
+     * collects its output. Every process in the container is killed if it runs
+     * past the timeout, writes too much or (with a comparator) prints a wrong answer.
+     *
+     * @param stdin written to the command's stdin, or null to attach none
+     */
+    private ExecRun exec(
+            SandboxContainer sandbox,
+            String command,
+            long timeoutSeconds,
+            OutputComparator comparator,
+            byte[] stdin
+    ) throws InterruptedException {
+        FrameCollector collector = new FrameCollector(
+                maxOutputChars,
+                maxOutputBytes,
+                null,
+                comparator,
+                reason -> {
+                    logger.info("Stopping batch case in container {}: {}", sandbox.containerId, reason);
+                    killAll(sandbox);
+                }
+        );
+        DockerDaemon daemon = sandbox.daemon;
+        String execId = daemon.control()
+                .execCreateCmd(sandbox.containerId)
+                .withCmd("sh", "-c", command)
+                .withWorkingDir(RUN_DIR)
+                .withUser(SandboxContainerFactory.SANDBOX_USER)
+                .withEnv(SandboxContainerFactory.SANDBOX_ENVIRONMENT)
+                .withAttachStdin(stdin != null)
+                .withAttachStdout(true)
+                .withAttachStderr(true)
+                .exec()
+                .getId();
+        long startedAt = System.nanoTime();
+        ResultCallback.Adapter<Frame> callback = daemon.streaming()
+                .execStartCmd(execId)
+                .withStdIn(stdin != null ? new ByteArrayInputStream(stdin) : null)
+                .exec(collector);
+        try {
+            boolean timedOut = !callback.awaitCompletion(timeoutSeconds, TimeUnit.SECONDS);
+            long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startedAt);
+            if (timedOut) {
+                killAll(sandbox);
+                callback.awaitCompletion(DRAIN_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+                return new ExecRun(collector, -1, true, elapsedMillis);
+            }
+            Long exitCode = daemon.control().inspectExecCmd(execId).exec().getExitCodeLong();
+            return new ExecRun(collector, exitCode != null ? exitCode.intValue() : -1, false, elapsedMillis);
+        } finally {
+            try {
+                callback.close();
+            } catch (IOException e) {
+                logger.debug("Failed to close exec stream: {}", e.getMessage());
+            }
+        }
+    }
+
+    private boolean reset(SandboxContainer sandbox) {
+        try {
+            Long exitCode = containerFactory.runAsRoot(sandbox, RESET_COMMAND, RESET_TIMEOUT_SECONDS);
+            if (exitCode != null && exitCode == 0) {
+                return true;
+            }
+            logger.warn("Resetting batch container {} exited with {}", sandbox.containerId, exitCode);
+        } catch (Exception e) {
+            logger.warn("Failed to reset batch container {}: {}", sandbox.containerId, e.getMessage());
+        }
+        return false;
+    }
+
+    private void killAll(SandboxContainer sandbox) {
+        try {
+            containerFactory.runAsRoot(sandbox, SandboxContainerFactory.KILL_COMMAND, DRAIN_TIMEOUT_SECONDS);
+        } catch (Exception e) {
+            logger.error("Failed to kill processes in batch container {}: {}", sandbox.containerId, e.getMessage());
+        }
+    }
+
+    /**
+     * Adds the cases from {@code fromIndex} on as not run.
+     */
+    private static void buildSkippedResults(BatchExecutionResponse response, List<TestCase> testCases, int fromIndex) {
+        for (int i = fromIndex; i < testCases.size(); i++) {
+            TestCaseResult result = new TestCaseResult(i);
+            result.setSkipped(true);
+            if (testCases.get(i).getExpectedOutput() != null) {
+                result.setPassed(false);
+            }
+            response.getResults().add(result);
+        }
+    }
+}
@@ -1,28 +1,16 @@
 package com.biye_daalt.code_execution_service.service;
 
 import com.biye_daalt.code_execution_service.dto.ExecutionResponse;
-import com.github.dockerjava.api.DockerClient;
-import com.github.dockerjava.api.async.ResultCallback;
-import com.github.dockerjava.api.command.CreateContainerResponse;
-import com.github.dockerjava.api.command.LogContainerCmd;
-import com.github.dockerjava.api.exception.DockerClientException;
-import com.github.dockerjava.api.exception.DockerException;
-import com.github.dockerjava.api.model.*;
-import com.github.dockerjava.core.command.WaitContainerResultCallback;
+import com.biye_daalt.code_execution_service.dto.Verdict;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
-import java.io.IOException;
-import java.nio.charset.StandardCharsets;
-import java.nio.file.Files;
-import java.nio.file.Path;
-import java.nio.file.Paths; // Added
-import java.util.HashMap;
-import java.util.Map;
-import java.util.concurrent.TimeUnit;
+import java.util.List;
+import java.util.stream.Collectors;
 
 @Service
 public class CodeExecutionService {
@@ -30,85 +18,114 @@ public class CodeExecutionService {
     private static final Logger logger = LoggerFactory
             .getLogger(CodeExecutionService.class);
 
-    private final DockerClient dockerClient;
-    private final long executionTimeoutSeconds;
-    private final String tempFileHostBasePath; // Renamed for clarity
+    private final LanguageRegistry languageRegistry;
+    private final CodeExecutor executor;
+    private final ExecutionResultCache resultCache;
+    private final MeterRegistry meterRegistry;
+    private final int maxOutputChars;
+    private final long outputKillThresholdBytes;
 
-    private static final String CONTAINER_WORKING_DIR = "/app";
-    private static final Map<String, LanguageConfig> languageConfigs;
-
-    static {
-        languageConfigs = new HashMap<>();
-        languageConfigs.put(
-                "python",
-                new LanguageConfig("dukunuu/python-executor:latest", "script.py")
-        );
-        languageConfigs.put(
-                "javascript",
-                new LanguageConfig("dukunuu/js-executor:latest", "script.js")
-        );
-        languageConfigs.put(
-                "java",
-                new LanguageConfig("dukunuu/java-executor:latest", "Main.java")
+    @Autowired
+    public CodeExecutionService(
+            LanguageRegistry languageRegistry,
+            List<CodeExecutor> executors,
+            ExecutionResultCache resultCache,
+            MeterRegistry meterRegistry,
+            // "docker" (sandboxed) or "local" (trusted code only, see LocalProcessExecutor)
+            @Value("${execution.executor:docker}") String executorName,
+            @Value("${code.execution.max.output.chars:10000}") int maxOutputChars,
+            @Value("${code.execution.output.kill.factor:4}") double outputKillFactor
+    ) {
+        this.languageRegistry = languageRegistry;
+        this.executor = executors.stream()
+                .filter(candidate -> candidate.name().equals(executorName.trim()))
+                .findFirst()
+                .orElseThrow(() -> new IllegalStateException(
+                        "Unknown execution.executor '" + executorName + "', expected one of " +
+                                executors.stream().map(CodeExecutor::name).collect(Collectors.toList())
+                ));
+        this.resultCache = resultCache;
+        this.meterRegistry = meterRegistry;
+        this.maxOutputChars = maxOutputChars;
+        this.outputKillThresholdBytes = (long) (maxOutputChars * outputKillFactor);
+        logger.info(
+                "CodeExecutionService initialized (executor: {}, output limit: {} chars)",
+                executor.name(),
+                maxOutputChars
         );
     }
 
-    private static class LanguageConfig {
-        final String imageName;
-        final String scriptFileName;
-
-        LanguageConfig(String imageName, String scriptFileName) {
-            this.imageName = imageName;
-            this.scriptFileName = scriptFileName;
+    /**
+     * Runs the code and returns the collected result. When the result cache is
+     * enabled, identical submissions (same code and stdin) are answered from
+     * the cache or share one in-flight run.
+     *
+     * @param stdin the program's input, null for none
+     */
+    public ExecutionResponse executeCode(String code, String language, ExecutionInput stdin) {
+        String cacheKey = resultCache.isEnabled() ? cacheKey(code, language, stdin, null) : null;
+        if (cacheKey == null) {
+            return executeCode(code, language, stdin, null);
         }
+        return resultCache.getOrExecute(cacheKey, () -> executeCode(code, language, stdin, null));
     }
 
-    @Autowired
-    public CodeExecutionService(
-            DockerClient dockerClient,
-            @Value("${execution.timeout.seconds:15}") long executionTimeoutSeconds,
-            // This path MUST be accessible by the Docker daemon AND the service container.
-            // If service is in a container, this path inside service container should be a mount
-            // from a host path that Docker daemon can see.
-            @Value(
-                    "${execution.temp.host.basepath:/tmp/code_execution_service_temp}"
-            ) String tempFileHostBasePath
+    /**
+     * Runs the code and returns the collected result. If an output listener is
+     * given, stdout/stderr chunks are also forwarded to it as they are produced.
+     */
+    public ExecutionResponse executeCode(
+            String code,
+            String language,
+            ExecutionInput stdin,
+            ExecutionOutputListener outputListener
     ) {
-        this.dockerClient = dockerClient;
-        this.executionTimeoutSeconds = executionTimeoutSeconds;
-        this.tempFileHostBasePath = tempFileHostBasePath;
-        logger.info(
-                "CodeExecutionService initialized with timeout: {} seconds",
-                executionTimeoutSeconds
-        );
-        logger.info(
-                "Temporary script files will be created in host base path: {}",
-                this.tempFileHostBasePath
-        );
-        try {
-            Files.createDirectories(Paths.get(this.tempFileHostBasePath));
-            logger.info(
-                    "Ensured temporary file base directory exists: {}",
-                    this.tempFileHostBasePath
-            );
-        } catch (IOException e) {
-            logger.error(
-                    "CRITICAL: Failed to create temporary file base directory: {}. " +
-                            "Please ensure this path is writable by the service and " +
-                            "accessible by the Docker daemon for bind mounts.",
-                    this.tempFileHostBasePath,
-                    e
-            );
-            // Consider throwing a runtime exception here to prevent service startup
-            // if this directory is essential and cannot be created.
+        return execute(code, language, stdin, outputListener, null);
+    }
+
+    /**
+     * Runs the code and compares its stdout with the expected output while it
+     * runs, stopping it at the first definitive mismatch. The response carries
+     * a {@link Verdict} (and where a wrong answer first differed) instead of
+     * the output; stderr is kept.
+     *
+     * @param comparison     exact, lines (default) or tokens, see {@link OutputComparator}
+     * @param floatTolerance allowed error of numeric tokens, tokens comparison only
+     * @throws IllegalArgumentException if the comparison settings are invalid
+     */
+    public ExecutionResponse executeJudged(
+            String code,
+            String language,
+            ExecutionInput stdin,
+            String expectedOutput,
+            String comparison,
+            Double floatTolerance
+    ) {
+        OutputComparator.Mode mode = OutputComparator.Mode.parse(comparison);
+        if (floatTolerance != null && (mode != OutputComparator.Mode.TOKENS || floatTolerance < 0)) {
+            throw new IllegalArgumentException("floatTolerance must not be negative and needs comparison=tokens");
+        }
+        String judging = mode + ";" + floatTolerance + ";" + expectedOutput;
+        String cacheKey = resultCache.isEnabled() ? cacheKey(code, language, stdin, judging) : null;
+        if (cacheKey == null) {
+            return execute(code, language, stdin, null, new OutputComparator(expectedOutput, mode, floatTolerance));
         }
+        return resultCache.getOrExecute(
+                cacheKey,
+                () -> execute(code, language, stdin, null, new OutputComparator(expectedOutput, mode, floatTolerance))
+        );
     }
 
-    public ExecutionResponse executeCode(String code, String language) {
+    private ExecutionResponse execute(
+            String code,
+            String language,
+            ExecutionInput stdin,
+            ExecutionOutputListener outputListener,
+            OutputComparator comparator
+    ) {
         ExecutionResponse response = new ExecutionResponse();
-        LanguageConfig config = languageConfigs.get(
-                language.toLowerCase().trim()
-        );
+        String languageKey = language.toLowerCase().trim();
+        LanguageConfig config = languageRegistry.forLanguage(languageKey);
 
         if (config == null) {
             response.setError("Unsupported language: " + language);
@@ -117,276 +134,88 @@ public class CodeExecutionService {
             return response;
         }
 
-        Path hostScriptFilePath = null; // Path to the script file on the host/shared volume
-        String containerId = null;
-
+        ExecutionPhases phases = new ExecutionPhases();
+        String backend = executor.name();
         try {
-            // 1. Create temp file with user's code in the configured shared path
-            Path tempDir = Paths.get(this.tempFileHostBasePath);
-            // Ensure the directory exists (it should from constructor, but good practice)
-            if (!Files.exists(tempDir)) {
-                Files.createDirectories(tempDir);
-            }
-
-            // Create a uniquely named file in the shared directory
-            hostScriptFilePath = Files.createTempFile(
-                    tempDir, // Directory for the temp file
-                    "userscript_", // Prefix
-                    "_" + config.scriptFileName // Suffix (e.g., "_script.py")
-            );
-            Files.writeString(
-                    hostScriptFilePath,
-                    code,
-                    StandardCharsets.UTF_8
-            );
-            logger.debug(
-                    "Temporary script file created at host path: {}",
-                    hostScriptFilePath.toAbsolutePath()
-            );
-
-            // 2. Prepare HostConfig for bind mount
-            // This hostPathForBind MUST be the path as seen by the Docker Daemon
-            String hostPathForBind = hostScriptFilePath
-                    .toAbsolutePath()
-                    .toString();
-            String containerPath = CONTAINER_WORKING_DIR +
-                    "/" +
-                    config.scriptFileName; // e.g., /app/script.py
-
-            logger.info(
-                    "Attempting to bind hostPath: [{}] to containerPath: [{}]",
-                    hostPathForBind,
-                    containerPath
-            );
-
-            Bind bind = new Bind(
-                    hostPathForBind,
-                    new Volume(containerPath),
-                    AccessMode.ro
-            );
-            HostConfig hostConfig = HostConfig
-                    .newHostConfig()
-                    .withBinds(bind)
-                    .withMemory(256L * 1024 * 1024)
-                    .withCpuShares(512);
-
-            // 3. Create container
-            logger.debug(
-                    "Creating container with image: {}",
-                    config.imageName
-            );
-            CreateContainerResponse containerResponse = dockerClient
-                    .createContainerCmd(config.imageName)
-                    .withHostConfig(hostConfig)
-                    .withWorkingDir(CONTAINER_WORKING_DIR)
-                    .withNetworkDisabled(true)
-                    .withAttachStdout(true)
-                    .withAttachStderr(true)
-                    .exec();
-            containerId = containerResponse.getId();
-            logger.info(
-                    "Container created: {} for language: {}",
-                    containerId,
-                    language
-            );
-
-            // 4. Start container
-            dockerClient.startContainerCmd(containerId).exec();
-            logger.debug("Container started: {}", containerId);
-
-            // 5. Wait for container to complete or timeout
-            WaitContainerResultCallback waitCallback = new WaitContainerResultCallback();
-            int exitCode = -1;
-            boolean timedOut = false;
-
-            try {
-                logger.debug(
-                        "Waiting for container {} to complete (timeout: {}s)",
-                        containerId,
-                        executionTimeoutSeconds
-                );
-                exitCode = dockerClient
-                        .waitContainerCmd(containerId)
-                        .exec(waitCallback)
-                        .awaitStatusCode(executionTimeoutSeconds, TimeUnit.SECONDS);
-                response.setExitCode(exitCode);
-                logger.info(
-                        "Container {} finished with exit code: {}",
-                        containerId,
-                        exitCode
-                );
-            } catch (DockerClientException e) {
-                logger.warn(
-                        "Wait for container {} timed out or was interrupted: {}",
-                        containerId,
-                        e.getMessage()
-                );
-                timedOut = true;
-                response.setTimeout(true);
-                response.setError(
-                        "Execution timed out after " +
-                                executionTimeoutSeconds +
-                                " seconds."
-                );
-                response.setExitCode(-1);
-
-                try {
-                    logger.info(
-                            "Attempting to kill timed-out container: {}",
-                            containerId
-                    );
-                    dockerClient.killContainerCmd(containerId).exec();
-                } catch (Exception killEx) {
-                    logger.error(
-                            "Failed to kill timed-out container {}: {}",
-                            containerId,
-                            killEx.getMessage()
-                    );
-                }
-            }
-
-            // 6. Fetch logs
-            final StringBuilder stdOutBuilder = new StringBuilder();
-            final StringBuilder stdErrBuilder = new StringBuilder();
-
-            LogContainerCmd logContainerCmd = dockerClient
-                    .logContainerCmd(containerId)
-                    .withStdOut(true)
-                    .withStdErr(true)
-                    .withFollowStream(false)
-                    .withTimestamps(false);
-
-            try {
-                logContainerCmd
-                        .exec(
-                                new ResultCallback.Adapter<Frame>() {
-                                    @Override
-                                    public void onNext(Frame item) {
-                                        if (
-                                                StreamType.STDOUT.equals(item.getStreamType())
-                                        ) {
-                                            stdOutBuilder.append(
-                                                    new String(
-                                                            item.getPayload(),
-                                                            StandardCharsets.UTF_8
-                                                    )
-                                            );
-                                        } else if (
-                                                StreamType.STDERR.equals(item.getStreamType())
-                                        ) {
-                                            stdErrBuilder.append(
-                                                    new String(
-                                                            item.getPayload(),
-                                                            StandardCharsets.UTF_8
-                                                    )
-                                            );
-                                        }
-                                    }
-                                }
-                        )
-                        .awaitCompletion();
-                logger.debug(
-                        "Logs collected for container {}",
-                        containerId
-                );
-            } catch (InterruptedException e) {
-                Thread.currentThread().interrupt();
-                logger.error(
-                        "Log collection interrupted for container {}: {}",
-                        containerId,
-                        e.getMessage()
-                );
-                stdErrBuilder.append(
-                        "\n[Service Error: Log collection interrupted]"
-                );
-            } catch (Exception e) {
-                logger.error(
-                        "Failed to retrieve logs for container {}: {}",
-                        containerId,
-                        e.getMessage()
-                );
-                stdErrBuilder.append(
-                        "\n[Service Error: Failed to retrieve logs: " +
-                                e.getMessage() +
-                                "]"
-                );
-            }
+            backend = executor.execute(languageKey, config, code, stdin, outputListener, comparator, response, phases);
+        } finally {
+            phases.publish(meterRegistry, languageKey, backend, outcomeOf(response));
+        }
+        if (comparator != null) {
+            judge(languageKey, response, comparator);
+        }
+        return response;
+    }
 
-            response.setOutput(stdOutBuilder.toString().trim());
-            if (!timedOut) { // Only set error from stderr if not timed out
-                response.setError(stdErrBuilder.toString().trim());
-            } else { // If timed out, the timeout message is already set. Append stderr if any.
-                String collectedStdErr = stdErrBuilder.toString().trim();
-                if (!collectedStdErr.isEmpty()) {
-                    response.setError(response.getError() + "\nPartial stderr before timeout:\n" + collectedStdErr);
-                }
-            }
+    /**
+     * A mismatch decides the verdict even if the program was killed for it;
+     * otherwise limits and the exit code come before the final comparison.
+     * Service failures (exit code -1 without a timeout) get no verdict.
+     */
+    private void judge(String languageKey, ExecutionResponse response, OutputComparator comparator) {
+        response.setOutput(null);
+        response.setOutputTruncated(false);
+        if (response.getExitCode() == -1 && !response.isTimeout()) {
+            return;
+        }
+        Verdict verdict;
+        if (comparator.mismatched()) {
+            verdict = Verdict.WA;
+        } else if (response.isTimeout()) {
+            verdict = Verdict.TLE;
+        } else if (response.isMemoryLimitExceeded()) {
+            verdict = Verdict.MLE;
+        } else if (response.getExitCode() != 0) {
+            verdict = Verdict.RE;
+        } else {
+            verdict = comparator.finish() ? Verdict.AC : Verdict.WA;
+        }
+        response.setVerdict(verdict);
+        if (verdict == Verdict.WA) {
+            response.setMismatch(comparator.mismatch());
+        }
+        meterRegistry.counter("execution.verdicts", "language", languageKey, "verdict", verdict.name()).increment();
+    }
 
+    private static String outcomeOf(ExecutionResponse response) {
+        if (response.isTimeout()) {
+            return "timeout";
+        }
+        if (response.getExitCode() == -1) {
+            return "error";
+        }
+        return response.getExitCode() == 0 ? "success" : "nonzero_exit";
+    }
 
-        } catch (IOException e) {
-            logger.error(
-                    "IOException during code execution setup: {}",
-                    e.getMessage(),
-                    e
-            );
-            response.setError(
-                    "Server error: Could not prepare execution environment. " +
-                            e.getMessage()
-            );
-            response.setExitCode(-1);
-        } catch (DockerException e) {
-            logger.error(
-                    "DockerException during code execution: {}",
-                    e.getMessage(),
-                    e
-            );
-            response.setError(
-                    "Server error: Docker operation failed. " + e.getMessage()
+    /**
+     * @param judging expected output and comparison settings, null for a plain run
+     * @return the result cache key, or null if the language is unsupported or
+     * the executor cannot fingerprint it (the run then simply bypasses the cache).
+     */
+    private String cacheKey(String code, String language, ExecutionInput stdin, String judging) {
+        String languageKey = language.toLowerCase().trim();
+        LanguageConfig config = languageRegistry.forLanguage(languageKey);
+        if (config == null) {
+            return null;
+        }
+        try {
+            return ExecutionResultCache.keyOf(
+                    languageKey,
+                    executor.name() + ":" + executor.cacheFingerprint(config),
+                    code,
+                    stdin != null ? stdin.digest() : null,
+                    "timeout=" + config.timeoutSeconds +
+                            ";maxOutputChars=" + maxOutputChars +
+                            ";outputKillBytes=" + outputKillThresholdBytes,
+                    judging
             );
-            response.setExitCode(-1);
         } catch (Exception e) {
-            logger.error(
-                    "Unexpected error during code execution: {}",
-                    e.getMessage(),
-                    e
+            logger.warn(
+                    "Could not fingerprint {} for result caching: {}",
+                    languageKey,
+                    e.getMessage()
             );
-            response.setError(
-                    "Server error: An unexpected error occurred. " + e.getMessage()
-            );
-            response.setExitCode(-1);
-        } finally {
-            if (containerId != null) {
-                try {
-                    logger.debug("Removing container: {}", containerId);
-                    dockerClient
-                            .removeContainerCmd(containerId)
-                            .withForce(true)
-                            .exec();
-                    logger.info("Container removed: {}", containerId);
-                } catch (Exception e) {
-                    logger.error(
-                            "Failed to remove container {}: {}",
-                            containerId,
-                            e.getMessage()
-                    );
-                }
-            }
-            if (hostScriptFilePath != null) {
-                try {
-                    Files.deleteIfExists(hostScriptFilePath);
-                    logger.debug(
-                            "Temporary script file deleted: {}",
-                            hostScriptFilePath.toAbsolutePath()
-                    );
-                } catch (IOException e) {
-                    logger.error(
-                            "Failed to delete temporary script file {}: {}",
-                            hostScriptFilePath,
-                            e.getMessage()
-                    );
-                }
-            }
+            return null;
         }
-        return response;
     }
 }
@@ -0,0 +1,57 @@
+package com.biye_daalt.code_execution_service.service;
+
+import com.biye_daalt.code_execution_service.dto.ExecutionResponse;
+
+/**
+ * A backend that runs one submission, selected with {@code execution.executor}.
+ * <p>
+ * {@link CodeExecutionService} looks up the language, answers from the result
+ * cache and publishes the phase timers; the backend only runs the program. All
+ * backends collect output through a {@link FrameCollector}, so output limits,
+ * streaming to listeners and the response format are the same everywhere.
+ */
+interface CodeExecutor {
+
+    /**
+     * @return the value of {@code execution.executor} that selects this backend
+     */
+    String name();
+
+    /**
+     * Runs the code, with the input (if any) as its stdin, and fills in exit
+     * code, output, errors and resource usage.
+     * Failures of the backend itself are reported in the response as well
+     * (exit code -1), never thrown. With a comparator (judged runs), stdout is
+     * fed to it and the program is stopped at the first definitive mismatch;
+     * backends also set {@code memoryLimitExceeded} when they can tell.
+     *
+     * @return the backend tag for the execution metrics, e.g. {@code container} or {@code exec}
+     */
+    String execute(
+            String languageKey,
+            LanguageConfig config,
+            String code,
+            ExecutionInput stdin,
+            ExecutionOutputListener outputListener,
+            OutputComparator comparator,
+            ExecutionResponse response,
+            ExecutionPhases phases
+    );
+
+    /**
+     * @return everything besides the code and limits that decides what the
+     * program prints, e.g. the image digest, as part of the result cache key
+     * @throws Exception if it cannot be determined; the run then bypasses the cache
+     */
+    String cacheFingerprint(LanguageConfig config) throws Exception;
+
+    static void markTimedOut(ExecutionResponse response, long timeoutSeconds) {
+        response.setTimeout(true);
+        response.setError(
+                "Execution timed out after " +
+                        timeoutSeconds +
+                        " seconds."
+        );
+        response.setExitCode(-1);
+    }
+}
@@ -0,0 +1,235 @@
+package com.biye_daalt.code_execution_service.service;
+
+import com.biye_daalt.code_execution_service.config.ConditionalOnDockerExecutor;
+import com.biye_daalt.code_execution_service.config.DockerDaemon;
+import com.github.dockerjava.api.async.ResultCallback;
+import com.github.dockerjava.api.model.Frame;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compile-once/run-many support for compiled languages (currently Java).
+ * <p>
+ * Source is compiled in a dedicated container and the compiler's output
+ * directory is kept in {@link CompiledArtifactCache}, keyed by the source and
+ * the compiler image. Runs then only copy the bytecode into a container and
+ * execute it, so repeated runs and batch judging of the same source never
+ * invoke the compiler again. Concurrent compilations of the same source share
+ * one container.
+ */
+@ConditionalOnDockerExecutor
+@Service
+public class CompilationService {
+
+    private static final Logger logger = LoggerFactory
+            .getLogger(CompilationService.class);
+
+    /**
+     * Outcome of a compilation: either the artifact tar, or the compiler's
+     * exit code and diagnostics.
+     */
+    public record CompilationResult(byte[] artifactTar, int exitCode, String output, boolean timedOut) {
+        boolean succeeded() {
+            return artifactTar != null;
+        }
+    }
+
+    private final SandboxContainerFactory containerFactory;
+    private final ContainerExitDispatcher exitDispatcher;
+    private final ContainerReaper containerReaper;
+    private final CompiledArtifactCache artifactCache;
+    private final ImageDigestResolver imageDigestResolver;
+    private final MeterRegistry meterRegistry;
+    private final boolean enabled;
+    private final long compileTimeoutSeconds;
+    private final int maxOutputChars;
+
+    private final Map<String, CompletableFuture<CompilationResult>> inFlight = new ConcurrentHashMap<>();
+
+    @Autowired
+    public CompilationService(
+            SandboxContainerFactory containerFactory,
+            ContainerExitDispatcher exitDispatcher,
+            ContainerReaper containerReaper,
+            CompiledArtifactCache artifactCache,
+            ImageDigestResolver imageDigestResolver,
+            MeterRegistry meterRegistry,
+            @Value("${execution.compile-cache.enabled:true}") boolean enabled,
+            @Value("${execution.timeout.seconds:15}") long compileTimeoutSeconds,
+            @Value("${code.execution.max.output.chars:10000}") int maxOutputChars
+    ) {
+        this.containerFactory = containerFactory;
+        this.exitDispatcher = exitDispatcher;
+        this.containerReaper = containerReaper;
+        this.artifactCache = artifactCache;
+        this.imageDigestResolver = imageDigestResolver;
+        this.meterRegistry = meterRegistry;
+        this.enabled = enabled;
+        this.compileTimeoutSeconds = compileTimeoutSeconds;
+        this.maxOutputChars = maxOutputChars;
+    }
+
+    /**
+     * @return true if runs of this language should go through {@link #compile}
+     * and execute only the cached artifacts
+     */
+    boolean handles(LanguageConfig config) {
+        return enabled && config.compileCommand != null && config.artifactPath != null;
+    }
+
+    /**
+     * Returns the cached artifacts for the source, compiling it first on the
+     * given daemon if needed.
+     */
+    CompilationResult compile(
+            DockerDaemon daemon,
+            String languageKey,
+            LanguageConfig config,
+            String code
+    ) throws IOException {
+        String key = ExecutionResultCache.keyOf(
+                "compile",
+                imageDigestResolver.resolve(daemon, config.imageName),
+                config.compileCommand,
+                code
+        );
+
+        byte[] cached = artifactCache.get(key);
+        if (cached != null) {
+            meterRegistry.counter("execution.compile.requests", "language", languageKey, "result", "hit").increment();
+            return new CompilationResult(cached, 0, "", false);
+        }
+
+        CompletableFuture<CompilationResult> ownFuture = new CompletableFuture<>();
+        CompletableFuture<CompilationResult> running = inFlight.putIfAbsent(key, ownFuture);
+        if (running != null) {
+            try {
+                return running.join();
+            } catch (CompletionException e) {
+                if (e.getCause() instanceof IOException ioException) {
+                    throw ioException;
+                }
+                throw e;
+            }
+        }
+
+        meterRegistry.counter("execution.compile.requests", "language", languageKey, "result", "miss").increment();
+        Timer.Sample sample = Timer.start(meterRegistry);
+        try {
+            CompilationResult result = compileInContainer(daemon, languageKey, config, code);
+            if (result.succeeded()) {
+                artifactCache.put(key, result.artifactTar());
+            }
+            ownFuture.complete(result);
+            return result;
+        } catch (IOException | RuntimeException e) {
+            ownFuture.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, ownFuture);
+            sample.stop(meterRegistry.timer("execution.compile.duration", "language", languageKey));
+        }
+    }
+
+    private CompilationResult compileInContainer(
+            DockerDaemon daemon,
+            String languageKey,
+            LanguageConfig config,
+            String code
+    ) throws IOException {
+        SandboxContainer sandbox = containerFactory.create(
+                daemon,
+                languageKey,
+                config,
+                new String[]{"sh", "-c", config.compileCommand},
+                null
+        );
+        try {
+            String containerId = sandbox.containerId;
+            containerFactory.deliverCode(sandbox, config, code);
+            exitDispatcher.start(sandbox);
+
+            ContainerExitDispatcher.ContainerExit exit;
+            try {
+                exit = exitDispatcher.await(sandbox, compileTimeoutSeconds);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while compiling", e);
+            }
+            int exitCode = exit.exitCode();
+            if (exit.timedOut()) {
+                logger.warn("Compilation in container {} timed out", containerId);
+                return new CompilationResult(
+                        null,
+                        -1,
+                        "Compilation timed out after " + compileTimeoutSeconds + " seconds.",
+                        true
+                );
+            }
+
+            if (exitCode != 0) {
+                logger.info("Compilation in container {} failed with exit code: {}", containerId, exitCode);
+                return new CompilationResult(null, exitCode, readCompilerOutput(daemon, containerId), false);
+            }
+
+            try (
+                    InputStream artifacts = daemon.control()
+                            .copyArchiveFromContainerCmd(
+                                    containerId,
+                                    SandboxContainerFactory.CONTAINER_WORKING_DIR + "/" + config.artifactPath
+                            )
+                            .exec()
+            ) {
+                byte[] artifactTar = artifacts.readAllBytes();
+                logger.info(
+                        "Compiled {} source in container {} ({} bytes of artifacts)",
+                        languageKey,
+                        containerId,
+                        artifactTar.length
+                );
+                return new CompilationResult(artifactTar, 0, "", false);
+            }
+        } finally {
+            containerReaper.submit(sandbox);
+        }
+    }
+
+    private String readCompilerOutput(DockerDaemon daemon, String containerId) {
+        OutputCapture capture = new OutputCapture(maxOutputChars);
+        try {
+            daemon.control()
+                    .logContainerCmd(containerId)
+                    .withStdOut(true)
+                    .withStdErr(true)
+                    .withFollowStream(false)
+                    .exec(
+                            new ResultCallback.Adapter<Frame>() {
+                                @Override
+                                public void onNext(Frame item) {
+                                    capture.append(item.getPayload());
+                                }
+                            }
+                    )
+                    .awaitCompletion(compileTimeoutSeconds, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            capture.appendNote("\n[Service Error: Log collection interrupted]");
+        } catch (Exception e) {
+            capture.appendNote("\n[Service Error: Failed to retrieve logs: " + e.getMessage() + "]");
+        }
+        return capture.toString().trim();
+    }
+}
@@ -0,0 +1,72 @@
+package com.biye_daalt.code_execution_service.service;
+
+import com.biye_daalt.code_execution_service.config.ConditionalOnDockerExecutor;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Bounded, content-addressed store of compiled artifacts (a tar of the
+ * compiler's output directory), keyed by a hash of the source and the
+ * compiler image. Least-recently-used entries are evicted once the total size
+ * exceeds {@code execution.compile-cache.max-bytes}.
+ */
+@ConditionalOnDockerExecutor
+@Component
+public class CompiledArtifactCache {
+
+    private final long maxBytes;
+    private final long maxEntryBytes;
+    private final Map<String, byte[]> artifacts = new LinkedHashMap<>(16, 0.75f, true);
+    private long totalBytes;
+
+    @Autowired
+    public CompiledArtifactCache(
+            MeterRegistry meterRegistry,
+            @Value("${execution.compile-cache.max-bytes:67108864}") long maxBytes,
+            @Value("${execution.compile-cache.max-entry-bytes:4194304}") long maxEntryBytes
+    ) {
+        this.maxBytes = maxBytes;
+        this.maxEntryBytes = maxEntryBytes;
+        Gauge.builder("execution.compile-cache.bytes", this, CompiledArtifactCache::totalBytes)
+                .description("Bytes of compiled artifacts held in memory")
+                .register(meterRegistry);
+    }
+
+    /**
+     * @return the artifact tar, or null if not cached
+     */
+    synchronized byte[] get(String key) {
+        return artifacts.get(key);
+    }
+
+    /**
+     * Stores the artifact unless it is larger than the per-entry limit.
+     */
+    synchronized void put(String key, byte[] artifactTar) {
+        if (artifactTar.length > maxEntryBytes) {
+            return;
+        }
+        byte[] previous = artifacts.put(key, artifactTar);
+        if (previous != null) {
+            totalBytes -= previous.length;
+        }
+        totalBytes += artifactTar.length;
+
+        Iterator<byte[]> eldest = artifacts.values().iterator();
+        while (totalBytes > maxBytes && eldest.hasNext()) {
+            totalBytes -= eldest.next().length;
+            eldest.remove();
+        }
+    }
+
+    synchronized long totalBytes() {
+        return totalBytes;
+    }
+}
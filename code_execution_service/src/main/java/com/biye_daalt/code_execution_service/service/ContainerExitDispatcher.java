@@ -0,0 +1,334 @@
+package com.biye_daalt.code_execution_service.service;
+
+import com.biye_daalt.code_execution_service.config.ConditionalOnDockerExecutor;
+import com.biye_daalt.code_execution_service.config.DockerDaemon;
+import com.github.dockerjava.api.async.ResultCallback;
+import com.github.dockerjava.api.command.InspectContainerResponse;
+import com.github.dockerjava.api.exception.NotFoundException;
+import com.github.dockerjava.api.model.Event;
+import com.github.dockerjava.api.model.EventActor;
+import com.github.dockerjava.api.model.EventType;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Waits for sandbox containers to exit using a single subscription to the
+ * Docker events stream, instead of one blocking {@code wait} request (and one
+ * pooled daemon connection) per running container.
+ * <p>
+ * Callers {@link #start} a container through the dispatcher and then
+ * {@link #await} its exit. {@code die} events of containers carrying
+ * {@link SandboxContainerFactory#SANDBOX_LABEL} complete the matching
+ * future; an {@code oom} event only marks it, since a {@code die} always
+ * follows. Deadlines are kept on one scheduler thread which kills a container
+ * once its time is up; the resulting {@code die} event then completes the wait.
+ * <p>
+ * There is one subscription per Docker daemon. If a stream drops it is
+ * re-subscribed from the time of its last event, so nothing is missed. While
+ * it is down, the daemon's watched containers are polled with {@code inspect}
+ * instead.
+ */
+@ConditionalOnDockerExecutor
+@Component
+public class ContainerExitDispatcher {
+
+    private static final Logger logger = LoggerFactory
+            .getLogger(ContainerExitDispatcher.class);
+
+    // Extra time for the die event of a killed container before giving up on it
+    private static final long KILL_GRACE_SECONDS = 10;
+    private static final long RESUBSCRIBE_DELAY_SECONDS = 1;
+
+    /**
+     * How a watched container ended. {@code timedOut} is set when the
+     * dispatcher killed it for running past its deadline; the exit code is
+     * -1 if its exit could not be observed at all.
+     */
+    public record ContainerExit(int exitCode, boolean oomKilled, boolean timedOut) {
+    }
+
+    private static final class Watch {
+        final SandboxContainer container;
+        final CompletableFuture<ContainerExit> exit = new CompletableFuture<>();
+        volatile boolean oomKilled;
+        volatile boolean timedOut;
+        volatile ScheduledFuture<?> deadline;
+
+        Watch(SandboxContainer container) {
+            this.container = container;
+        }
+    }
+
+    /**
+     * The events stream of one daemon.
+     */
+    private final class Subscription {
+        final DockerDaemon daemon;
+        volatile Closeable stream;
+        volatile boolean connected;
+        volatile long lastEventSeconds = System.currentTimeMillis() / 1000;
+
+        Subscription(DockerDaemon daemon) {
+            this.daemon = daemon;
+        }
+
+        void subscribe() {
+            if (!running) {
+                return;
+            }
+            AtomicBoolean ended = new AtomicBoolean(false);
+            try {
+                stream = daemon.streaming()
+                        .eventsCmd()
+                        .withEventTypeFilter(EventType.CONTAINER)
+                        .withEventFilter("die", "oom")
+                        .withLabelFilter(SandboxContainerFactory.SANDBOX_LABEL)
+                        .withSince(String.valueOf(lastEventSeconds))
+                        .exec(new ResultCallback.Adapter<Event>() {
+                            @Override
+                            public void onStart(Closeable stream) {
+                                super.onStart(stream);
+                                connected = true;
+                                logger.info("Subscribed to container events of {}", daemon);
+                                // Catch up on anything that exited while the stream was down
+                                scheduler.execute(() -> pollWatched(daemon));
+                            }
+
+                            @Override
+                            public void onNext(Event event) {
+                                if (event.getTime() != null) {
+                                    lastEventSeconds = Math.max(lastEventSeconds, event.getTime());
+                                }
+                                handle(event);
+                            }
+
+                            @Override
+                            public void onError(Throwable throwable) {
+                                logger.warn("Events stream of {} failed: {}", daemon, throwable.getMessage());
+                                if (ended.compareAndSet(false, true)) {
+                                    resubscribe();
+                                }
+                            }
+
+                            @Override
+                            public void onComplete() {
+                                if (ended.compareAndSet(false, true)) {
+                                    resubscribe();
+                                }
+                            }
+                        });
+            } catch (Exception e) {
+                logger.warn("Failed to subscribe to events of {}: {}", daemon, e.getMessage());
+                resubscribe();
+            }
+        }
+
+        private void resubscribe() {
+            connected = false;
+            if (running && !scheduler.isShutdown()) {
+                meterRegistry.counter("execution.events.resubscribes", "daemon", daemon.id()).increment();
+                scheduler.schedule(this::subscribe, RESUBSCRIBE_DELAY_SECONDS, TimeUnit.SECONDS);
+            }
+        }
+
+        void close() {
+            Closeable current = stream;
+            if (current != null) {
+                try {
+                    current.close();
+                } catch (Exception e) {
+                    logger.debug("Failed to close events stream of {}: {}", daemon, e.getMessage());
+                }
+            }
+        }
+    }
+
+    private final MeterRegistry meterRegistry;
+
+    private final Map<String, Watch> watches = new ConcurrentHashMap<>();
+    private final List<Subscription> subscriptions = new ArrayList<>();
+    private final ScheduledThreadPoolExecutor scheduler;
+    private volatile boolean running = true;
+
+    @Autowired
+    public ContainerExitDispatcher(
+            DaemonScheduler daemonScheduler,
+            MeterRegistry meterRegistry,
+            @Value("${execution.events.poll-interval-seconds:2}") long pollIntervalSeconds
+    ) {
+        this.meterRegistry = meterRegistry;
+
+        this.scheduler = new ScheduledThreadPoolExecutor(1, runnable -> {
+            Thread thread = new Thread(runnable, "container-exit-dispatcher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.setRemoveOnCancelPolicy(true);
+
+        Gauge.builder("execution.events.watched", watches, Map::size)
+                .description("Running sandbox containers waiting for their exit event")
+                .register(meterRegistry);
+
+        for (DockerDaemon daemon : daemonScheduler.all()) {
+            Subscription subscription = new Subscription(daemon);
+            subscriptions.add(subscription);
+            Gauge.builder("execution.events.connected", subscription, s -> s.connected ? 1 : 0)
+                    .description("1 while the Docker events subscription is up")
+                    .tag("daemon", daemon.id())
+                    .register(meterRegistry);
+            scheduler.execute(subscription::subscribe);
+        }
+        scheduler.scheduleWithFixedDelay(this::pollIfDisconnected, pollIntervalSeconds, pollIntervalSeconds, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Starts the container with its exit already being watched, so that even
+     * an immediate exit is observed. Follow up with {@link #await}.
+     */
+    void start(SandboxContainer container) {
+        watches.put(container.containerId, new Watch(container));
+        try {
+            container.daemon.control().startContainerCmd(container.containerId).exec();
+        } catch (RuntimeException e) {
+            forget(container.containerId);
+            throw e;
+        }
+    }
+
+    private void forget(String containerId) {
+        Watch watch = watches.remove(containerId);
+        if (watch != null && watch.deadline != null) {
+            watch.deadline.cancel(false);
+        }
+    }
+
+    /**
+     * Blocks until the watched container exits. If it is still running after
+     * {@code timeoutSeconds} it is killed and reported as timed out.
+     */
+    ContainerExit await(SandboxContainer container, long timeoutSeconds) throws InterruptedException {
+        String containerId = container.containerId;
+        Watch watch = watches.get(containerId);
+        if (watch == null) {
+            throw new IllegalStateException("Container " + containerId + " is not being watched");
+        }
+        watch.deadline = scheduler.schedule(
+                () -> killOnDeadline(watch),
+                timeoutSeconds,
+                TimeUnit.SECONDS
+        );
+        try {
+            return watch.exit.get(timeoutSeconds + KILL_GRACE_SECONDS, TimeUnit.SECONDS);
+        } catch (TimeoutException e) {
+            logger.warn("No exit observed for container {} even after killing it", containerId);
+            return new ContainerExit(-1, watch.oomKilled, true);
+        } catch (ExecutionException e) {
+            logger.warn("Failed to observe exit of container {}: {}", containerId, e.getCause().getMessage());
+            return new ContainerExit(-1, watch.oomKilled, watch.timedOut);
+        } finally {
+            forget(containerId);
+        }
+    }
+
+    private void killOnDeadline(Watch watch) {
+        if (watch.exit.isDone()) {
+            return;
+        }
+        String containerId = watch.container.containerId;
+        watch.timedOut = true;
+        meterRegistry.counter("execution.events.deadline.kills").increment();
+        logger.info("Container {} reached its deadline, killing it", containerId);
+        try {
+            watch.container.daemon.control().killContainerCmd(containerId).exec();
+        } catch (Exception e) {
+            // Most likely it exited just now; the die event (or the poll) completes the wait
+            logger.debug("Failed to kill container {} at its deadline: {}", containerId, e.getMessage());
+        }
+    }
+
+    private void handle(Event event) {
+        EventActor actor = event.getActor();
+        String containerId = actor != null ? actor.getId() : event.getId();
+        Watch watch = containerId != null ? watches.get(containerId) : null;
+        if (watch == null) {
+            return;
+        }
+        if ("oom".equals(event.getAction())) {
+            watch.oomKilled = true;
+            return;
+        }
+        // Older daemons send no actor; the exit code is then unknown
+        Map<String, String> attributes = actor != null ? actor.getAttributes() : null;
+        String exitCode = attributes != null ? attributes.get("exitCode") : null;
+        complete(watch, exitCode != null ? Integer.parseInt(exitCode) : -1, watch.oomKilled);
+    }
+
+    private void complete(Watch watch, int exitCode, boolean oomKilled) {
+        watch.exit.complete(new ContainerExit(exitCode, oomKilled, watch.timedOut));
+    }
+
+    private void pollIfDisconnected() {
+        for (Subscription subscription : subscriptions) {
+            if (!subscription.connected) {
+                pollWatched(subscription.daemon);
+            }
+        }
+    }
+
+    /**
+     * Inspects the daemon's watched containers and completes those that have exited.
+     */
+    private void pollWatched(DockerDaemon daemon) {
+        for (Watch watch : watches.values()) {
+            if (watch.container.daemon != daemon || watch.exit.isDone()) {
+                continue;
+            }
+            String containerId = watch.container.containerId;
+            try {
+                InspectContainerResponse.ContainerState state = daemon.control()
+                        .inspectContainerCmd(containerId)
+                        .exec()
+                        .getState();
+                // "created" containers have not been started yet and must not count as exited
+                if ("exited".equals(state.getStatus()) || "dead".equals(state.getStatus())) {
+                    Long exitCode = state.getExitCodeLong();
+                    complete(
+                            watch,
+                            exitCode != null ? exitCode.intValue() : -1,
+                            watch.oomKilled || Boolean.TRUE.equals(state.getOOMKilled())
+                    );
+                }
+            } catch (NotFoundException e) {
+                watch.exit.completeExceptionally(e);
+            } catch (Exception e) {
+                logger.debug("Failed to inspect watched container {}: {}", containerId, e.getMessage());
+            }
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        running = false;
+        scheduler.shutdownNow();
+        subscriptions.forEach(Subscription::close);
+    }
+}
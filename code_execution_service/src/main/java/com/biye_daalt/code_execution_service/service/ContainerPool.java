@@ -0,0 +1,228 @@
+package com.biye_daalt.code_execution_service.service;
+
+import com.biye_daalt.code_execution_service.config.ConditionalOnDockerExecutor;
+import com.biye_daalt.code_execution_service.config.DockerDaemon;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps a bounded number of created-but-not-started sandbox containers per
+ * Docker daemon and language so that a request only has to write its code and start a container.
+ * <p>
+ * Containers are single use: once a pooled container has run user code it is
+ * destroyed rather than returned, since its filesystem may have been modified.
+ * A background task tops every language back up to the configured size and
+ * replaces containers that have been idle for too long (e.g. after an image update).
+ * Drained daemons are not refilled and their idle containers are removed.
+ */
+@ConditionalOnDockerExecutor
+@Component
+public class ContainerPool {
+
+    private static final Logger logger = LoggerFactory
+            .getLogger(ContainerPool.class);
+
+    private final DaemonScheduler daemonScheduler;
+    private final LanguageRegistry languageRegistry;
+    private final SandboxContainerFactory containerFactory;
+    private final ContainerReaper containerReaper;
+    private final CompilationService compilationService;
+    private final boolean enabled;
+    private final int sizePerLanguage;
+    private final long maxIdleMillis;
+
+    private final Map<String, ConcurrentLinkedDeque<SandboxContainer>> idleContainers = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService refillExecutor;
+
+    private final MeterRegistry meterRegistry;
+
+    @Autowired
+    public ContainerPool(
+            DaemonScheduler daemonScheduler,
+            LanguageRegistry languageRegistry,
+            SandboxContainerFactory containerFactory,
+            ContainerReaper containerReaper,
+            CompilationService compilationService,
+            MeterRegistry meterRegistry,
+            @Value("${execution.pool.enabled:true}") boolean enabled,
+            @Value("${execution.pool.size-per-language:2}") int sizePerLanguage,
+            @Value("${execution.pool.refill-interval-seconds:5}") long refillIntervalSeconds,
+            @Value("${execution.pool.max-idle-seconds:600}") long maxIdleSeconds
+    ) {
+        this.daemonScheduler = daemonScheduler;
+        this.languageRegistry = languageRegistry;
+        this.containerFactory = containerFactory;
+        this.containerReaper = containerReaper;
+        this.compilationService = compilationService;
+        this.meterRegistry = meterRegistry;
+        this.enabled = enabled && sizePerLanguage > 0;
+        this.sizePerLanguage = sizePerLanguage;
+        this.maxIdleMillis = TimeUnit.SECONDS.toMillis(maxIdleSeconds);
+
+        this.refillExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "container-pool-refill");
+            thread.setDaemon(true);
+            return thread;
+        });
+        if (this.enabled) {
+            refillExecutor.scheduleWithFixedDelay(
+                    this::refillAll,
+                    0,
+                    refillIntervalSeconds,
+                    TimeUnit.SECONDS
+            );
+            languageRegistry.addListener(changed -> refillExecutor.execute(() -> replaceChanged(changed)));
+            logger.info(
+                    "Container pool enabled with {} containers per language (refill every {}s)",
+                    sizePerLanguage,
+                    refillIntervalSeconds
+            );
+        } else {
+            logger.info("Container pool disabled; containers will be created per request");
+        }
+    }
+
+    /**
+     * Takes a ready container for the language on the given daemon out of the pool.
+     *
+     * @return a created container, or null if the pool is disabled or empty
+     */
+    SandboxContainer acquire(DockerDaemon daemon, String language) {
+        if (!enabled) {
+            return null;
+        }
+        SandboxContainer container = idle(daemon, language).pollFirst();
+        if (container != null) {
+            counter("execution.pool.hits", language).increment();
+        } else {
+            counter("execution.pool.misses", language).increment();
+        }
+        // Top the pool back up without waiting for the next scheduled run.
+        refillExecutor.execute(() -> refill(daemon, language));
+        return container;
+    }
+
+    private void refillAll() {
+        for (DockerDaemon daemon : daemonScheduler.all()) {
+            boolean healthy = daemonScheduler.isHealthy(daemon);
+            for (String language : languageRegistry.all().keySet()) {
+                evictExpired(daemon, language, !healthy);
+                refill(daemon, language);
+            }
+        }
+    }
+
+    private void refill(DockerDaemon daemon, String language) {
+        if (!daemonScheduler.isHealthy(daemon)) {
+            return;
+        }
+        LanguageConfig config = languageRegistry.forLanguage(language);
+        if (config == null) {
+            return;
+        }
+        ConcurrentLinkedDeque<SandboxContainer> deque = idle(daemon, language);
+        while (deque.size() < sizePerLanguage) {
+            try {
+                deque.addLast(containerFactory.create(daemon, language, config, commandFor(config), null));
+                counter("execution.pool.refills", language).increment();
+            } catch (Exception e) {
+                counter("execution.pool.refill.failures", language).increment();
+                logger.warn(
+                        "Failed to pre-create container for language {} on {}: {}",
+                        language,
+                        daemon,
+                        e.getMessage()
+                );
+                // Leave the rest for the next scheduled run instead of hammering the daemon.
+                return;
+            }
+        }
+    }
+
+    /**
+     * Languages whose artifacts are cached get containers that only run the
+     * compiled program; all others compile (if needed) and run. Either way the
+     * program reads the delivered stdin file, if any.
+     */
+    String[] commandFor(LanguageConfig config) {
+        String command = compilationService.handles(config) || config.compileCommand == null
+                ? config.runCommand
+                : config.compileCommand + " && " + config.runCommand;
+        return new String[]{"sh", "-c", containerFactory.runCommand(command)};
+    }
+
+    /**
+     * Removes containers that have been idle for too long, or all of them
+     * (e.g. if the daemon has been drained).
+     */
+    private void evictExpired(DockerDaemon daemon, String language, boolean evictAll) {
+        long now = System.currentTimeMillis();
+        ConcurrentLinkedDeque<SandboxContainer> deque = idle(daemon, language);
+        for (SandboxContainer container : deque) {
+            boolean expired = evictAll || now - container.createdAtMillis > maxIdleMillis;
+            if (expired && deque.remove(container)) {
+                logger.debug("Evicting idle pooled container {}", container.containerId);
+                containerReaper.submit(container);
+            }
+        }
+    }
+
+    /**
+     * Drops idle containers of languages whose registry entry changed (new
+     * image, commands or limits) and creates fresh ones.
+     */
+    private void replaceChanged(Set<String> languages) {
+        for (DockerDaemon daemon : daemonScheduler.all()) {
+            for (String language : languages) {
+                evictExpired(daemon, language, true);
+                refill(daemon, language);
+            }
+        }
+    }
+
+    private ConcurrentLinkedDeque<SandboxContainer> idle(DockerDaemon daemon, String language) {
+        return idleContainers.computeIfAbsent(poolKey(daemon, language), key -> {
+            ConcurrentLinkedDeque<SandboxContainer> deque = new ConcurrentLinkedDeque<>();
+            Gauge.builder("execution.pool.idle", deque, ConcurrentLinkedDeque::size)
+                    .description("Pre-created sandbox containers waiting for a request")
+                    .tag("language", language)
+                    .tag("daemon", daemon.id())
+                    .register(meterRegistry);
+            return deque;
+        });
+    }
+
+    private static String poolKey(DockerDaemon daemon, String language) {
+        return daemon.id() + "/" + language;
+    }
+
+    private Counter counter(String name, String language) {
+        return meterRegistry.counter(name, "language", language);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        refillExecutor.shutdownNow();
+        idleContainers.values().forEach(deque -> {
+            SandboxContainer container;
+            while ((container = deque.pollFirst()) != null) {
+                containerFactory.destroy(container);
+            }
+        });
+    }
+}
@@ -0,0 +1,202 @@
+package com.biye_daalt.code_execution_service.service;
+
+import com.biye_daalt.code_execution_service.config.ConditionalOnDockerExecutor;
+import com.biye_daalt.code_execution_service.config.DockerDaemon;
+import com.github.dockerjava.api.model.Container;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Removes finished sandbox containers in the background so that responses
+ * do not wait for Docker teardown.
+ * <p>
+ * Callers hand containers over with {@link #submit}; worker threads drain the
+ * queue in batches and force-remove them, retrying a few times on failure.
+ * A sweeper runs at startup and then periodically. It prunes containers that
+ * carry {@link SandboxContainerFactory#SANDBOX_LABEL} but were left behind:
+ * containers of other (e.g. crashed) service instances, and exited containers
+ * of this instance whose removal kept failing. It also deletes stale
+ * {@code userscript_*} files. Anything younger than
+ * {@code execution.reaper.orphan-age-seconds} is left alone, so this must be
+ * longer than a container is normally kept (pool idle time, exec sandboxes)
+ * when several instances share one Docker daemon.
+ */
+@ConditionalOnDockerExecutor
+@Component
+public class ContainerReaper {
+
+    private static final Logger logger = LoggerFactory
+            .getLogger(ContainerReaper.class);
+
+    private static final int MAX_REMOVE_ATTEMPTS = 3;
+
+    private record PendingRemoval(SandboxContainer container, int attempt) {
+    }
+
+    private final DaemonScheduler daemonScheduler;
+    private final SandboxContainerFactory containerFactory;
+    private final MeterRegistry meterRegistry;
+    private final int batchSize;
+    private final long orphanAgeMillis;
+
+    private final LinkedBlockingQueue<PendingRemoval> queue = new LinkedBlockingQueue<>();
+    private final ExecutorService workers;
+    private final ScheduledExecutorService sweeper;
+    private volatile boolean running = true;
+
+    @Autowired
+    public ContainerReaper(
+            DaemonScheduler daemonScheduler,
+            SandboxContainerFactory containerFactory,
+            MeterRegistry meterRegistry,
+            @Value("${execution.reaper.workers:2}") int workerCount,
+            @Value("${execution.reaper.batch-size:20}") int batchSize,
+            @Value("${execution.reaper.sweep-interval-seconds:300}") long sweepIntervalSeconds,
+            @Value("${execution.reaper.orphan-age-seconds:1800}") long orphanAgeSeconds
+    ) {
+        this.daemonScheduler = daemonScheduler;
+        this.containerFactory = containerFactory;
+        this.meterRegistry = meterRegistry;
+        this.batchSize = batchSize;
+        this.orphanAgeMillis = TimeUnit.SECONDS.toMillis(orphanAgeSeconds);
+
+        Gauge.builder("execution.reaper.backlog", queue, LinkedBlockingQueue::size)
+                .description("Containers waiting to be removed")
+                .register(meterRegistry);
+
+        this.workers = Executors.newFixedThreadPool(workerCount, runnable -> {
+            Thread thread = new Thread(runnable, "container-reaper");
+            thread.setDaemon(true);
+            return thread;
+        });
+        for (int i = 0; i < workerCount; i++) {
+            workers.execute(this::drainQueue);
+        }
+
+        this.sweeper = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "container-sweeper");
+            thread.setDaemon(true);
+            return thread;
+        });
+        sweeper.scheduleWithFixedDelay(this::sweep, 0, sweepIntervalSeconds, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Queues the container (and its script file) for removal and returns
+     * immediately. The container may still be running; it is force-removed.
+     */
+    void submit(SandboxContainer container) {
+        queue.add(new PendingRemoval(container, 1));
+    }
+
+    private void drainQueue() {
+        List<PendingRemoval> batch = new ArrayList<>(batchSize);
+        while (running) {
+            try {
+                batch.add(queue.take());
+                queue.drainTo(batch, batchSize - 1);
+                for (PendingRemoval pending : batch) {
+                    remove(pending);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (RuntimeException e) {
+                logger.error("Unexpected error while removing containers: {}", e.getMessage(), e);
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private void remove(PendingRemoval pending) {
+        Timer.Sample sample = Timer.start(meterRegistry);
+        boolean removed = containerFactory.destroy(pending.container());
+        sample.stop(meterRegistry.timer("execution.reaper.removal.duration"));
+        if (removed) {
+            meterRegistry.counter("execution.reaper.removed").increment();
+        } else if (pending.attempt() < MAX_REMOVE_ATTEMPTS) {
+            queue.add(new PendingRemoval(pending.container(), pending.attempt() + 1));
+        } else {
+            // The sweeper picks it up once it has been around for longer than the orphan age
+            meterRegistry.counter("execution.reaper.failures").increment();
+            logger.warn(
+                    "Giving up removing container {} after {} attempts",
+                    pending.container().containerId,
+                    pending.attempt()
+            );
+        }
+    }
+
+    private void sweep() {
+        long cutoffMillis = System.currentTimeMillis() - orphanAgeMillis;
+        int containers = 0;
+        for (DockerDaemon daemon : daemonScheduler.all()) {
+            try {
+                List<Container> labelled = daemon.control()
+                        .listContainersCmd()
+                        .withShowAll(true)
+                        .withLabelFilter(List.of(SandboxContainerFactory.SANDBOX_LABEL))
+                        .exec();
+                for (Container container : labelled) {
+                    if (isOrphan(container, cutoffMillis) && containerFactory.remove(daemon, container.getId())) {
+                        containers++;
+                    }
+                }
+            } catch (Exception e) {
+                logger.warn("Failed to sweep orphaned sandbox containers on {}: {}", daemon, e.getMessage());
+            }
+        }
+        int files = containerFactory.deleteScriptFilesOlderThan(cutoffMillis);
+
+        meterRegistry.counter("execution.reaper.swept", "kind", "container").increment(containers);
+        meterRegistry.counter("execution.reaper.swept", "kind", "file").increment(files);
+        if (containers > 0 || files > 0) {
+            logger.info("Swept {} orphaned sandbox containers and {} stale script files", containers, files);
+        }
+    }
+
+    private boolean isOrphan(Container container, long cutoffMillis) {
+        if (container.getCreated() == null || TimeUnit.SECONDS.toMillis(container.getCreated()) > cutoffMillis) {
+            return false;
+        }
+        String owner = container.getLabels() != null
+                ? container.getLabels().get(SandboxContainerFactory.OWNER_LABEL)
+                : null;
+        if (!containerFactory.instanceId().equals(owner)) {
+            return true;
+        }
+        // Our own containers are only stale once they have stopped; running or
+        // created ones may belong to the pools.
+        return "exited".equals(container.getState()) || "dead".equals(container.getState());
+    }
+
+    /**
+     * Removes whatever is still queued before the application stops.
+     */
+    @PreDestroy
+    public void shutdown() {
+        running = false;
+        sweeper.shutdownNow();
+        workers.shutdownNow();
+        PendingRemoval pending;
+        while ((pending = queue.poll()) != null) {
+            containerFactory.destroy(pending.container());
+        }
+    }
+}
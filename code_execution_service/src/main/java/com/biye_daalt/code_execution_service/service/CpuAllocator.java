@@ -0,0 +1,210 @@
+package com.biye_daalt.code_execution_service.service;
+
+import com.biye_daalt.code_execution_service.config.ConditionalOnDockerExecutor;
+import com.biye_daalt.code_execution_service.config.DockerDaemon;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Hands out dedicated CPUs to runs, so that concurrent sandboxes do not
+ * compete for the same cores and wall-clock limits stay fair under load.
+ * <p>
+ * Every daemon has a fixed inventory of cores: {@code execution.cpu.cores}
+ * (e.g. {@code 0-3,6}) or, if empty, all CPUs the daemon reports. A run takes
+ * {@code cores-per-run} of them and gives them back when it is done. With
+ * {@code mode=cpuset} the container is pinned to exactly those cores; with
+ * {@code mode=quota} it only gets a CFS quota of that many CPUs and the kernel
+ * picks the cores. When everything is taken, runs queue in arrival order for
+ * up to {@code acquire-timeout-seconds}. {@code mode=off} keeps the old
+ * behaviour of CPU shares only.
+ */
+@ConditionalOnDockerExecutor
+@Component
+public class CpuAllocator {
+
+    private static final Logger logger = LoggerFactory
+            .getLogger(CpuAllocator.class);
+
+    static final long CFS_PERIOD_MICROS = 100_000;
+
+    enum Mode {
+        OFF, CPUSET, QUOTA
+    }
+
+    /**
+     * CPUs held by one run. Must be given back with {@link #release}.
+     */
+    record CpuSlot(DockerDaemon daemon, List<Integer> cores) {
+
+        /**
+         * @return the cores in Docker's {@code --cpuset-cpus} format, e.g. {@code 2,3}
+         */
+        String cpuset() {
+            return cores.stream().map(String::valueOf).collect(Collectors.joining(","));
+        }
+    }
+
+    private static final class Inventory {
+        final Semaphore permits;
+        final TreeSet<Integer> free;
+
+        Inventory(List<Integer> cores) {
+            this.permits = new Semaphore(cores.size(), true);
+            this.free = new TreeSet<>(cores);
+        }
+    }
+
+    private final MeterRegistry meterRegistry;
+    private final Mode mode;
+    private final List<Integer> configuredCores;
+    private final int coresPerRun;
+    private final long acquireTimeoutMillis;
+    private final Map<String, Inventory> inventories = new ConcurrentHashMap<>();
+
+    @Autowired
+    public CpuAllocator(
+            MeterRegistry meterRegistry,
+            @Value("${execution.cpu.mode:cpuset}") String mode,
+            @Value("${execution.cpu.cores:}") String cores,
+            @Value("${execution.cpu.cores-per-run:1}") int coresPerRun,
+            @Value("${execution.cpu.acquire-timeout-seconds:30}") long acquireTimeoutSeconds
+    ) {
+        this.meterRegistry = meterRegistry;
+        this.mode = Mode.valueOf(mode.trim().toUpperCase());
+        this.configuredCores = parseCores(cores);
+        this.coresPerRun = Math.max(1, coresPerRun);
+        this.acquireTimeoutMillis = TimeUnit.SECONDS.toMillis(acquireTimeoutSeconds);
+        logger.info(
+                "CPU allocation mode {} with {} core(s) per run (inventory: {})",
+                this.mode,
+                this.coresPerRun,
+                configuredCores.isEmpty() ? "all daemon CPUs" : configuredCores
+        );
+    }
+
+    boolean isEnabled() {
+        return mode != Mode.OFF;
+    }
+
+    Mode mode() {
+        return mode;
+    }
+
+    int coresPerRun() {
+        return coresPerRun;
+    }
+
+    /**
+     * Takes cores on the daemon, waiting in line while all of them are in use.
+     *
+     * @return the slot, or null if no cores freed up within the timeout
+     * @throws com.github.dockerjava.api.exception.DockerException if the
+     *                                                             daemon's CPU count could not be read
+     */
+    CpuSlot acquire(DockerDaemon daemon) throws InterruptedException {
+        Inventory inventory = inventory(daemon);
+        int needed = coresPerRun;
+        Timer.Sample sample = Timer.start(meterRegistry);
+        boolean acquired = inventory.permits.tryAcquire(needed, acquireTimeoutMillis, TimeUnit.MILLISECONDS);
+        sample.stop(meterRegistry.timer(
+                "execution.cpu.wait",
+                "daemon", daemon.id(),
+                "result", acquired ? "acquired" : "timeout"
+        ));
+        if (!acquired) {
+            logger.warn("No CPU on {} freed up within {} ms", daemon, acquireTimeoutMillis);
+            return null;
+        }
+        List<Integer> cores = new ArrayList<>(needed);
+        synchronized (inventory) {
+            for (int i = 0; i < needed; i++) {
+                cores.add(inventory.free.pollFirst());
+            }
+        }
+        return new CpuSlot(daemon, Collections.unmodifiableList(cores));
+    }
+
+    void release(CpuSlot slot) {
+        Inventory inventory = inventories.get(slot.daemon().id());
+        synchronized (inventory) {
+            inventory.free.addAll(slot.cores());
+        }
+        inventory.permits.release(slot.cores().size());
+    }
+
+    private Inventory inventory(DockerDaemon daemon) {
+        Inventory existing = inventories.get(daemon.id());
+        if (existing != null) {
+            return existing;
+        }
+        return inventories.computeIfAbsent(daemon.id(), id -> {
+            List<Integer> cores = configuredCores;
+            if (cores.isEmpty()) {
+                Integer cpuCount = daemon.control().infoCmd().exec().getNCPU();
+                cores = new ArrayList<>();
+                for (int core = 0; core < (cpuCount != null ? cpuCount : 1); core++) {
+                    cores.add(core);
+                }
+            }
+            if (cores.size() < coresPerRun) {
+                throw new IllegalStateException(
+                        daemon + " has " + cores.size() + " core(s), fewer than cores-per-run=" + coresPerRun
+                );
+            }
+            Inventory inventory = new Inventory(cores);
+            Gauge.builder("execution.cpu.free", inventory.permits, Semaphore::availablePermits)
+                    .description("Cores not held by any run")
+                    .tag("daemon", id)
+                    .register(meterRegistry);
+            Gauge.builder("execution.cpu.queued", inventory.permits, Semaphore::getQueueLength)
+                    .description("Runs waiting for cores")
+                    .tag("daemon", id)
+                    .register(meterRegistry);
+            logger.info("CPU inventory of {}: {}", daemon, cores);
+            return inventory;
+        });
+    }
+
+    /**
+     * Parses a cpuset list such as {@code 0-3,6}. Blank means "ask the daemon".
+     */
+    static List<Integer> parseCores(String cores) {
+        List<Integer> parsed = new ArrayList<>();
+        if (cores == null || cores.isBlank()) {
+            return parsed;
+        }
+        for (String part : cores.split(",")) {
+            String range = part.trim();
+            if (range.isEmpty()) {
+                continue;
+            }
+            int dash = range.indexOf('-');
+            if (dash < 0) {
+                parsed.add(Integer.parseInt(range));
+            } else {
+                int from = Integer.parseInt(range.substring(0, dash).trim());
+                int to = Integer.parseInt(range.substring(dash + 1).trim());
+                for (int core = from; core <= to; core++) {
+                    parsed.add(core);
+                }
+            }
+        }
+        return List.copyOf(new TreeSet<>(parsed));
+    }
+}
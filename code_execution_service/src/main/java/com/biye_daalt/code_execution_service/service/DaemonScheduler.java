@@ -0,0 +1,251 @@
+package com.biye_daalt.code_execution_service.service;
+
+import com.biye_daalt.code_execution_service.config.ConditionalOnDockerExecutor;
+import com.biye_daalt.code_execution_service.config.DockerDaemon;
+import com.github.dockerjava.api.exception.NotFoundException;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Spreads executions over the configured Docker daemons.
+ * <p>
+ * Each run {@link #acquire}s the daemon with the lowest score and
+ * {@link #release}s it when done. The score is
+ * {@code (inFlight + 1) / weight * (1 + pingLatencySeconds)}, plus a large
+ * penalty if the daemon does not have the language's image yet. So load is
+ * shared in proportion to capacity, slow daemons get less, and daemons that
+ * would have to pull first are used only when nothing else is available.
+ * <p>
+ * A health check pings every daemon and refreshes which sandbox images it
+ * holds. After {@code failure-threshold} consecutive failed pings or runs,
+ * a daemon is drained: it gets no new runs and the pools stop keeping
+ * containers on it. A successful ping brings it back. If every daemon is
+ * down, the least-loaded one is still returned so that the caller gets a
+ * real Docker error.
+ */
+@ConditionalOnDockerExecutor
+@Component
+public class DaemonScheduler {
+
+    private static final Logger logger = LoggerFactory
+            .getLogger(DaemonScheduler.class);
+
+    static final double IMAGE_MISSING_PENALTY = 1000;
+    private static final double LATENCY_SMOOTHING = 0.3;
+
+    private static final class DaemonState {
+        final AtomicInteger inFlight = new AtomicInteger();
+        final AtomicInteger consecutiveFailures = new AtomicInteger();
+        volatile boolean healthy = true;
+        volatile double pingLatencyMillis;
+        volatile Set<String> images = Set.of();
+        volatile boolean imagesKnown;
+    }
+
+    private final List<DockerDaemon> daemons;
+    private final LanguageRegistry languageRegistry;
+    private final Map<String, DaemonState> states = new LinkedHashMap<>();
+    private final MeterRegistry meterRegistry;
+    private final long healthCheckIntervalSeconds;
+    private final int failureThreshold;
+    private final ScheduledExecutorService healthChecker;
+
+    @Autowired
+    public DaemonScheduler(
+            @Qualifier("dockerDaemons") List<DockerDaemon> daemons,
+            LanguageRegistry languageRegistry,
+            MeterRegistry meterRegistry,
+            @Value("${docker.health-check-interval-seconds:10}") long healthCheckIntervalSeconds,
+            @Value("${docker.failure-threshold:3}") int failureThreshold
+    ) {
+        this.daemons = List.copyOf(daemons);
+        this.languageRegistry = languageRegistry;
+        this.meterRegistry = meterRegistry;
+        this.healthCheckIntervalSeconds = healthCheckIntervalSeconds;
+        this.failureThreshold = failureThreshold;
+        for (DockerDaemon daemon : this.daemons) {
+            DaemonState state = new DaemonState();
+            states.put(daemon.id(), state);
+            Gauge.builder("execution.daemon.inflight", state.inFlight, AtomicInteger::get)
+                    .description("Executions currently running on the daemon")
+                    .tag("daemon", daemon.id())
+                    .register(meterRegistry);
+            Gauge.builder("execution.daemon.healthy", state, s -> s.healthy ? 1 : 0)
+                    .description("1 while the daemon receives new executions")
+                    .tag("daemon", daemon.id())
+                    .register(meterRegistry);
+        }
+        this.healthChecker = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "docker-health-check");
+            thread.setDaemon(true);
+            return thread;
+        });
+        logger.info("Scheduling executions over {} Docker daemon(s): {}", this.daemons.size(), this.daemons);
+    }
+
+    @PostConstruct
+    void startHealthChecks() {
+        healthChecker.scheduleWithFixedDelay(this::checkAll, 0, healthCheckIntervalSeconds, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Picks the daemon for a new run and counts the run against it.
+     * Every call must be paired with {@link #release}.
+     */
+    DockerDaemon acquire(String imageName) {
+        DockerDaemon best = null;
+        double bestScore = Double.MAX_VALUE;
+        boolean anyHealthy = daemons.stream().anyMatch(daemon -> state(daemon).healthy);
+        for (DockerDaemon daemon : daemons) {
+            DaemonState state = state(daemon);
+            if (anyHealthy && !state.healthy) {
+                continue;
+            }
+            double score = score(daemon, state, imageName);
+            if (score < bestScore) {
+                best = daemon;
+                bestScore = score;
+            }
+        }
+        state(best).inFlight.incrementAndGet();
+        meterRegistry.counter("execution.daemon.scheduled", "daemon", best.id()).increment();
+        return best;
+    }
+
+    /**
+     * Ends a run started with {@link #acquire}. {@code daemonFailed} should be
+     * true only for Docker errors, not for failing user programs.
+     */
+    void release(DockerDaemon daemon, boolean daemonFailed) {
+        DaemonState state = state(daemon);
+        state.inFlight.decrementAndGet();
+        if (daemonFailed) {
+            recordFailure(daemon, state, "execution failed");
+        }
+    }
+
+    /**
+     * @return all configured daemons, including drained ones
+     */
+    List<DockerDaemon> all() {
+        return daemons;
+    }
+
+    /**
+     * @return daemons that currently receive new runs; pools only keep
+     * containers on these
+     */
+    List<DockerDaemon> healthy() {
+        List<DockerDaemon> healthy = new ArrayList<>();
+        for (DockerDaemon daemon : daemons) {
+            if (state(daemon).healthy) {
+                healthy.add(daemon);
+            }
+        }
+        return Collections.unmodifiableList(healthy);
+    }
+
+    boolean isHealthy(DockerDaemon daemon) {
+        return state(daemon).healthy;
+    }
+
+    private double score(DockerDaemon daemon, DaemonState state, String imageName) {
+        double load = (state.inFlight.get() + 1.0) / Math.max(1, daemon.weight());
+        double score = load * (1 + state.pingLatencyMillis / 1000.0);
+        if (imageName != null && state.imagesKnown && !state.images.contains(imageName)) {
+            score += IMAGE_MISSING_PENALTY;
+        }
+        return score;
+    }
+
+    private void checkAll() {
+        for (DockerDaemon daemon : daemons) {
+            check(daemon);
+        }
+    }
+
+    private void check(DockerDaemon daemon) {
+        DaemonState state = state(daemon);
+        long startedAt = System.nanoTime();
+        try {
+            daemon.control().pingCmd().exec();
+            recordPing(daemon, (System.nanoTime() - startedAt) / 1_000_000.0);
+            recordImages(daemon, presentImages(daemon));
+        } catch (Exception e) {
+            recordFailure(daemon, state, "ping failed: " + e.getMessage());
+        }
+    }
+
+    private Set<String> presentImages(DockerDaemon daemon) {
+        Set<String> present = new HashSet<>();
+        for (LanguageConfig config : languageRegistry.all().values()) {
+            try {
+                daemon.control().inspectImageCmd(config.imageName).exec();
+                present.add(config.imageName);
+            } catch (NotFoundException e) {
+                // Not pulled on this daemon (yet)
+            }
+        }
+        return present;
+    }
+
+    void recordPing(DockerDaemon daemon, double latencyMillis) {
+        DaemonState state = state(daemon);
+        state.pingLatencyMillis = state.pingLatencyMillis == 0
+                ? latencyMillis
+                : LATENCY_SMOOTHING * latencyMillis + (1 - LATENCY_SMOOTHING) * state.pingLatencyMillis;
+        state.consecutiveFailures.set(0);
+        if (!state.healthy) {
+            state.healthy = true;
+            logger.info("Docker daemon {} is healthy again", daemon);
+        }
+    }
+
+    void recordImages(DockerDaemon daemon, Set<String> images) {
+        DaemonState state = state(daemon);
+        state.images = Set.copyOf(images);
+        state.imagesKnown = true;
+    }
+
+    private void recordFailure(DockerDaemon daemon, DaemonState state, String reason) {
+        int failures = state.consecutiveFailures.incrementAndGet();
+        if (state.healthy && failures >= failureThreshold) {
+            state.healthy = false;
+            meterRegistry.counter("execution.daemon.drained", "daemon", daemon.id()).increment();
+            logger.warn("Draining Docker daemon {} after {} consecutive failures ({})", daemon, failures, reason);
+        }
+    }
+
+    void recordFailure(DockerDaemon daemon) {
+        recordFailure(daemon, state(daemon), "reported failure");
+    }
+
+    private DaemonState state(DockerDaemon daemon) {
+        return states.get(daemon.id());
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        healthChecker.shutdownNow();
+    }
+}
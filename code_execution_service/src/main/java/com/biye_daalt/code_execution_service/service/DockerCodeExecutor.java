@@ -0,0 +1,487 @@
+package com.biye_daalt.code_execution_service.service;
+
+import com.biye_daalt.code_execution_service.config.ConditionalOnDockerExecutor;
+import com.biye_daalt.code_execution_service.config.DockerDaemon;
+import com.biye_daalt.code_execution_service.dto.ExecutionResponse;
+import com.github.dockerjava.api.async.ResultCallback;
+import com.github.dockerjava.api.exception.DockerException;
+import com.github.dockerjava.api.model.*;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs submissions in Docker sandboxes: picks a daemon, compiles if needed,
+ * waits for dedicated CPUs and then runs either in a long-lived exec sandbox
+ * or in a single-use (usually pre-created) container.
+ */
+@ConditionalOnDockerExecutor
+@Component
+class DockerCodeExecutor implements CodeExecutor {
+
+    private static final Logger logger = LoggerFactory
+            .getLogger(DockerCodeExecutor.class);
+
+    private static final long LOG_DRAIN_TIMEOUT_SECONDS = 5;
+
+    private static final String BACKEND_CONTAINER = "container";
+    private static final String BACKEND_EXEC = "exec";
+
+    private final DaemonScheduler daemonScheduler;
+    private final SandboxContainerFactory containerFactory;
+    private final ContainerExitDispatcher exitDispatcher;
+    private final CpuAllocator cpuAllocator;
+    private final ContainerPool containerPool;
+    private final ContainerReaper containerReaper;
+    private final ExecSandboxPool execSandboxPool;
+    private final CompilationService compilationService;
+    private final ImageDigestResolver imageDigestResolver;
+    private final int maxOutputChars;
+    private final long outputKillThresholdBytes;
+
+    @Autowired
+    DockerCodeExecutor(
+            DaemonScheduler daemonScheduler,
+            SandboxContainerFactory containerFactory,
+            ContainerExitDispatcher exitDispatcher,
+            CpuAllocator cpuAllocator,
+            ContainerPool containerPool,
+            ContainerReaper containerReaper,
+            ExecSandboxPool execSandboxPool,
+            CompilationService compilationService,
+            ImageDigestResolver imageDigestResolver,
+            @Value("${code.execution.max.output.chars:10000}") int maxOutputChars,
+            // Once stdout+stderr exceed maxOutputChars * factor bytes the program is killed
+            @Value("${code.execution.output.kill.factor:4}") double outputKillFactor
+    ) {
+        this.daemonScheduler = daemonScheduler;
+        this.containerFactory = containerFactory;
+        this.exitDispatcher = exitDispatcher;
+        this.cpuAllocator = cpuAllocator;
+        this.containerPool = containerPool;
+        this.containerReaper = containerReaper;
+        this.execSandboxPool = execSandboxPool;
+        this.compilationService = compilationService;
+        this.imageDigestResolver = imageDigestResolver;
+        this.maxOutputChars = maxOutputChars;
+        this.outputKillThresholdBytes = (long) (maxOutputChars * outputKillFactor);
+    }
+
+    @Override
+    public String name() {
+        return "docker";
+    }
+
+    @Override
+    public String execute(
+            String languageKey,
+            LanguageConfig config,
+            String code,
+            ExecutionInput stdin,
+            ExecutionOutputListener outputListener,
+            OutputComparator comparator,
+            ExecutionResponse response,
+            ExecutionPhases phases
+    ) {
+        SandboxContainer sandbox = null;
+        String containerId = null;
+        String backend = BACKEND_CONTAINER;
+        // Compilation and the run both happen on this daemon
+        DockerDaemon daemon = daemonScheduler.acquire(config.imageName);
+        boolean daemonFailed = false;
+        CpuAllocator.CpuSlot cpuSlot = null;
+
+        try {
+            // 1. Compiled languages: compile once, then only run the cached artifacts
+            byte[] compiledArtifacts = null;
+            if (compilationService.handles(config)) {
+                phases.begin("compile");
+                CompilationService.CompilationResult compilation = compilationService.compile(daemon, languageKey, config, code);
+                if (!compilation.succeeded()) {
+                    response.setExitCode(compilation.exitCode());
+                    response.setTimeout(compilation.timedOut());
+                    response.setError(compilation.output());
+                    return backend;
+                }
+                compiledArtifacts = compilation.artifactTar();
+            }
+
+            // 2. Wait in line for dedicated CPUs on the daemon
+            if (cpuAllocator.isEnabled()) {
+                phases.begin("cpu");
+                cpuSlot = cpuAllocator.acquire(daemon);
+                if (cpuSlot == null) {
+                    response.setError("Server busy: no CPU became available in time. Please try again.");
+                    response.setExitCode(-1);
+                    return backend;
+                }
+            }
+
+            // 3. With the exec backend, run inside a long-lived sandbox if one frees up in time
+            phases.begin("acquire");
+            if (execSandboxPool.isEnabled()) {
+                ExecSandbox execSandbox = execSandboxPool.acquire(daemon, languageKey);
+                if (execSandbox != null) {
+                    backend = BACKEND_EXEC;
+                    executeInExecSandbox(
+                            execSandbox,
+                            cpuSlot,
+                            config,
+                            code,
+                            stdin,
+                            compiledArtifacts,
+                            outputListener,
+                            comparator,
+                            response,
+                            phases
+                    );
+                    return backend;
+                }
+                logger.info("No exec sandbox free for language {} on {}, using a fresh container", languageKey, daemon);
+            }
+
+            // 4. Take a pre-created container from the pool, or create one now
+            sandbox = containerPool.acquire(daemon, languageKey);
+            if (sandbox == null) {
+                sandbox = containerFactory.create(daemon, languageKey, config, containerPool.commandFor(config), null);
+            } else {
+                logger.debug(
+                        "Using pooled container {} for language: {}",
+                        sandbox.containerId,
+                        languageKey
+                );
+            }
+            containerId = sandbox.containerId;
+
+            // 5. Deliver user's code (or its compiled artifacts) and stdin into the container
+            phases.begin("deliver");
+            if (cpuSlot != null) {
+                containerFactory.applyCpuSlot(sandbox, cpuAllocator.mode(), cpuSlot);
+            }
+            if (compiledArtifacts != null) {
+                containerFactory.copyTarToContainer(sandbox, new ByteArrayInputStream(compiledArtifacts));
+            } else {
+                containerFactory.deliverCode(sandbox, config, code);
+            }
+            if (stdin != null) {
+                containerFactory.copyFileToContainer(
+                        sandbox,
+                        SandboxContainerFactory.CONTAINER_WORKING_DIR,
+                        SandboxContainerFactory.STDIN_FILE,
+                        stdin
+                );
+            }
+
+            // 6. Start container
+            phases.begin("start");
+            exitDispatcher.start(sandbox);
+            logger.debug("Container started: {} on {}", containerId, daemon);
+
+            // 7. Follow stdout/stderr while the container runs
+            phases.begin("run");
+            final SandboxContainer runningSandbox = sandbox;
+            FrameCollector collector = new FrameCollector(
+                    maxOutputChars,
+                    outputKillThresholdBytes,
+                    outputListener,
+                    comparator,
+                    reason -> stopContainer(runningSandbox, reason)
+            );
+            ResultCallback.Adapter<Frame> logCallback = null;
+
+            try {
+                logCallback = daemon.streaming()
+                        .logContainerCmd(containerId)
+                        .withStdOut(true)
+                        .withStdErr(true)
+                        .withFollowStream(true)
+                        .withTimestamps(false)
+                        .exec(collector);
+            } catch (Exception e) {
+                logger.error(
+                        "Failed to attach to logs of container {}: {}",
+                        containerId,
+                        e.getMessage()
+                );
+                collector.stderr().appendNote(
+                        "\n[Service Error: Failed to retrieve logs: " +
+                                e.getMessage() +
+                                "]"
+                );
+            }
+
+            // 8. Wait for container to complete; it is killed once the timeout passes
+            logger.debug(
+                    "Waiting for container {} to complete (timeout: {}s)",
+                    containerId,
+                    config.timeoutSeconds
+            );
+            ContainerExitDispatcher.ContainerExit exit = exitDispatcher.await(sandbox, config.timeoutSeconds);
+            boolean timedOut = exit.timedOut();
+            if (timedOut) {
+                logger.warn(
+                        "Container {} timed out after {}s and was killed",
+                        containerId,
+                        config.timeoutSeconds
+                );
+                CodeExecutor.markTimedOut(response, config.timeoutSeconds);
+            } else {
+                response.setExitCode(exit.exitCode());
+                response.setMemoryLimitExceeded(exit.oomKilled());
+                logger.info(
+                        "Container {} finished with exit code: {}",
+                        containerId,
+                        exit.exitCode()
+                );
+            }
+
+            // 9. The log stream ends once the container has exited; let it drain
+            phases.begin("drain");
+            if (logCallback != null) {
+                drainOutput(logCallback, collector, containerId);
+            }
+            // A killed run never wrote its final reading
+            if (!timedOut) {
+                applyUsage(containerFactory.readUsage(sandbox, SandboxContainerFactory.CONTAINER_WORKING_DIR, false), response);
+            }
+
+            collector.applyTo(response, timedOut);
+
+        } catch (IOException e) {
+            daemonFailed = true;
+            logger.error(
+                    "IOException during code execution setup: {}",
+                    e.getMessage(),
+                    e
+            );
+            response.setError(
+                    "Server error: Could not prepare execution environment. " +
+                            e.getMessage()
+            );
+            response.setExitCode(-1);
+        } catch (DockerException e) {
+            daemonFailed = true;
+            logger.error(
+                    "DockerException during code execution: {}",
+                    e.getMessage(),
+                    e
+            );
+            response.setError(
+                    "Server error: Docker operation failed. " + e.getMessage()
+            );
+            response.setExitCode(-1);
+        } catch (Exception e) {
+            logger.error(
+                    "Unexpected error during code execution: {}",
+                    e.getMessage(),
+                    e
+            );
+            response.setError(
+                    "Server error: An unexpected error occurred. " + e.getMessage()
+            );
+            response.setExitCode(-1);
+        } finally {
+            // Pooled containers are single use: always remove after running user code,
+            // in the background so the response does not wait for it
+            if (sandbox != null) {
+                containerReaper.submit(sandbox);
+            }
+            if (cpuSlot != null) {
+                cpuAllocator.release(cpuSlot);
+            }
+            daemonScheduler.release(daemon, daemonFailed);
+        }
+        return backend;
+    }
+
+    /**
+     * The image is resolved on the first healthy daemon.
+     */
+    @Override
+    public String cacheFingerprint(LanguageConfig config) {
+        List<DockerDaemon> candidates = daemonScheduler.healthy().isEmpty()
+                ? daemonScheduler.all()
+                : daemonScheduler.healthy();
+        return imageDigestResolver.resolve(candidates.get(0), config.imageName) +
+                ";memory=" + config.memoryLimitBytes +
+                ";cpuShares=" + config.cpuShares +
+                ";cpu=" + cpuAllocator.mode() + "x" + cpuAllocator.coresPerRun();
+    }
+
+    /**
+     * Runs the submission with {@code docker exec} in a fresh directory of a
+     * long-lived sandbox and hands the sandbox back afterwards; any anomaly
+     * gets the sandbox recycled instead of reused.
+     */
+    private void executeInExecSandbox(
+            ExecSandbox sandbox,
+            CpuAllocator.CpuSlot cpuSlot,
+            LanguageConfig config,
+            String code,
+            ExecutionInput stdin,
+            byte[] compiledArtifacts,
+            ExecutionOutputListener outputListener,
+            OutputComparator comparator,
+            ExecutionResponse response,
+            ExecutionPhases phases
+    ) throws IOException, InterruptedException {
+        boolean healthy = false;
+        try {
+            phases.begin("deliver");
+            if (cpuSlot != null) {
+                containerFactory.applyCpuSlot(sandbox.container, cpuAllocator.mode(), cpuSlot);
+            }
+            String runDir = execSandboxPool.prepareRun(
+                    sandbox,
+                    UUID.randomUUID().toString(),
+                    config,
+                    code,
+                    stdin,
+                    compiledArtifacts
+            );
+            String command = containerFactory.runCommand(
+                    compiledArtifacts != null || config.compileCommand == null
+                            ? config.runCommand
+                            : config.compileCommand + " && " + config.runCommand
+            );
+
+            FrameCollector collector = new FrameCollector(
+                    maxOutputChars,
+                    outputKillThresholdBytes,
+                    outputListener,
+                    comparator,
+                    reason -> {
+                        logger.info("Stopping run in sandbox {}: {}", sandbox.containerId(), reason);
+                        execSandboxPool.killRun(sandbox);
+                    }
+            );
+            phases.begin("run");
+            DockerDaemon daemon = sandbox.daemon();
+            String execId = daemon.control()
+                    .execCreateCmd(sandbox.containerId())
+                    .withCmd("sh", "-c", command)
+                    .withWorkingDir(runDir)
+                    .withUser(SandboxContainerFactory.SANDBOX_USER)
+                    .withEnv(SandboxContainerFactory.SANDBOX_ENVIRONMENT)
+                    .withAttachStdout(true)
+                    .withAttachStderr(true)
+                    .exec()
+                    .getId();
+            ResultCallback.Adapter<Frame> execCallback = daemon.streaming()
+                    .execStartCmd(execId)
+                    .exec(collector);
+
+            boolean timedOut = !execCallback.awaitCompletion(config.timeoutSeconds, TimeUnit.SECONDS);
+            if (timedOut) {
+                logger.warn("Run in sandbox {} timed out, killing it", sandbox.containerId());
+                execSandboxPool.killRun(sandbox);
+                CodeExecutor.markTimedOut(response, config.timeoutSeconds);
+            }
+            phases.begin("drain");
+            drainOutput(execCallback, collector, sandbox.containerId());
+
+            if (!timedOut) {
+                Long exitCode = daemon.control().inspectExecCmd(execId).exec().getExitCodeLong();
+                response.setExitCode(exitCode != null ? exitCode.intValue() : -1);
+                applyUsage(containerFactory.readUsage(sandbox.container, runDir, true), response);
+                logger.info(
+                        "Run in sandbox {} finished with exit code: {}",
+                        sandbox.containerId(),
+                        response.getExitCode()
+                );
+            }
+            collector.applyTo(response, timedOut);
+
+            // 137 = SIGKILL, e.g. the container's OOM killer picked a process
+            boolean stoppedByService = collector.outputLimitExceeded() || (comparator != null && comparator.mismatched());
+            response.setMemoryLimitExceeded(!timedOut && !stoppedByService && response.getExitCode() == 137);
+            healthy = !timedOut && !collector.outputLimitExceeded() && response.getExitCode() != 137;
+        } finally {
+            phases.begin("release");
+            execSandboxPool.release(sandbox, healthy);
+        }
+    }
+
+    private static void applyUsage(ResourceUsageReport usage, ExecutionResponse response) {
+        response.setCpuTimeMillis(usage.cpuTimeMillis());
+        response.setPeakMemoryBytes(usage.peakMemoryBytes());
+    }
+
+    /**
+     * Waits for the output stream to finish after the program has exited (or
+     * was killed) and always closes it.
+     */
+    private void drainOutput(
+            ResultCallback.Adapter<Frame> callback,
+            FrameCollector collector,
+            String containerId
+    ) {
+        try {
+            if (!callback.awaitCompletion(LOG_DRAIN_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                logger.warn(
+                        "Log stream for container {} did not finish within {}s",
+                        containerId,
+                        LOG_DRAIN_TIMEOUT_SECONDS
+                );
+            }
+            logger.debug(
+                    "Logs collected for container {}",
+                    containerId
+            );
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            logger.error(
+                    "Log collection interrupted for container {}: {}",
+                    containerId,
+                    e.getMessage()
+            );
+            collector.stderr().appendNote(
+                    "\n[Service Error: Log collection interrupted]"
+            );
+        } catch (Exception e) {
+            logger.error(
+                    "Failed to retrieve logs for container {}: {}",
+                    containerId,
+                    e.getMessage()
+            );
+            collector.stderr().appendNote(
+                    "\n[Service Error: Failed to retrieve logs: " +
+                            e.getMessage() +
+                            "]"
+            );
+        } finally {
+            closeQuietly(callback);
+        }
+    }
+
+    private void stopContainer(SandboxContainer sandbox, String reason) {
+        String containerId = sandbox.containerId;
+        logger.info("Stopping container {}: {}", containerId, reason);
+        try {
+            sandbox.daemon.control().killContainerCmd(containerId).exec();
+        } catch (Exception e) {
+            logger.error(
+                    "Failed to stop container {}: {}",
+                    containerId,
+                    e.getMessage()
+            );
+        }
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        try {
+            closeable.close();
+        } catch (IOException e) {
+            logger.debug("Failed to close stream: {}", e.getMessage());
+        }
+    }
+}
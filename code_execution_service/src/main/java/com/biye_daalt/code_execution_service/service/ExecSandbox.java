@@ -0,0 +1,31 @@
+package com.biye_daalt.code_execution_service.service;
+
+import com.biye_daalt.code_execution_service.config.DockerDaemon;
+
+/**
+ * A running long-lived sandbox container owned by {@link ExecSandboxPool}.
+ * It is handed to one request at a time, so the run counter needs no locking.
+ */
+final class ExecSandbox {
+    final SandboxContainer container;
+    // The registry entry it was started from; it is replaced once the entry changes
+    final LanguageConfig config;
+    int runs;
+
+    ExecSandbox(SandboxContainer container, LanguageConfig config) {
+        this.container = container;
+        this.config = config;
+    }
+
+    String containerId() {
+        return container.containerId;
+    }
+
+    DockerDaemon daemon() {
+        return container.daemon;
+    }
+
+    String language() {
+        return container.language;
+    }
+}
@@ -0,0 +1,360 @@
+package com.biye_daalt.code_execution_service.service;
+
+import com.biye_daalt.code_execution_service.config.ConditionalOnDockerExecutor;
+import com.biye_daalt.code_execution_service.config.DockerDaemon;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Backend for {@code execution.backend=exec}: keeps a few long-lived,
+ * network-disabled sandbox containers per language and lends them out one
+ * request at a time. Each run is started with {@code docker exec} in its own
+ * directory under {@link #RUNS_DIR}, which avoids the create/start/remove
+ * round trips of the container backend.
+ * <p>
+ * Runs execute as {@link SandboxContainerFactory#SANDBOX_USER} on a read-only
+ * root filesystem, so the image itself (interpreters, installed packages,
+ * binaries on the {@code PATH}) cannot be changed for later runs. After every
+ * run all processes in the container except PID 1 are killed and everything
+ * a run can write to (run directories, {@code /tmp}, {@code /dev/shm}) is
+ * wiped. A container is replaced
+ * instead of being reused once it has served {@code max-runs-per-container}
+ * runs, or whenever a run looked abnormal (timeout, output limit, SIGKILL,
+ * Docker error or a failed wipe), since anything it left behind could leak
+ * into the next submission.
+ * <p>
+ * Sandboxes are kept per daemon and language. Only daemons that
+ * {@link DaemonScheduler} considers healthy are replenished; idle sandboxes
+ * on a drained daemon are handed to the reaper.
+ */
+@ConditionalOnDockerExecutor
+@Component
+public class ExecSandboxPool {
+
+    private static final Logger logger = LoggerFactory
+            .getLogger(ExecSandboxPool.class);
+
+    static final String RUNS_DIR = SandboxContainerFactory.RUNS_DIR;
+    // The run directory is created by the daemon as root; the sandbox user writes into it
+    private static final int RUN_DIR_MODE = 0777;
+
+    private static final long WIPE_TIMEOUT_SECONDS = 5;
+
+    // kill(-1) signals every process except PID 1 and the calling shell itself.
+    // The runs directory is a volume mount point, so only its contents can go.
+    private static final String[] WIPE_COMMAND = {
+            "sh", "-c",
+            "kill -9 -1 2>/dev/null; " +
+                    "rm -rf " + RUNS_DIR + "/* " + RUNS_DIR + "/.[!.]* " +
+                    "/tmp/* /tmp/.[!.]* /dev/shm/* /dev/shm/.[!.]* 2>/dev/null; " +
+                    "for dir in " + RUNS_DIR + " /tmp /dev/shm; do [ -z \"$(ls -A $dir)\" ] || exit 1; done"
+    };
+
+    private final DaemonScheduler daemonScheduler;
+    private final LanguageRegistry languageRegistry;
+    private final SandboxContainerFactory containerFactory;
+    private final ContainerReaper containerReaper;
+    private final MeterRegistry meterRegistry;
+    private final boolean enabled;
+    private final int sizePerLanguage;
+    private final int maxRunsPerContainer;
+    private final long acquireTimeoutMillis;
+
+    private final Map<String, LinkedBlockingDeque<ExecSandbox>> idleSandboxes = new ConcurrentHashMap<>();
+    private final Map<String, AtomicInteger> liveCounts = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService maintenanceExecutor;
+
+    @Autowired
+    public ExecSandboxPool(
+            DaemonScheduler daemonScheduler,
+            LanguageRegistry languageRegistry,
+            SandboxContainerFactory containerFactory,
+            ContainerReaper containerReaper,
+            MeterRegistry meterRegistry,
+            @Value("${execution.backend:container}") String backend,
+            @Value("${execution.exec.size-per-language:2}") int sizePerLanguage,
+            @Value("${execution.exec.max-runs-per-container:50}") int maxRunsPerContainer,
+            @Value("${execution.exec.acquire-timeout-millis:2000}") long acquireTimeoutMillis,
+            @Value("${execution.exec.maintenance-interval-seconds:5}") long maintenanceIntervalSeconds
+    ) {
+        this.daemonScheduler = daemonScheduler;
+        this.languageRegistry = languageRegistry;
+        this.containerFactory = containerFactory;
+        this.containerReaper = containerReaper;
+        this.meterRegistry = meterRegistry;
+        this.enabled = "exec".equalsIgnoreCase(backend.trim()) && sizePerLanguage > 0;
+        this.sizePerLanguage = sizePerLanguage;
+        this.maxRunsPerContainer = maxRunsPerContainer;
+        this.acquireTimeoutMillis = acquireTimeoutMillis;
+
+        this.maintenanceExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "exec-sandbox-maintenance");
+            thread.setDaemon(true);
+            return thread;
+        });
+        if (this.enabled) {
+            maintenanceExecutor.scheduleWithFixedDelay(
+                    this::replenishAll,
+                    0,
+                    maintenanceIntervalSeconds,
+                    TimeUnit.SECONDS
+            );
+            languageRegistry.addListener(changed -> maintenanceExecutor.execute(() -> discardChanged(changed)));
+            logger.info(
+                    "Exec backend enabled with {} long-lived containers per language (recycled after {} runs)",
+                    sizePerLanguage,
+                    maxRunsPerContainer
+            );
+        }
+    }
+
+    boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Waits up to {@code acquire-timeout-millis} for a free sandbox.
+     *
+     * @return a sandbox that must be handed back with {@link #release}, or null
+     * if the backend is disabled or all sandboxes stayed busy
+     */
+    ExecSandbox acquire(DockerDaemon daemon, String language) {
+        if (!enabled) {
+            return null;
+        }
+        try {
+            ExecSandbox sandbox = idle(daemon, language)
+                    .pollFirst(acquireTimeoutMillis, TimeUnit.MILLISECONDS);
+            meterRegistry.counter(
+                    "execution.exec.acquire",
+                    "language", language,
+                    "daemon", daemon.id(),
+                    "result", sandbox != null ? "hit" : "miss"
+            ).increment();
+            return sandbox;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        }
+    }
+
+    /**
+     * Creates a fresh working directory for one run, containing the user's
+     * code, the stdin file if there is input and, for compiled languages, the
+     * cached compiler output.
+     *
+     * @return the absolute path of the run directory
+     */
+    String prepareRun(
+            ExecSandbox sandbox,
+            String runId,
+            LanguageConfig config,
+            String code,
+            ExecutionInput stdin,
+            byte[] compiledArtifacts
+    ) throws IOException {
+        // Entries carry the run id so that extracting them into the runs volume
+        // also creates the run directory itself.
+        containerFactory.copyToContainer(
+                sandbox.container,
+                RUNS_DIR,
+                new SandboxArchive()
+                        .addDirectory(runId, RUN_DIR_MODE)
+                        .addFile(runId + "/" + config.scriptFileName, code)
+        );
+        String runDir = RUNS_DIR + "/" + runId;
+        if (stdin != null) {
+            containerFactory.copyFileToContainer(sandbox.container, runDir, SandboxContainerFactory.STDIN_FILE, stdin);
+        }
+        if (compiledArtifacts != null) {
+            containerFactory.copyTarToContainer(
+                    sandbox.container,
+                    new ByteArrayInputStream(compiledArtifacts),
+                    runDir
+            );
+        }
+        return runDir;
+    }
+
+    /**
+     * Kills every process the current run started, e.g. when it exceeded the
+     * output limit. Never throws.
+     */
+    void killRun(ExecSandbox sandbox) {
+        try {
+            containerFactory.runAsRoot(sandbox.container, SandboxContainerFactory.KILL_COMMAND, WIPE_TIMEOUT_SECONDS);
+        } catch (Exception e) {
+            logger.error("Failed to kill processes in sandbox {}: {}", sandbox.containerId(), e.getMessage());
+        }
+    }
+
+    /**
+     * Hands the sandbox back after a run. It is wiped and reused if the run was
+     * healthy and the run limit has not been reached; otherwise it is destroyed
+     * and a replacement is started in the background.
+     */
+    void release(ExecSandbox sandbox, boolean healthy) {
+        sandbox.runs++;
+        String reason = null;
+        if (!healthy) {
+            reason = "anomaly";
+        } else if (sandbox.runs >= maxRunsPerContainer) {
+            reason = "max-runs";
+        } else if (!wipe(sandbox)) {
+            reason = "wipe-failed";
+        }
+
+        if (reason == null && !daemonScheduler.isHealthy(sandbox.daemon())) {
+            reason = "daemon-drained";
+        }
+        if (reason == null && languageRegistry.forLanguage(sandbox.language()) != sandbox.config) {
+            reason = "config-changed";
+        }
+
+        if (reason == null) {
+            idle(sandbox.daemon(), sandbox.language()).addFirst(sandbox);
+            return;
+        }
+        logger.info(
+                "Recycling exec sandbox {} after {} runs ({})",
+                sandbox.containerId(),
+                sandbox.runs,
+                reason
+        );
+        meterRegistry.counter("execution.exec.recycled", "language", sandbox.language(), "reason", reason)
+                .increment();
+        containerReaper.submit(sandbox.container);
+        live(sandbox.daemon(), sandbox.language()).decrementAndGet();
+        maintenanceExecutor.execute(() -> replenish(sandbox.daemon(), sandbox.language()));
+    }
+
+    private boolean wipe(ExecSandbox sandbox) {
+        try {
+            Long exitCode = containerFactory.runAsRoot(sandbox.container, WIPE_COMMAND, WIPE_TIMEOUT_SECONDS);
+            if (exitCode != null && exitCode == 0) {
+                return true;
+            }
+            logger.warn("Wiping sandbox {} exited with {}", sandbox.containerId(), exitCode);
+        } catch (Exception e) {
+            logger.warn("Failed to wipe sandbox {}: {}", sandbox.containerId(), e.getMessage());
+        }
+        return false;
+    }
+
+    private void replenishAll() {
+        for (DockerDaemon daemon : daemonScheduler.all()) {
+            for (String language : languageRegistry.all().keySet()) {
+                if (daemonScheduler.isHealthy(daemon)) {
+                    replenish(daemon, language);
+                } else {
+                    discardIdle(daemon, language);
+                }
+            }
+        }
+    }
+
+    private void replenish(DockerDaemon daemon, String language) {
+        if (!daemonScheduler.isHealthy(daemon)) {
+            return;
+        }
+        LanguageConfig config = languageRegistry.forLanguage(language);
+        if (config == null) {
+            return;
+        }
+        AtomicInteger live = live(daemon, language);
+        while (live.get() < sizePerLanguage) {
+            try {
+                ExecSandbox sandbox = new ExecSandbox(
+                        containerFactory.createLongLived(daemon, language, config),
+                        config
+                );
+                live.incrementAndGet();
+                idle(daemon, language).addLast(sandbox);
+            } catch (Exception e) {
+                meterRegistry.counter(
+                        "execution.exec.start.failures",
+                        "language", language,
+                        "daemon", daemon.id()
+                ).increment();
+                logger.warn(
+                        "Failed to start exec sandbox for language {} on {}: {}",
+                        language,
+                        daemon,
+                        e.getMessage()
+                );
+                // Leave the rest for the next scheduled run instead of hammering the daemon.
+                return;
+            }
+        }
+    }
+
+    private void discardIdle(DockerDaemon daemon, String language) {
+        ExecSandbox sandbox;
+        while ((sandbox = idle(daemon, language).pollFirst()) != null) {
+            logger.info("Discarding idle exec sandbox {} ({} on {})", sandbox.containerId(), language, daemon);
+            containerReaper.submit(sandbox.container);
+            live(daemon, language).decrementAndGet();
+        }
+    }
+
+    /**
+     * Replaces idle sandboxes of languages whose registry entry changed; busy
+     * ones are recycled when they are released.
+     */
+    private void discardChanged(Set<String> languages) {
+        for (DockerDaemon daemon : daemonScheduler.all()) {
+            for (String language : languages) {
+                discardIdle(daemon, language);
+                replenish(daemon, language);
+            }
+        }
+    }
+
+    private LinkedBlockingDeque<ExecSandbox> idle(DockerDaemon daemon, String language) {
+        return idleSandboxes.computeIfAbsent(poolKey(daemon, language), key -> {
+            LinkedBlockingDeque<ExecSandbox> deque = new LinkedBlockingDeque<>();
+            Gauge.builder("execution.exec.idle", deque, LinkedBlockingDeque::size)
+                    .description("Long-lived exec sandboxes waiting for a request")
+                    .tag("language", language)
+                    .tag("daemon", daemon.id())
+                    .register(meterRegistry);
+            return deque;
+        });
+    }
+
+    private AtomicInteger live(DockerDaemon daemon, String language) {
+        return liveCounts.computeIfAbsent(poolKey(daemon, language), key -> new AtomicInteger());
+    }
+
+    private static String poolKey(DockerDaemon daemon, String language) {
+        return daemon.id() + "/" + language;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        maintenanceExecutor.shutdownNow();
+        idleSandboxes.values().forEach(deque -> {
+            ExecSandbox sandbox;
+            while ((sandbox = deque.pollFirst()) != null) {
+                containerFactory.destroy(sandbox.container);
+            }
+        });
+    }
+}
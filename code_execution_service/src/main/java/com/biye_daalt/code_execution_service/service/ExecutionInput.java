@@ -0,0 +1,76 @@
+package com.biye_daalt.code_execution_service.service;
+
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.core.io.InputStreamSource;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+
+/**
+ * Data for the program's stdin: inline text from the request body, or an
+ * uploaded file (multipart parts are spooled to disk by the servlet
+ * container). Either way it is streamed into the sandbox as a file next to
+ * the script and never copied into one big array on the heap.
+ */
+public final class ExecutionInput {
+
+    private static final int DIGEST_BUFFER_BYTES = 8192;
+
+    private final long size;
+    private final InputStreamSource source;
+
+    private ExecutionInput(long size, InputStreamSource source) {
+        this.size = size;
+        this.source = source;
+    }
+
+    /**
+     * @return the input, or null if there is no text
+     */
+    public static ExecutionInput ofText(String text) {
+        if (text == null) {
+            return null;
+        }
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        return new ExecutionInput(bytes.length, new ByteArrayResource(bytes));
+    }
+
+    /**
+     * @param size exact number of bytes the source yields, e.g. {@code MultipartFile.getSize()}
+     */
+    public static ExecutionInput ofStream(long size, InputStreamSource source) {
+        return new ExecutionInput(size, source);
+    }
+
+    long size() {
+        return size;
+    }
+
+    /**
+     * @return a new stream over the data; the caller closes it
+     */
+    InputStream open() throws IOException {
+        return source.getInputStream();
+    }
+
+    /**
+     * @return the hex SHA-256 of the data, for result cache keys
+     */
+    String digest() throws IOException {
+        try (InputStream in = open()) {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            byte[] buffer = new byte[DIGEST_BUFFER_BYTES];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                digest.update(buffer, 0, read);
+            }
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+}
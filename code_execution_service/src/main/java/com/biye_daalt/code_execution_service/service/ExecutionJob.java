@@ -0,0 +1,60 @@
+package com.biye_daalt.code_execution_service.service;
+
+import com.biye_daalt.code_execution_service.dto.ExecutionJobResponse;
+import com.biye_daalt.code_execution_service.dto.ExecutionResponse;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * An execution submitted through the asynchronous job API.
+ */
+public class ExecutionJob {
+
+    public enum Status { QUEUED, RUNNING, COMPLETED }
+
+    private final String id;
+    private final CompletableFuture<ExecutionResponse> result = new CompletableFuture<>();
+    private volatile Status status = Status.QUEUED;
+    private volatile long completedAtMillis;
+
+    ExecutionJob(String id) {
+        this.id = id;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public Status getStatus() {
+        return result.isDone() ? Status.COMPLETED : status;
+    }
+
+    /**
+     * @return a future completed with the execution result when the job finishes
+     */
+    public CompletableFuture<ExecutionResponse> getResult() {
+        return result;
+    }
+
+    public ExecutionJobResponse toResponse() {
+        ExecutionResponse response = result.getNow(null);
+        return new ExecutionJobResponse(
+                id,
+                response != null ? Status.COMPLETED.name() : status.name(),
+                response
+        );
+    }
+
+    void markRunning() {
+        status = Status.RUNNING;
+    }
+
+    void complete(ExecutionResponse response) {
+        completedAtMillis = System.currentTimeMillis();
+        result.complete(response);
+    }
+
+    long getCompletedAtMillis() {
+        return completedAtMillis;
+    }
+}
@@ -0,0 +1,185 @@
+package com.biye_daalt.code_execution_service.service;
+
+import com.biye_daalt.code_execution_service.dto.ExecutionResponse;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs executions submitted through the job API and the streaming endpoint on
+ * a bounded worker pool so that request threads never wait on Docker.
+ * <p>
+ * Executions wait for their turn in {@link ExecutionScheduler} before they
+ * get a worker, not on one: queued batch work therefore never occupies the
+ * workers that an interactive run admitted ahead of it needs. The backlog is
+ * the scheduler's class queue ({@code execution.scheduler.*.max-queued});
+ * when it is full, {@link #submit} throws {@link RejectedExecutionException}
+ * and the caller is expected to answer with 429. The worker queue only holds
+ * admitted executions, at most {@code execution.scheduler.max-concurrent}, so
+ * it never fills up.
+ */
+@Service
+public class ExecutionJobService {
+
+    private static final Logger logger = LoggerFactory
+            .getLogger(ExecutionJobService.class);
+
+    private final CodeExecutionService codeExecutionService;
+    private final ExecutionScheduler executionScheduler;
+    private final ThreadPoolExecutor workers;
+    private final ScheduledExecutorService janitor;
+    private final long retentionMillis;
+
+    private final Map<String, ExecutionJob> jobs = new ConcurrentHashMap<>();
+
+    @Autowired
+    public ExecutionJobService(
+            CodeExecutionService codeExecutionService,
+            ExecutionScheduler executionScheduler,
+            MeterRegistry meterRegistry,
+            @Value("${execution.jobs.workers:8}") int workerCount,
+            @Value("${execution.scheduler.max-concurrent:8}") int maxConcurrent,
+            @Value("${execution.jobs.retention-seconds:300}") long retentionSeconds
+    ) {
+        this.codeExecutionService = codeExecutionService;
+        this.executionScheduler = executionScheduler;
+        this.retentionMillis = TimeUnit.SECONDS.toMillis(retentionSeconds);
+
+        AtomicInteger threadCounter = new AtomicInteger();
+        this.workers = new ThreadPoolExecutor(
+                workerCount,
+                workerCount,
+                0L,
+                TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(maxConcurrent),
+                runnable -> new Thread(runnable, "execution-job-" + threadCounter.incrementAndGet()),
+                new ThreadPoolExecutor.AbortPolicy()
+        );
+        this.janitor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "execution-job-janitor");
+            thread.setDaemon(true);
+            return thread;
+        });
+        janitor.scheduleWithFixedDelay(this::expireCompletedJobs, 30, 30, TimeUnit.SECONDS);
+
+        Gauge.builder("execution.jobs.queued", workers, executor -> executor.getQueue().size())
+                .description("Execution jobs waiting for a worker")
+                .register(meterRegistry);
+        Gauge.builder("execution.jobs.active", workers, ThreadPoolExecutor::getActiveCount)
+                .description("Execution jobs currently running")
+                .register(meterRegistry);
+
+        logger.info(
+                "Execution job executor initialized with {} workers for up to {} admitted executions",
+                workerCount,
+                maxConcurrent
+        );
+    }
+
+    /**
+     * Queues an execution and returns immediately.
+     *
+     * @throws RejectedExecutionException if the scheduler's queue for the class is full
+     */
+    public ExecutionJob submit(
+            String code,
+            String language,
+            ExecutionInput stdin,
+            ExecutionScheduler.PriorityClass priorityClass,
+            String clientId
+    ) {
+        ExecutionJob job = new ExecutionJob(UUID.randomUUID().toString());
+        jobs.put(job.getId(), job);
+        try {
+            executionScheduler
+                    .submit(priorityClass, clientId, () -> {
+                        job.markRunning();
+                        return codeExecutionService.executeCode(code, language, stdin);
+                    }, workers)
+                    .whenComplete((response, error) -> complete(job, response, error));
+        } catch (RejectedExecutionException e) {
+            jobs.remove(job.getId());
+            logger.warn("Scheduler queue is full, rejecting {} job for language: {}", priorityClass, language);
+            throw e;
+        }
+        logger.debug("Execution job {} queued for language: {}", job.getId(), language);
+        return job;
+    }
+
+    /**
+     * Runs an execution on the job workers once the scheduler admits it,
+     * forwarding output to the listener while it runs. Used by the streaming
+     * endpoint; the execution is not registered as a pollable job.
+     *
+     * @throws RejectedExecutionException if the class queue is full
+     */
+    public CompletableFuture<ExecutionResponse> submitStreaming(
+            String code,
+            String language,
+            ExecutionInput stdin,
+            ExecutionOutputListener outputListener,
+            ExecutionScheduler.PriorityClass priorityClass,
+            String clientId
+    ) {
+        return executionScheduler.submit(
+                priorityClass,
+                clientId,
+                () -> codeExecutionService.executeCode(code, language, stdin, outputListener),
+                workers
+        );
+    }
+
+    /**
+     * @return the job, or null if it is unknown or has already expired
+     */
+    public ExecutionJob getJob(String jobId) {
+        return jobs.get(jobId);
+    }
+
+    private void complete(ExecutionJob job, ExecutionResponse response, Throwable error) {
+        if (error instanceof RejectedExecutionException) {
+            logger.warn("Execution job {} got no execution slot: {}", job.getId(), error.getMessage());
+            response = new ExecutionResponse();
+            response.setError("Server busy: " + error.getMessage() + ". Please try again.");
+            response.setExitCode(-1);
+        } else if (error != null) {
+            // executeCode reports failures in the response; this is only a safety net
+            logger.error("Execution job {} failed: {}", job.getId(), error.getMessage(), error);
+            response = new ExecutionResponse();
+            response.setError("Server error: An unexpected error occurred. " + error.getMessage());
+            response.setExitCode(-1);
+        }
+        job.complete(response);
+        logger.debug("Execution job {} completed", job.getId());
+    }
+
+    private void expireCompletedJobs() {
+        long cutoff = System.currentTimeMillis() - retentionMillis;
+        jobs.values().removeIf(job ->
+                job.getStatus() == ExecutionJob.Status.COMPLETED && job.getCompletedAtMillis() < cutoff
+        );
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        janitor.shutdownNow();
+        workers.shutdown();
+    }
+}
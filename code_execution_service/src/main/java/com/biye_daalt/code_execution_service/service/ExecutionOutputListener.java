@@ -0,0 +1,13 @@
+package com.biye_daalt.code_execution_service.service;
+
+/**
+ * Receives a program's output while it is still running. Callbacks arrive on
+ * the thread reading the output (Docker log stream or local pipe), in order,
+ * one stream chunk at a time, never two at once.
+ */
+public interface ExecutionOutputListener {
+
+    void onStdout(String chunk);
+
+    void onStderr(String chunk);
+}
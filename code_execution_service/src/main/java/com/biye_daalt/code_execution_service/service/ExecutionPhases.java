@@ -0,0 +1,68 @@
+package com.biye_daalt.code_execution_service.service;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Stopwatch for the phases of one execution (compile, acquire, deliver,
+ * start, run, drain, release...). Durations are only published once the run
+ * is over, so that every phase can be tagged with the final outcome.
+ * Not thread safe; used by the thread that drives the execution.
+ */
+final class ExecutionPhases {
+
+    static final String PHASE_TIMER = "execution.phase.duration";
+    static final String TOTAL_TIMER = "execution.duration";
+
+    private final long createdAtNanos = System.nanoTime();
+    private final Map<String, Long> durations = new LinkedHashMap<>();
+    private String currentPhase;
+    private long currentStartedAtNanos;
+
+    /**
+     * Ends the current phase, if any, and starts timing the next one.
+     */
+    void begin(String phase) {
+        end();
+        currentPhase = phase;
+        currentStartedAtNanos = System.nanoTime();
+    }
+
+    void end() {
+        if (currentPhase != null) {
+            durations.merge(currentPhase, System.nanoTime() - currentStartedAtNanos, Long::sum);
+            currentPhase = null;
+        }
+    }
+
+    void publish(MeterRegistry meterRegistry, String language, String backend, String outcome) {
+        end();
+        for (Map.Entry<String, Long> phase : durations.entrySet()) {
+            timer(PHASE_TIMER, language, backend, outcome)
+                    .tag("phase", phase.getKey())
+                    .register(meterRegistry)
+                    .record(Duration.ofNanos(phase.getValue()));
+        }
+        timer(TOTAL_TIMER, language, backend, outcome)
+                .register(meterRegistry)
+                .record(Duration.ofNanos(System.nanoTime() - createdAtNanos));
+    }
+
+    private static Timer.Builder timer(
+            String name,
+            String language,
+            String backend,
+            String outcome
+    ) {
+        return Timer.builder(name)
+                .tag("language", language)
+                .tag("backend", backend)
+                .tag("outcome", outcome)
+                .publishPercentiles(0.5, 0.95, 0.99)
+                .publishPercentileHistogram();
+    }
+}
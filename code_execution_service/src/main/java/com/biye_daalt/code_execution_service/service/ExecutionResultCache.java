@@ -0,0 +1,152 @@
+package com.biye_daalt.code_execution_service.service;
+
+import com.biye_daalt.code_execution_service.dto.ExecutionResponse;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Optional cache of execution results keyed by a content hash of everything
+ * that determines the result (language, image, code, input, limits).
+ * <p>
+ * Concurrent requests for the same key share a single in-flight execution.
+ * Only deterministic outcomes are cached: timeouts, service errors and
+ * containers killed by a signal (OOM, output limit) always run again.
+ * Entries are evicted least-recently-used beyond {@code execution.cache.max-entries}
+ * and expire after {@code execution.cache.ttl-seconds}.
+ */
+@Component
+public class ExecutionResultCache {
+
+    private static final Logger logger = LoggerFactory
+            .getLogger(ExecutionResultCache.class);
+
+    private record Entry(ExecutionResponse response, long expiresAtMillis) {
+    }
+
+    private final boolean enabled;
+    private final long ttlMillis;
+    private final MeterRegistry meterRegistry;
+
+    private final Map<String, Entry> entries;
+    private final Map<String, CompletableFuture<ExecutionResponse>> inFlight = new ConcurrentHashMap<>();
+
+    @Autowired
+    public ExecutionResultCache(
+            MeterRegistry meterRegistry,
+            @Value("${execution.cache.enabled:false}") boolean enabled,
+            @Value("${execution.cache.max-entries:1000}") int maxEntries,
+            @Value("${execution.cache.ttl-seconds:600}") long ttlSeconds
+    ) {
+        this.meterRegistry = meterRegistry;
+        this.enabled = enabled;
+        this.ttlMillis = TimeUnit.SECONDS.toMillis(ttlSeconds);
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                return size() > maxEntries;
+            }
+        };
+        meterRegistry.gaugeMapSize("execution.cache.size", Tags.empty(), entries);
+        logger.info("Execution result cache {}", enabled ? "enabled" : "disabled");
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Builds a cache key from the given parts. Parts are length-prefixed so
+     * that e.g. ("ab", "c") and ("a", "bc") produce different keys.
+     */
+    public static String keyOf(String... parts) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            for (String part : parts) {
+                byte[] bytes = part != null ? part.getBytes(StandardCharsets.UTF_8) : new byte[0];
+                digest.update(ByteBuffer.allocate(5).put((byte) (part != null ? 1 : 0)).putInt(bytes.length).array());
+                digest.update(bytes);
+            }
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    /**
+     * Returns a cached result for the key, joins an identical execution that
+     * is already running, or runs the execution and caches its result.
+     */
+    public ExecutionResponse getOrExecute(String key, Supplier<ExecutionResponse> execution) {
+        if (!enabled) {
+            return execution.get();
+        }
+
+        ExecutionResponse cached = lookup(key);
+        if (cached != null) {
+            meterRegistry.counter("execution.cache.requests", "result", "hit").increment();
+            return new ExecutionResponse(cached);
+        }
+
+        CompletableFuture<ExecutionResponse> ownFuture = new CompletableFuture<>();
+        CompletableFuture<ExecutionResponse> running = inFlight.putIfAbsent(key, ownFuture);
+        if (running != null) {
+            meterRegistry.counter("execution.cache.requests", "result", "coalesced").increment();
+            return new ExecutionResponse(running.join());
+        }
+
+        meterRegistry.counter("execution.cache.requests", "result", "miss").increment();
+        try {
+            ExecutionResponse response = execution.get();
+            if (isCacheable(response)) {
+                store(key, new ExecutionResponse(response));
+            }
+            ownFuture.complete(response);
+            return response;
+        } catch (RuntimeException e) {
+            ownFuture.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, ownFuture);
+        }
+    }
+
+    static boolean isCacheable(ExecutionResponse response) {
+        // -1: timeout or service error; >128: killed by a signal (OOM killer, output limit...)
+        return !response.isTimeout() &&
+                response.getExitCode() >= 0 &&
+                response.getExitCode() <= 128;
+    }
+
+    private synchronized ExecutionResponse lookup(String key) {
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            return null;
+        }
+        if (entry.expiresAtMillis() < System.currentTimeMillis()) {
+            entries.remove(key);
+            return null;
+        }
+        return entry.response();
+    }
+
+    private synchronized void store(String key, ExecutionResponse response) {
+        entries.put(key, new Entry(response, System.currentTimeMillis() + ttlMillis));
+    }
+}
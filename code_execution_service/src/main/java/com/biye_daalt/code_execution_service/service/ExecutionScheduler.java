@@ -0,0 +1,415 @@
+package com.biye_daalt.code_execution_service.service;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+
+/**
+ * Decides which execution may start next, so that bulk grading cannot starve
+ * people pressing "Run".
+ * <p>
+ * Every execution belongs to a {@link PriorityClass} and a client (tenant).
+ * At most {@code max-concurrent} executions run at once, and each class has
+ * its own cap, so e.g. batch work can never take the slots kept for
+ * interactive runs. When a slot frees up, the classes share it by weight
+ * (stride scheduling), and inside a class the clients take turns (weighted
+ * fair queuing with equal weights), so one client submitting hundreds of runs
+ * only delays its own. Waiting is bounded: a full class queue or a wait longer
+ * than {@code max-wait-seconds} ends in {@link RejectedExecutionException},
+ * which the controllers answer with 429.
+ */
+@Service
+public class ExecutionScheduler {
+
+    private static final Logger logger = LoggerFactory
+            .getLogger(ExecutionScheduler.class);
+
+    // Set by the API gateway to the caller's address; callers cannot choose it there
+    public static final String CLIENT_HEADER = "X-Client-Id";
+
+    /**
+     * Picked by the endpoint, never by the caller, so that bulk work cannot
+     * pass itself off as interactive.
+     */
+    public enum PriorityClass {
+        INTERACTIVE, BATCH;
+
+        String tag() {
+            return name().toLowerCase();
+        }
+    }
+
+    /**
+     * One execution waiting for (or holding) a slot.
+     */
+    static final class Ticket {
+        final PriorityClass priorityClass;
+        final String clientId;
+        final double finishTag;
+        // Breaks ties between equal finish tags in arrival order
+        final long sequence;
+        final long enqueuedAtNanos = System.nanoTime();
+        // Completed outside the scheduler's lock, after the slot was granted under it
+        final CompletableFuture<Void> admitted = new CompletableFuture<>();
+        // Guarded by the scheduler; set together with taking the slot
+        boolean granted;
+
+        Ticket(PriorityClass priorityClass, String clientId, double finishTag, long sequence) {
+            this.priorityClass = priorityClass;
+            this.clientId = clientId;
+            this.finishTag = finishTag;
+            this.sequence = sequence;
+        }
+
+        boolean goesBefore(Ticket other) {
+            return finishTag < other.finishTag || (finishTag == other.finishTag && sequence < other.sequence);
+        }
+
+        boolean isAdmitted() {
+            return admitted.isDone();
+        }
+    }
+
+    private static final class ClassQueue {
+        final int weight;
+        final int maxConcurrent;
+        final int maxQueued;
+        // Per-client FIFO queues; the head with the lowest finish tag goes first
+        final Map<String, Deque<Ticket>> clients = new HashMap<>();
+        final Map<String, Double> lastFinishTags = new HashMap<>();
+        double virtualTime;
+        double pass;
+        int active;
+        int queued;
+
+        ClassQueue(int weight, int maxConcurrent, int maxQueued) {
+            this.weight = Math.max(1, weight);
+            this.maxConcurrent = maxConcurrent;
+            this.maxQueued = maxQueued;
+        }
+    }
+
+    private final MeterRegistry meterRegistry;
+    private final int maxConcurrent;
+    private final long maxWaitMillis;
+    private final boolean clientHeaderTrusted;
+    private final Map<PriorityClass, ClassQueue> classes = new EnumMap<>(PriorityClass.class);
+    private int active;
+    private double globalPass;
+    private long nextSequence;
+
+    @Autowired
+    public ExecutionScheduler(
+            MeterRegistry meterRegistry,
+            @Value("${execution.scheduler.max-concurrent:8}") int maxConcurrent,
+            @Value("${execution.scheduler.max-wait-seconds:60}") long maxWaitSeconds,
+            @Value("${execution.scheduler.interactive.weight:4}") int interactiveWeight,
+            @Value("${execution.scheduler.interactive.max-concurrent:8}") int interactiveMaxConcurrent,
+            @Value("${execution.scheduler.interactive.max-queued:100}") int interactiveMaxQueued,
+            @Value("${execution.scheduler.batch.weight:1}") int batchWeight,
+            @Value("${execution.scheduler.batch.max-concurrent:6}") int batchMaxConcurrent,
+            @Value("${execution.scheduler.batch.max-queued:200}") int batchMaxQueued,
+            // Only behind a gateway that overwrites the header; otherwise any caller could rotate it
+            @Value("${execution.scheduler.client-header.trusted:false}") boolean clientHeaderTrusted
+    ) {
+        this.meterRegistry = meterRegistry;
+        this.maxConcurrent = maxConcurrent;
+        this.maxWaitMillis = TimeUnit.SECONDS.toMillis(maxWaitSeconds);
+        this.clientHeaderTrusted = clientHeaderTrusted;
+        classes.put(PriorityClass.INTERACTIVE, new ClassQueue(interactiveWeight, interactiveMaxConcurrent, interactiveMaxQueued));
+        classes.put(PriorityClass.BATCH, new ClassQueue(batchWeight, batchMaxConcurrent, batchMaxQueued));
+
+        for (Map.Entry<PriorityClass, ClassQueue> entry : classes.entrySet()) {
+            ClassQueue queue = entry.getValue();
+            Gauge.builder("execution.scheduler.queued", this, scheduler -> scheduler.queuedCount(queue))
+                    .description("Executions waiting for a slot")
+                    .tag("class", entry.getKey().tag())
+                    .register(meterRegistry);
+            Gauge.builder("execution.scheduler.active", this, scheduler -> scheduler.activeCount(queue))
+                    .description("Executions holding a slot")
+                    .tag("class", entry.getKey().tag())
+                    .register(meterRegistry);
+        }
+        logger.info(
+                "Execution scheduler: {} concurrent runs, interactive weight {} (max {}), batch weight {} (max {})",
+                maxConcurrent,
+                interactiveWeight,
+                interactiveMaxConcurrent,
+                batchWeight,
+                batchMaxConcurrent
+        );
+    }
+
+    /**
+     * Waits for a slot in the class, runs the work on the calling thread and
+     * frees the slot again.
+     *
+     * @throws RejectedExecutionException if the class queue is full or no slot
+     *                                    freed up within {@code max-wait-seconds}
+     */
+    public <T> T run(PriorityClass priorityClass, String clientId, Supplier<T> work) {
+        Ticket ticket = enqueue(priorityClass, clientId);
+        awaitAdmission(ticket);
+        try {
+            return work.get();
+        } finally {
+            complete(ticket);
+        }
+    }
+
+    /**
+     * Same as {@link #run}, but waits for the slot without holding a thread:
+     * the work is handed to the executor only once it has been admitted. A
+     * pool of workers therefore never fills up with executions that are still
+     * queued here, which would make later executions of any class wait for a
+     * worker before they even reach the scheduler.
+     *
+     * @return the work's result; fails with {@link RejectedExecutionException}
+     * if no slot freed up within {@code max-wait-seconds} or the executor
+     * refused the work
+     * @throws RejectedExecutionException if the class queue is full
+     */
+    public <T> CompletableFuture<T> submit(
+            PriorityClass priorityClass,
+            String clientId,
+            Supplier<T> work,
+            Executor executor
+    ) {
+        Ticket ticket = enqueue(priorityClass, clientId);
+        CompletableFuture<T> result = new CompletableFuture<>();
+        // A copy, so that the timeout never completes the ticket's own future
+        ticket.admitted.copy().orTimeout(maxWaitMillis, TimeUnit.MILLISECONDS).whenComplete((ignored, error) -> {
+            if (error != null && abandon(ticket)) {
+                recordWait(ticket, "timeout");
+                logger.warn(
+                        "Execution of client {} ({}) waited {} ms without getting a slot",
+                        ticket.clientId,
+                        ticket.priorityClass.tag(),
+                        maxWaitMillis
+                );
+                result.completeExceptionally(new RejectedExecutionException("No execution slot became available in time"));
+                return;
+            }
+            recordWait(ticket, "admitted");
+            try {
+                executor.execute(() -> {
+                    try {
+                        result.complete(work.get());
+                    } catch (Throwable t) {
+                        result.completeExceptionally(t);
+                    } finally {
+                        complete(ticket);
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                complete(ticket);
+                result.completeExceptionally(e);
+            }
+        });
+        return result;
+    }
+
+    /**
+     * @return the key clients are told apart by: the {@value #CLIENT_HEADER}
+     * header if it is trusted and present, else the caller's address
+     */
+    public String clientKey(String clientHeader, String remoteAddress) {
+        if (clientHeaderTrusted && clientHeader != null && !clientHeader.isBlank()) {
+            return clientHeader.trim();
+        }
+        return remoteAddress != null ? remoteAddress : "anonymous";
+    }
+
+    private void awaitAdmission(Ticket ticket) {
+        String outcome = "admitted";
+        try {
+            ticket.admitted.get(maxWaitMillis, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException | InterruptedException e) {
+            if (e instanceof InterruptedException) {
+                Thread.currentThread().interrupt();
+            }
+            if (!abandon(ticket)) {
+                // Admitted just as the wait ended; keep the slot
+                return;
+            }
+            outcome = "timeout";
+            logger.warn(
+                    "Execution of client {} ({}) waited {} ms without getting a slot",
+                    ticket.clientId,
+                    ticket.priorityClass.tag(),
+                    maxWaitMillis
+            );
+            throw new RejectedExecutionException("No execution slot became available in time");
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        } finally {
+            recordWait(ticket, outcome);
+        }
+    }
+
+    private void recordWait(Ticket ticket, String outcome) {
+        Timer.builder("execution.scheduler.wait")
+                .description("Time executions spend waiting for a slot")
+                .tag("class", ticket.priorityClass.tag())
+                .tag("outcome", outcome)
+                .publishPercentiles(0.5, 0.95, 0.99)
+                .register(meterRegistry)
+                .record(Duration.ofNanos(System.nanoTime() - ticket.enqueuedAtNanos));
+    }
+
+    /**
+     * Queues the execution and admits it right away if a slot is free.
+     *
+     * @throws RejectedExecutionException if the class queue is full
+     */
+    Ticket enqueue(PriorityClass priorityClass, String clientId) {
+        Ticket ticket;
+        List<Ticket> admitted;
+        synchronized (this) {
+            ClassQueue queue = classes.get(priorityClass);
+            if (queue.queued >= queue.maxQueued) {
+                meterRegistry.counter("execution.scheduler.rejected", "class", priorityClass.tag()).increment();
+                throw new RejectedExecutionException("Too many " + priorityClass.tag() + " executions queued");
+            }
+            if (queue.queued == 0 && queue.active == 0) {
+                // An idle class must not bank credit from the time it had nothing to run
+                queue.pass = Math.max(queue.pass, globalPass);
+            }
+            double start = Math.max(queue.virtualTime, queue.lastFinishTags.getOrDefault(clientId, 0.0));
+            ticket = new Ticket(priorityClass, clientId, start + 1, nextSequence++);
+            queue.lastFinishTags.put(clientId, ticket.finishTag);
+            queue.clients.computeIfAbsent(clientId, id -> new ArrayDeque<>()).addLast(ticket);
+            queue.queued++;
+            admitted = dispatch();
+        }
+        admit(admitted);
+        return ticket;
+    }
+
+    /**
+     * Frees the slot of an admitted execution and hands it to the next one.
+     */
+    void complete(Ticket ticket) {
+        List<Ticket> admitted;
+        synchronized (this) {
+            ClassQueue queue = classes.get(ticket.priorityClass);
+            queue.active--;
+            active--;
+            admitted = dispatch();
+        }
+        admit(admitted);
+    }
+
+    /**
+     * Completes the admission of tickets granted a slot. Called without
+     * holding the lock: whatever waits on them (handing the work to an
+     * executor, or freeing the slot again if it refuses) runs right here.
+     */
+    private static void admit(List<Ticket> admitted) {
+        for (Ticket ticket : admitted) {
+            ticket.admitted.complete(null);
+        }
+    }
+
+    /**
+     * Removes a ticket that gave up waiting.
+     *
+     * @return false if it had been admitted in the meantime
+     */
+    private synchronized boolean abandon(Ticket ticket) {
+        if (ticket.granted) {
+            return false;
+        }
+        ClassQueue queue = classes.get(ticket.priorityClass);
+        Deque<Ticket> clientQueue = queue.clients.get(ticket.clientId);
+        if (clientQueue != null && clientQueue.remove(ticket)) {
+            queue.queued--;
+            if (clientQueue.isEmpty()) {
+                queue.clients.remove(ticket.clientId);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Grants free slots to waiting tickets; the caller completes their
+     * admission once it has released the lock.
+     */
+    private List<Ticket> dispatch() {
+        List<Ticket> admitted = new ArrayList<>();
+        while (active < maxConcurrent) {
+            ClassQueue next = null;
+            for (ClassQueue queue : classes.values()) {
+                boolean eligible = queue.queued > 0 && queue.active < queue.maxConcurrent;
+                if (eligible && (next == null || queue.pass < next.pass)) {
+                    next = queue;
+                }
+            }
+            if (next == null) {
+                break;
+            }
+            Ticket ticket = pollLowestFinishTag(next);
+            globalPass = next.pass;
+            next.pass += 1.0 / next.weight;
+            next.active++;
+            active++;
+            ticket.granted = true;
+            admitted.add(ticket);
+        }
+        return admitted;
+    }
+
+    private static Ticket pollLowestFinishTag(ClassQueue queue) {
+        Map.Entry<String, Deque<Ticket>> best = null;
+        for (Map.Entry<String, Deque<Ticket>> entry : queue.clients.entrySet()) {
+            if (best == null || entry.getValue().peekFirst().goesBefore(best.getValue().peekFirst())) {
+                best = entry;
+            }
+        }
+        Ticket ticket = best.getValue().pollFirst();
+        if (best.getValue().isEmpty()) {
+            queue.clients.remove(best.getKey());
+        }
+        queue.queued--;
+        queue.virtualTime = ticket.finishTag;
+        // Forget clients that are no longer ahead of the virtual clock
+        Iterator<Map.Entry<String, Double>> tags = queue.lastFinishTags.entrySet().iterator();
+        while (tags.hasNext()) {
+            Map.Entry<String, Double> tag = tags.next();
+            if (tag.getValue() <= queue.virtualTime && !queue.clients.containsKey(tag.getKey())) {
+                tags.remove();
+            }
+        }
+        return ticket;
+    }
+
+    private synchronized int queuedCount(ClassQueue queue) {
+        return queue.queued;
+    }
+
+    private synchronized int activeCount(ClassQueue queue) {
+        return queue.active;
+    }
+}
@@ -0,0 +1,123 @@
+package com.biye_daalt.code_execution_service.service;
+
+import com.biye_daalt.code_execution_service.dto.ExecutionResponse;
+import com.github.dockerjava.api.async.ResultCallback;
+import com.github.dockerjava.api.model.Frame;
+import com.github.dockerjava.api.model.StreamType;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+/**
+ * Collects stdout/stderr frames of a running program (container logs, an exec
+ * stream or the pipes of a local process) into bounded {@link OutputCapture}s,
+ * forwards new text to an optional listener and asks for the program to be
+ * stopped once it has written more than the allowed number of bytes, or, in a
+ * judged run, once its stdout can no longer match the expected output.
+ */
+class FrameCollector extends ResultCallback.Adapter<Frame> {
+
+    private final OutputCapture stdout;
+    private final OutputCapture stderr;
+    private final ExecutionOutputListener outputListener;
+    private final long killThresholdBytes;
+    private final OutputComparator comparator;
+    private final Consumer<String> stopProgram;
+    private final AtomicBoolean outputLimitExceeded = new AtomicBoolean(false);
+    private final AtomicBoolean stoppedForMismatch = new AtomicBoolean(false);
+
+    /**
+     * @param comparator  checks stdout against the expected output, null for a plain run
+     * @param stopProgram kills the program; receives the reason for the log
+     */
+    FrameCollector(
+            int maxOutputChars,
+            long killThresholdBytes,
+            ExecutionOutputListener outputListener,
+            OutputComparator comparator,
+            Consumer<String> stopProgram
+    ) {
+        this.stdout = new OutputCapture(maxOutputChars);
+        this.stderr = new OutputCapture(maxOutputChars);
+        this.outputListener = outputListener;
+        // A judged run may legitimately print as much as the expected output
+        this.killThresholdBytes = killThresholdBytes + (comparator != null ? comparator.expectedBytes() : 0);
+        this.comparator = comparator;
+        this.stopProgram = stopProgram;
+    }
+
+    @Override
+    public void onNext(Frame item) {
+        if (StreamType.STDOUT.equals(item.getStreamType())) {
+            append(false, item.getPayload(), item.getPayload().length);
+        } else if (StreamType.STDERR.equals(item.getStreamType())) {
+            append(true, item.getPayload(), item.getPayload().length);
+        }
+    }
+
+    /**
+     * Takes the first {@code length} bytes of a buffer read from the program's
+     * stdout or stderr. Docker frames arrive through {@link #onNext}; a local
+     * process feeds both of its pipes here from two reader threads.
+     */
+    synchronized void append(boolean fromStderr, byte[] payload, int length) {
+        if (!fromStderr && comparator != null) {
+            comparator.accept(payload, length);
+            if (comparator.mismatched() && stoppedForMismatch.compareAndSet(false, true)) {
+                stopProgram.accept("wrong answer: " + comparator.mismatch());
+            }
+        }
+        OutputCapture capture = fromStderr ? stderr : stdout;
+        int before = capture.length();
+        capture.append(payload, length);
+        if (outputListener != null && capture.length() > before) {
+            if (fromStderr) {
+                outputListener.onStderr(capture.substring(before));
+            } else {
+                outputListener.onStdout(capture.substring(before));
+            }
+        }
+        if (
+                stdout.totalBytes() + stderr.totalBytes() > killThresholdBytes &&
+                        outputLimitExceeded.compareAndSet(false, true)
+        ) {
+            stopProgram.accept("output exceeded " + killThresholdBytes + " bytes");
+        }
+    }
+
+    OutputCapture stdout() {
+        return stdout;
+    }
+
+    OutputCapture stderr() {
+        return stderr;
+    }
+
+    boolean outputLimitExceeded() {
+        return outputLimitExceeded.get();
+    }
+
+    /**
+     * Sets output and error of the response from what was collected. After a
+     * timeout the timeout message is kept and stderr is appended to it.
+     */
+    synchronized void applyTo(ExecutionResponse response, boolean timedOut) {
+        response.setOutput(stdout.toString().trim());
+        response.setOutputTruncated(stdout.isTruncated() || stderr.isTruncated());
+        if (outputLimitExceeded()) {
+            stderr.appendNote(
+                    "\n[Execution stopped: output exceeded " +
+                            killThresholdBytes +
+                            " bytes]"
+            );
+        }
+        if (!timedOut) { // Only set error from stderr if not timed out
+            response.setError(stderr.toString().trim());
+        } else { // If timed out, the timeout message is already set. Append stderr if any.
+            String collectedStdErr = stderr.toString().trim();
+            if (!collectedStdErr.isEmpty()) {
+                response.setError(response.getError() + "\nPartial stderr before timeout:\n" + collectedStdErr);
+            }
+        }
+    }
+}
@@ -0,0 +1,51 @@
+package com.biye_daalt.code_execution_service.service;
+
+import com.biye_daalt.code_execution_service.config.ConditionalOnDockerExecutor;
+import com.biye_daalt.code_execution_service.config.DockerDaemon;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Resolves image names such as {@code dukunuu/python-executor:latest} to the
+ * image ID currently present on the daemon, so results can be tied to the exact
+ * image that produced them. Lookups are cached briefly to keep them off the
+ * request path. Each daemon pulls images on its own, so IDs are cached per daemon.
+ */
+@ConditionalOnDockerExecutor
+@Component
+public class ImageDigestResolver {
+
+    private record Resolved(String imageId, long resolvedAtMillis) {
+    }
+
+    private final long refreshMillis;
+    private final Map<String, Resolved> resolved = new ConcurrentHashMap<>();
+
+    @Autowired
+    public ImageDigestResolver(
+            @Value("${execution.image.digest-refresh-seconds:60}") long refreshSeconds
+    ) {
+        this.refreshMillis = TimeUnit.SECONDS.toMillis(refreshSeconds);
+    }
+
+    /**
+     * @return the image ID (e.g. {@code sha256:...}) for the image name on the daemon
+     * @throws com.github.dockerjava.api.exception.DockerException if the image cannot be inspected
+     */
+    public String resolve(DockerDaemon daemon, String imageName) {
+        String key = daemon.id() + "|" + imageName;
+        Resolved cached = resolved.get(key);
+        long now = System.currentTimeMillis();
+        if (cached != null && now - cached.resolvedAtMillis() < refreshMillis) {
+            return cached.imageId();
+        }
+        String imageId = daemon.control().inspectImageCmd(imageName).exec().getId();
+        resolved.put(key, new Resolved(imageId, now));
+        return imageId;
+    }
+}
@@ -0,0 +1,79 @@
+package com.biye_daalt.code_execution_service.service;
+
+import java.util.Objects;
+
+/**
+ * Sandbox image, script file name, shell commands and resource limits of one
+ * supported language, as loaded by {@link LanguageRegistry}.
+ * <p>
+ * Single runs use the image's default command unless the language's compiled
+ * artifacts are cached (see {@link CompilationService}). The explicit
+ * compile/run commands are used where the service drives the program itself,
+ * e.g. the compile step, the batch runner or the exec backend.
+ */
+final class LanguageConfig {
+
+    final String imageName;
+    final String scriptFileName;
+    final String compileCommand; // null for interpreted languages
+    final String runCommand;
+    final String artifactPath; // Compiler output directory under /app, null for interpreted languages
+    final long memoryLimitBytes;
+    final int cpuShares;
+    final long timeoutSeconds;
+    final String warmupCode; // null to skip the warmup run
+
+    LanguageConfig(
+            String imageName,
+            String scriptFileName,
+            String compileCommand,
+            String runCommand,
+            String artifactPath,
+            long memoryLimitBytes,
+            int cpuShares,
+            long timeoutSeconds,
+            String warmupCode
+    ) {
+        this.imageName = imageName;
+        this.scriptFileName = scriptFileName;
+        this.compileCommand = compileCommand;
+        this.runCommand = runCommand;
+        this.artifactPath = artifactPath;
+        this.memoryLimitBytes = memoryLimitBytes;
+        this.cpuShares = cpuShares;
+        this.timeoutSeconds = timeoutSeconds;
+        this.warmupCode = warmupCode;
+    }
+
+    /**
+     * @return the same language running from another image reference, e.g. one pinned to a digest
+     */
+    LanguageConfig withImage(String image) {
+        return new LanguageConfig(
+                image,
+                scriptFileName,
+                compileCommand,
+                runCommand,
+                artifactPath,
+                memoryLimitBytes,
+                cpuShares,
+                timeoutSeconds,
+                warmupCode
+        );
+    }
+
+    /**
+     * @return true if runs of the other config behave the same apart from the warmup snippet
+     */
+    boolean sameSandboxAs(LanguageConfig other) {
+        return other != null &&
+                imageName.equals(other.imageName) &&
+                scriptFileName.equals(other.scriptFileName) &&
+                Objects.equals(compileCommand, other.compileCommand) &&
+                runCommand.equals(other.runCommand) &&
+                Objects.equals(artifactPath, other.artifactPath) &&
+                memoryLimitBytes == other.memoryLimitBytes &&
+                cpuShares == other.cpuShares &&
+                timeoutSeconds == other.timeoutSeconds;
+    }
+}
@@ -0,0 +1,267 @@
+package com.biye_daalt.code_execution_service.service;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.DefaultResourceLoader;
+import org.springframework.core.io.Resource;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * The supported languages, loaded from {@code execution.languages.location}
+ * (by default {@code sandbox/languages.json} on the classpath).
+ * <p>
+ * Each entry names the image, script file, compile/run commands and optional
+ * limits ({@code memoryMb}, {@code cpuShares}, {@code timeoutSeconds}) and a
+ * {@code warmupCode} snippet. If the location is a file, it is checked for
+ * changes every {@code reload-interval-seconds}; a valid new version replaces
+ * the registry at once and listeners are told which languages changed, while
+ * an invalid one is logged and ignored.
+ */
+@Component
+public class LanguageRegistry {
+
+    private static final Logger logger = LoggerFactory
+            .getLogger(LanguageRegistry.class);
+
+    private static final long DEFAULT_MEMORY_MB = 256;
+    private static final int DEFAULT_CPU_SHARES = 512;
+
+    /**
+     * One language as written in the registry file.
+     */
+    record LanguageDefinition(
+            String image,
+            String scriptFile,
+            String compileCommand,
+            String runCommand,
+            String artifactPath,
+            Long memoryMb,
+            Integer cpuShares,
+            Long timeoutSeconds,
+            String warmupCode
+    ) {
+    }
+
+    private static final ObjectMapper objectMapper = new ObjectMapper()
+            .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+
+    private final Resource resource;
+    private final long defaultTimeoutSeconds;
+    private final List<Consumer<Set<String>>> listeners = new CopyOnWriteArrayList<>();
+    private final ScheduledExecutorService reloader;
+    private volatile Map<String, LanguageConfig> languages;
+    private volatile long lastModified;
+
+    @Autowired
+    public LanguageRegistry(
+            @Value("${execution.languages.location:classpath:sandbox/languages.json}") String location,
+            @Value("${execution.languages.reload-interval-seconds:10}") long reloadIntervalSeconds,
+            @Value("${execution.timeout.seconds:15}") long defaultTimeoutSeconds
+    ) {
+        this.resource = new DefaultResourceLoader().getResource(location);
+        this.defaultTimeoutSeconds = defaultTimeoutSeconds;
+        try {
+            this.lastModified = lastModified();
+            this.languages = load();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to load language registry from " + location, e);
+        }
+        logger.info("Loaded {} languages from {}: {}", languages.size(), location, languages.keySet());
+
+        this.reloader = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "language-registry-reload");
+            thread.setDaemon(true);
+            return thread;
+        });
+        if (isFile() && reloadIntervalSeconds > 0) {
+            reloader.scheduleWithFixedDelay(
+                    this::reloadIfChanged,
+                    reloadIntervalSeconds,
+                    reloadIntervalSeconds,
+                    TimeUnit.SECONDS
+            );
+        }
+    }
+
+    /**
+     * @return the config for the (already normalized) language key, or null if unsupported
+     */
+    LanguageConfig forLanguage(String language) {
+        return languages.get(language);
+    }
+
+    /**
+     * @return a snapshot of all languages; later reloads do not change it
+     */
+    Map<String, LanguageConfig> all() {
+        return languages;
+    }
+
+    /**
+     * Registers a callback that receives the keys of added, changed or removed
+     * languages after every reload (and after {@link #pinImage}).
+     */
+    void addListener(Consumer<Set<String>> listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * Replaces the language's image reference, e.g. a {@code :latest} tag with
+     * the {@code repo@sha256:...} digest it pointed to at startup, so that all
+     * daemons run the same image until the registry is reloaded.
+     */
+    synchronized void pinImage(String language, String imageReference) {
+        LanguageConfig current = languages.get(language);
+        if (current == null || current.imageName.equals(imageReference)) {
+            return;
+        }
+        Map<String, LanguageConfig> updated = new LinkedHashMap<>(languages);
+        updated.put(language, current.withImage(imageReference));
+        languages = Collections.unmodifiableMap(updated);
+        logger.info("Pinned {} to image {}", language, imageReference);
+        notifyListeners(Set.of(language));
+    }
+
+    private synchronized void reloadIfChanged() {
+        try {
+            long modified = lastModified();
+            if (modified == lastModified) {
+                return;
+            }
+            lastModified = modified;
+            Map<String, LanguageConfig> reloaded = load();
+            Map<String, LanguageConfig> previous = languages;
+            Set<String> changed = new HashSet<>();
+            for (String language : previous.keySet()) {
+                if (!reloaded.containsKey(language)) {
+                    changed.add(language);
+                }
+            }
+            for (Map.Entry<String, LanguageConfig> entry : reloaded.entrySet()) {
+                LanguageConfig old = previous.get(entry.getKey());
+                // A pinned digest stays in place unless the file now names another image
+                if (old != null && entry.getValue().withImage(old.imageName).sameSandboxAs(old)
+                        && imageUnchanged(old, entry.getValue())) {
+                    entry.setValue(entry.getValue().withImage(old.imageName));
+                } else {
+                    changed.add(entry.getKey());
+                }
+            }
+            languages = Collections.unmodifiableMap(reloaded);
+            logger.info("Reloaded language registry from {}; changed: {}", resource, changed);
+            if (!changed.isEmpty()) {
+                notifyListeners(changed);
+            }
+        } catch (Exception e) {
+            logger.error("Ignoring invalid language registry {}: {}", resource, e.getMessage());
+        }
+    }
+
+    private static boolean imageUnchanged(LanguageConfig old, LanguageConfig reloaded) {
+        if (old.imageName.equals(reloaded.imageName)) {
+            return true;
+        }
+        // old is pinned as repo@sha256:..., reloaded still names repo:tag
+        int at = old.imageName.indexOf('@');
+        return at > 0 && reloaded.imageName.startsWith(old.imageName.substring(0, at) + ":");
+    }
+
+    private void notifyListeners(Set<String> changed) {
+        for (Consumer<Set<String>> listener : listeners) {
+            try {
+                listener.accept(changed);
+            } catch (RuntimeException e) {
+                logger.error("Language registry listener failed: {}", e.getMessage(), e);
+            }
+        }
+    }
+
+    private Map<String, LanguageConfig> load() throws IOException {
+        Map<String, LanguageDefinition> definitions;
+        try (InputStream in = resource.getInputStream()) {
+            definitions = objectMapper.readValue(in, new TypeReference<LinkedHashMap<String, LanguageDefinition>>() {
+            });
+        }
+        return parse(definitions, defaultTimeoutSeconds);
+    }
+
+    /**
+     * Validates the definitions and turns them into configs keyed by lower-case language.
+     *
+     * @throws IllegalArgumentException if an entry is incomplete
+     */
+    static Map<String, LanguageConfig> parse(Map<String, LanguageDefinition> definitions, long defaultTimeoutSeconds) {
+        if (definitions == null || definitions.isEmpty()) {
+            throw new IllegalArgumentException("No languages defined");
+        }
+        Map<String, LanguageConfig> configs = new LinkedHashMap<>();
+        for (Map.Entry<String, LanguageDefinition> entry : definitions.entrySet()) {
+            String language = entry.getKey().toLowerCase().trim();
+            LanguageDefinition definition = entry.getValue();
+            if (isBlank(definition.image()) || isBlank(definition.scriptFile()) || isBlank(definition.runCommand())) {
+                throw new IllegalArgumentException(
+                        "Language " + language + " needs at least image, scriptFile and runCommand"
+                );
+            }
+            if (isBlank(definition.compileCommand()) != isBlank(definition.artifactPath())) {
+                throw new IllegalArgumentException(
+                        "Language " + language + " needs both compileCommand and artifactPath, or neither"
+                );
+            }
+            configs.put(language, new LanguageConfig(
+                    definition.image().trim(),
+                    definition.scriptFile().trim(),
+                    isBlank(definition.compileCommand()) ? null : definition.compileCommand(),
+                    definition.runCommand(),
+                    isBlank(definition.artifactPath()) ? null : definition.artifactPath().trim(),
+                    (definition.memoryMb() != null ? definition.memoryMb() : DEFAULT_MEMORY_MB) * 1024 * 1024,
+                    definition.cpuShares() != null ? definition.cpuShares() : DEFAULT_CPU_SHARES,
+                    definition.timeoutSeconds() != null ? definition.timeoutSeconds() : defaultTimeoutSeconds,
+                    isBlank(definition.warmupCode()) ? null : definition.warmupCode()
+            ));
+        }
+        return configs;
+    }
+
+    private boolean isFile() {
+        try {
+            return resource.isFile();
+        } catch (Exception e) {
+            return false;
+        }
+    }
+
+    private long lastModified() throws IOException {
+        return isFile() ? resource.lastModified() : 0;
+    }
+
+    private static boolean isBlank(String value) {
+        return value == null || value.isBlank();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        reloader.shutdownNow();
+    }
+}
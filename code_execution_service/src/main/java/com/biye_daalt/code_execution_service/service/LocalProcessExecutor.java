@@ -0,0 +1,482 @@
+package com.biye_daalt.code_execution_service.service;
+
+import com.biye_daalt.code_execution_service.dto.ExecutionResponse;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+/**
+ * Runs submissions as local processes of the language runtime, without
+ * Docker. Meant for trusted code only (CI self-checks, benchmarks): the
+ * isolation is far weaker than a container.
+ * <p>
+ * Every run gets a private working directory (also its HOME and TMPDIR) and a
+ * clean environment, reads its stdin from a file there, and is started under
+ * {@code ulimit}s for CPU time, file size, open files and optionally address
+ * space. With
+ * {@code execution.local.network=none} it runs in its own network namespace
+ * ({@code unshare --net}, no interfaces but loopback). If
+ * {@code execution.local.cgroup.parent} names a delegated cgroup v2 directory,
+ * each run also gets a child cgroup with the language's memory limit, a pids
+ * limit and a CPU quota, which is used to report CPU time and peak memory and
+ * to kill everything the program started.
+ */
+@Component
+class LocalProcessExecutor implements CodeExecutor {
+
+    private static final Logger logger = LoggerFactory
+            .getLogger(LocalProcessExecutor.class);
+
+    private static final long OUTPUT_DRAIN_TIMEOUT_SECONDS = 5;
+    private static final int READ_BUFFER_BYTES = 8192;
+    private static final String BACKEND_LOCAL = "local";
+    private static final List<String> NETWORK_NAMESPACE =
+            List.of("unshare", "--user", "--map-root-user", "--net", "--");
+
+    private final Path workDir;
+    private final boolean isolateNetwork;
+    private final Path cgroupParent;
+    private final int pidsMax;
+    private final int cpus;
+    private final long fileSizeLimitMb;
+    private final int openFilesLimit;
+    private final long addressSpaceLimitMb;
+    private final int maxOutputChars;
+    private final long outputKillThresholdBytes;
+    private final ExecutorService outputReaders;
+    private volatile Boolean networkIsolationAvailable;
+
+    @Autowired
+    LocalProcessExecutor(
+            @Value("${execution.local.work-dir:}") String workDir,
+            // "none" = own network namespace, "host" = the service's network
+            @Value("${execution.local.network:none}") String network,
+            @Value("${execution.local.cgroup.parent:}") String cgroupParent,
+            @Value("${execution.local.cgroup.pids-max:64}") int pidsMax,
+            @Value("${execution.local.cgroup.cpus:1}") int cpus,
+            @Value("${execution.local.rlimit.file-size-mb:16}") long fileSizeLimitMb,
+            @Value("${execution.local.rlimit.open-files:64}") int openFilesLimit,
+            // 0 = off; runtimes like the JVM reserve far more address space than they use
+            @Value("${execution.local.rlimit.address-space-mb:0}") long addressSpaceLimitMb,
+            @Value("${code.execution.max.output.chars:10000}") int maxOutputChars,
+            @Value("${code.execution.output.kill.factor:4}") double outputKillFactor
+    ) {
+        this.workDir = workDir.isBlank()
+                ? Paths.get(System.getProperty("java.io.tmpdir"), "code_execution_local")
+                : Paths.get(workDir);
+        this.isolateNetwork = !"host".equalsIgnoreCase(network.trim());
+        this.cgroupParent = cgroupParent.isBlank() ? null : Paths.get(cgroupParent);
+        this.pidsMax = pidsMax;
+        this.cpus = Math.max(1, cpus);
+        this.fileSizeLimitMb = fileSizeLimitMb;
+        this.openFilesLimit = openFilesLimit;
+        this.addressSpaceLimitMb = addressSpaceLimitMb;
+        this.maxOutputChars = maxOutputChars;
+        this.outputKillThresholdBytes = (long) (maxOutputChars * outputKillFactor);
+        AtomicInteger threadCount = new AtomicInteger();
+        this.outputReaders = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "local-exec-output-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @Override
+    public String name() {
+        return "local";
+    }
+
+    @Override
+    public String execute(
+            String languageKey,
+            LanguageConfig config,
+            String code,
+            ExecutionInput stdin,
+            ExecutionOutputListener outputListener,
+            OutputComparator comparator,
+            ExecutionResponse response,
+            ExecutionPhases phases
+    ) {
+        Path runDir = null;
+        Path cgroup = null;
+        Process process = null;
+
+        try {
+            if (isolateNetwork && !networkIsolationAvailable()) {
+                response.setError(
+                        "Server error: network isolation (unshare --net) is not available on this host. " +
+                                "Set execution.local.network=host to run without it."
+                );
+                response.setExitCode(-1);
+                return BACKEND_LOCAL;
+            }
+
+            // 1. Write the code (and stdin) into a private working directory
+            phases.begin("deliver");
+            Files.createDirectories(workDir);
+            runDir = Files.createTempDirectory(
+                    workDir,
+                    "run-",
+                    PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rwx------"))
+            );
+            Files.writeString(runDir.resolve(config.scriptFileName), code);
+            Path stdinFile = null;
+            if (stdin != null) {
+                stdinFile = runDir.resolve(SandboxContainerFactory.STDIN_FILE);
+                try (InputStream in = stdin.open()) {
+                    Files.copy(in, stdinFile);
+                }
+            }
+
+            // 2. Give the run its own cgroup with the language's limits
+            if (cgroupParent != null) {
+                cgroup = createCgroup(config);
+            }
+
+            // 3. Start the runtime with a clean environment
+            phases.begin("start");
+            ProcessBuilder builder = new ProcessBuilder(command(config, cgroup)).directory(runDir.toFile());
+            Map<String, String> environment = builder.environment();
+            String path = environment.get("PATH");
+            environment.clear();
+            environment.put("PATH", path != null ? path : "/usr/local/bin:/usr/bin:/bin");
+            environment.put("HOME", runDir.toString());
+            environment.put("TMPDIR", runDir.toString());
+            environment.put("LANG", "C.UTF-8");
+            if (stdinFile != null) {
+                builder.redirectInput(stdinFile.toFile());
+            }
+            process = builder.start();
+            process.getOutputStream().close(); // Without input, stdin is at EOF right away
+            logger.debug("Local process {} started for language {} in {}", process.pid(), languageKey, runDir);
+
+            // 4. Follow stdout/stderr while the process runs
+            phases.begin("run");
+            final Process running = process;
+            final Path runningCgroup = cgroup;
+            FrameCollector collector = new FrameCollector(
+                    maxOutputChars,
+                    outputKillThresholdBytes,
+                    outputListener,
+                    comparator,
+                    reason -> {
+                        logger.info("Stopping local process {}: {}", running.pid(), reason);
+                        kill(running, runningCgroup);
+                    }
+            );
+            Future<?> stdoutReader = outputReaders.submit(() -> pump(running.getInputStream(), collector, false));
+            Future<?> stderrReader = outputReaders.submit(() -> pump(running.getErrorStream(), collector, true));
+
+            // 5. Wait for the process to exit; it is killed once the timeout passes
+            boolean timedOut = !process.waitFor(config.timeoutSeconds, TimeUnit.SECONDS);
+            if (timedOut) {
+                logger.warn(
+                        "Local process {} timed out after {}s and was killed",
+                        process.pid(),
+                        config.timeoutSeconds
+                );
+                kill(process, cgroup);
+                CodeExecutor.markTimedOut(response, config.timeoutSeconds);
+            } else {
+                response.setExitCode(process.exitValue());
+                logger.info(
+                        "Local process {} finished with exit code: {}",
+                        process.pid(),
+                        process.exitValue()
+                );
+            }
+
+            // 6. Let the pipes drain, then collect usage from the cgroup
+            phases.begin("drain");
+            if (cgroup != null) {
+                // Background children may still hold the pipes open
+                writeControl(cgroup, "cgroup.kill", "1", true);
+            }
+            drain(stdoutReader, collector);
+            drain(stderrReader, collector);
+            if (cgroup != null) {
+                readUsage(cgroup, response);
+            }
+            collector.applyTo(response, timedOut);
+
+        } catch (IOException e) {
+            logger.error(
+                    "IOException during local execution: {}",
+                    e.getMessage(),
+                    e
+            );
+            response.setError(
+                    "Server error: Could not start local process. " + e.getMessage()
+            );
+            response.setExitCode(-1);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            response.setError("Server error: Execution was interrupted.");
+            response.setExitCode(-1);
+        } catch (Exception e) {
+            logger.error(
+                    "Unexpected error during local execution: {}",
+                    e.getMessage(),
+                    e
+            );
+            response.setError(
+                    "Server error: An unexpected error occurred. " + e.getMessage()
+            );
+            response.setExitCode(-1);
+        } finally {
+            phases.begin("release");
+            if (process != null && process.isAlive()) {
+                kill(process, cgroup);
+            }
+            if (cgroup != null) {
+                removeCgroup(cgroup);
+            }
+            if (runDir != null) {
+                deleteRecursively(runDir);
+            }
+        }
+        return BACKEND_LOCAL;
+    }
+
+    /**
+     * Local runs only depend on the runtimes installed on this host.
+     */
+    @Override
+    public String cacheFingerprint(LanguageConfig config) {
+        return (config.compileCommand != null ? config.compileCommand + " && " : "") + config.runCommand +
+                ";network=" + (isolateNetwork ? "none" : "host") +
+                ";memory=" + (cgroupParent != null ? config.memoryLimitBytes : "unlimited") +
+                ";cpus=" + (cgroupParent != null ? cpus : "unlimited");
+    }
+
+    /**
+     * Builds {@code [join cgroup] [unshare --net] sh -c "ulimit ... && program"}.
+     * Each wrapper execs the next one, so the program ends up with the
+     * process's own pid.
+     */
+    private List<String> command(LanguageConfig config, Path cgroup) {
+        List<String> command = new ArrayList<>();
+        if (cgroup != null) {
+            command.addAll(List.of(
+                    "sh", "-c", "echo $$ > \"$0\" && exec \"$@\"",
+                    cgroup.resolve("cgroup.procs").toString()
+            ));
+        }
+        if (isolateNetwork) {
+            command.addAll(NETWORK_NAMESPACE);
+        }
+
+        StringBuilder script = new StringBuilder();
+        // CPU seconds; a busy loop is stopped by the timeout before this
+        script.append("ulimit -t ").append(config.timeoutSeconds + 1);
+        if (fileSizeLimitMb > 0) {
+            // POSIX sh counts file size in 512-byte blocks
+            script.append(" && ulimit -f ").append(fileSizeLimitMb * 2048);
+        }
+        if (openFilesLimit > 0) {
+            script.append(" && ulimit -n ").append(openFilesLimit);
+        }
+        if (addressSpaceLimitMb > 0) {
+            script.append(" && ulimit -v ").append(addressSpaceLimitMb * 1024);
+        }
+        script.append(" && ");
+        if (config.compileCommand != null) {
+            script.append(config.compileCommand).append(" && ");
+        }
+        script.append(config.runCommand);
+        command.addAll(List.of("sh", "-c", script.toString()));
+        return command;
+    }
+
+    private boolean networkIsolationAvailable() {
+        Boolean available = networkIsolationAvailable;
+        if (available == null) {
+            List<String> probe = new ArrayList<>(NETWORK_NAMESPACE);
+            probe.add("true");
+            try {
+                Process process = new ProcessBuilder(probe)
+                        .redirectErrorStream(true)
+                        .redirectOutput(ProcessBuilder.Redirect.DISCARD)
+                        .start();
+                available = process.waitFor(5, TimeUnit.SECONDS) && process.exitValue() == 0;
+                process.destroyForcibly();
+            } catch (IOException e) {
+                available = false;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+            if (!available) {
+                logger.error("Network namespaces are not available; local runs are refused while execution.local.network=none");
+            }
+            networkIsolationAvailable = available;
+        }
+        return available;
+    }
+
+    private static void pump(InputStream in, FrameCollector collector, boolean fromStderr) {
+        byte[] buffer = new byte[READ_BUFFER_BYTES];
+        try (in) {
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                collector.append(fromStderr, buffer, read);
+            }
+        } catch (IOException e) {
+            logger.debug("Output pipe closed: {}", e.getMessage());
+        }
+    }
+
+    private static void drain(Future<?> reader, FrameCollector collector) {
+        try {
+            reader.get(OUTPUT_DRAIN_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        } catch (TimeoutException e) {
+            reader.cancel(true);
+            logger.warn("Output of a local process did not finish within {}s", OUTPUT_DRAIN_TIMEOUT_SECONDS);
+            collector.stderr().appendNote(
+                    "\n[Service Error: Output still open after the program exited]"
+            );
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            collector.stderr().appendNote(
+                    "\n[Service Error: Log collection interrupted]"
+            );
+        } catch (Exception e) {
+            logger.error("Failed to read output of a local process: {}", e.getMessage());
+        }
+    }
+
+    private static void kill(Process process, Path cgroup) {
+        if (cgroup != null) {
+            writeControl(cgroup, "cgroup.kill", "1", true);
+        }
+        process.descendants().forEach(ProcessHandle::destroyForcibly);
+        process.destroyForcibly();
+    }
+
+    private Path createCgroup(LanguageConfig config) throws IOException {
+        Path cgroup = cgroupParent.resolve("run-" + UUID.randomUUID());
+        Files.createDirectory(cgroup);
+        try {
+            writeControl(cgroup, "memory.max", String.valueOf(config.memoryLimitBytes), false);
+            writeControl(cgroup, "memory.swap.max", "0", true);
+            writeControl(cgroup, "pids.max", String.valueOf(pidsMax), false);
+            writeControl(
+                    cgroup,
+                    "cpu.max",
+                    (cpus * CpuAllocator.CFS_PERIOD_MICROS) + " " + CpuAllocator.CFS_PERIOD_MICROS,
+                    false
+            );
+        } catch (RuntimeException e) {
+            removeCgroup(cgroup);
+            throw e;
+        }
+        return cgroup;
+    }
+
+    /**
+     * Writes one cgroup control file. Optional files may be missing, e.g.
+     * {@code memory.swap.max} without swap accounting.
+     */
+    private static void writeControl(Path cgroup, String file, String value, boolean optional) {
+        try {
+            Files.writeString(cgroup.resolve(file), value);
+        } catch (NoSuchFileException e) {
+            if (!optional) {
+                throw new IllegalStateException(
+                        "cgroup control " + file + " is missing; is the controller enabled in " +
+                                cgroup.getParent().resolve("cgroup.subtree_control") + "?"
+                );
+            }
+        } catch (IOException e) {
+            if (!optional) {
+                throw new IllegalStateException("Failed to write " + cgroup.resolve(file) + ": " + e.getMessage(), e);
+            }
+            logger.debug("Failed to write {}: {}", cgroup.resolve(file), e.getMessage());
+        }
+    }
+
+    private static void readUsage(Path cgroup, ExecutionResponse response) {
+        try (Stream<String> lines = Files.lines(cgroup.resolve("cpu.stat"))) {
+            lines.filter(line -> line.startsWith("usage_usec "))
+                    .findFirst()
+                    .ifPresent(line -> response.setCpuTimeMillis(Long.parseLong(line.substring(11).trim()) / 1000));
+        } catch (IOException | NumberFormatException e) {
+            logger.debug("Failed to read cpu.stat of {}: {}", cgroup, e.getMessage());
+        }
+        try {
+            // memory.peak needs Linux 5.19
+            response.setPeakMemoryBytes(Long.parseLong(Files.readString(cgroup.resolve("memory.peak")).trim()));
+        } catch (IOException | NumberFormatException e) {
+            logger.debug("Failed to read memory.peak of {}: {}", cgroup, e.getMessage());
+        }
+        try (Stream<String> lines = Files.lines(cgroup.resolve("memory.events"))) {
+            response.setMemoryLimitExceeded(lines.anyMatch(line -> line.startsWith("oom_kill ") && !line.endsWith(" 0")));
+        } catch (IOException e) {
+            logger.debug("Failed to read memory.events of {}: {}", cgroup, e.getMessage());
+        }
+    }
+
+    /**
+     * A cgroup can only be removed once its processes are gone, which takes a
+     * moment after {@code cgroup.kill}.
+     */
+    private static void removeCgroup(Path cgroup) {
+        writeControl(cgroup, "cgroup.kill", "1", true);
+        for (int attempt = 0; attempt < 20; attempt++) {
+            try {
+                Files.deleteIfExists(cgroup);
+                return;
+            } catch (IOException e) {
+                try {
+                    Thread.sleep(50);
+                } catch (InterruptedException interrupted) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+        }
+        logger.warn("Failed to remove cgroup {}", cgroup);
+    }
+
+    private static void deleteRecursively(Path dir) {
+        try (Stream<Path> paths = Files.walk(dir)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> {
+                try {
+                    Files.deleteIfExists(path);
+                } catch (IOException e) {
+                    logger.debug("Failed to delete {}: {}", path, e.getMessage());
+                }
+            });
+        } catch (IOException e) {
+            logger.warn("Failed to clean up {}: {}", dir, e.getMessage());
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        outputReaders.shutdownNow();
+    }
+}
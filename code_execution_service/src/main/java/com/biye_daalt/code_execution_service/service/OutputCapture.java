@@ -0,0 +1,154 @@
+package com.biye_daalt.code_execution_service.service;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Captures one output stream of a program up to a fixed number of characters.
+ * <p>
+ * Payload bytes are decoded as UTF-8 incrementally through a reused buffer, so
+ * a multi-byte character split across two Docker frames is decoded correctly
+ * and no intermediate String is created per frame. Once the limit is reached
+ * further bytes are only counted, never decoded or stored.
+ * <p>
+ * Not thread-safe; each instance is fed from a single log stream thread.
+ */
+final class OutputCapture {
+
+    private static final int DECODE_BUFFER_CHARS = 2048;
+
+    private final int maxChars;
+    private final StringBuilder text;
+    private final CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    private final CharBuffer decodeBuffer;
+
+    private byte[] carry = new byte[0]; // Incomplete UTF-8 sequence left over from the previous frame
+    private long totalBytes;
+    private boolean truncated;
+    private StringBuilder notes; // Service messages, never subject to the limit
+
+    OutputCapture(int maxChars) {
+        this.maxChars = maxChars;
+        this.text = new StringBuilder(Math.min(maxChars, 1024));
+        this.decodeBuffer = CharBuffer.allocate(Math.min(Math.max(maxChars, 1), DECODE_BUFFER_CHARS));
+    }
+
+    /**
+     * Decodes and stores as much of the payload as fits under the limit.
+     */
+    void append(byte[] payload) {
+        append(payload, payload.length);
+    }
+
+    /**
+     * Same as {@link #append(byte[])} for the first {@code length} bytes of a
+     * reusable read buffer.
+     */
+    void append(byte[] payload, int length) {
+        totalBytes += length;
+        if (truncated || length == 0) {
+            return;
+        }
+
+        ByteBuffer input;
+        if (carry.length == 0) {
+            input = ByteBuffer.wrap(payload, 0, length);
+        } else {
+            byte[] joined = new byte[carry.length + length];
+            System.arraycopy(carry, 0, joined, 0, carry.length);
+            System.arraycopy(payload, 0, joined, carry.length, length);
+            input = ByteBuffer.wrap(joined);
+        }
+
+        while (!truncated) {
+            CoderResult result = decoder.decode(input, decodeBuffer, false);
+            drainDecodeBuffer();
+            if (result.isUnderflow()) {
+                break;
+            }
+        }
+
+        if (truncated || !input.hasRemaining()) {
+            carry = new byte[0];
+        } else {
+            carry = new byte[input.remaining()];
+            input.get(carry);
+        }
+    }
+
+    /**
+     * Appends a service-generated message (e.g. a log retrieval failure).
+     */
+    void appendNote(String note) {
+        if (notes == null) {
+            notes = new StringBuilder();
+        }
+        notes.append(note);
+    }
+
+    /**
+     * @return number of characters captured so far (excluding notes and the truncation marker)
+     */
+    int length() {
+        return text.length();
+    }
+
+    /**
+     * @return captured characters from the given index, e.g. the part added by the last append
+     */
+    String substring(int start) {
+        return text.substring(start);
+    }
+
+    long totalBytes() {
+        return totalBytes;
+    }
+
+    boolean isTruncated() {
+        return truncated;
+    }
+
+    /**
+     * @return the captured text, followed by a truncation marker and any notes
+     */
+    @Override
+    public String toString() {
+        StringBuilder result = new StringBuilder(text.length() + 128);
+        result.append(text);
+        if (!truncated && carry.length > 0) {
+            // Stream ended in the middle of a character
+            result.append('\uFFFD');
+        }
+        if (truncated) {
+            result.append("\n[Output truncated: limit of ")
+                    .append(maxChars)
+                    .append(" characters exceeded]");
+        }
+        if (notes != null) {
+            result.append(notes);
+        }
+        return result.toString();
+    }
+
+    private void drainDecodeBuffer() {
+        decodeBuffer.flip();
+        int remaining = maxChars - text.length();
+        int count = decodeBuffer.remaining();
+        if (count > remaining) {
+            count = remaining;
+            // Do not leave half of a surrogate pair at the cut
+            if (count > 0 && Character.isHighSurrogate(decodeBuffer.charAt(count - 1))) {
+                count--;
+            }
+            truncated = true;
+        }
+        text.append(decodeBuffer, 0, count);
+        decodeBuffer.clear();
+    }
+}
@@ -0,0 +1,299 @@
+package com.biye_daalt.code_execution_service.service;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * Compares a program's stdout with the expected output while it is being
+ * written, so that a wrong answer is known (and the program can be stopped) at
+ * the first byte that cannot match, without keeping the output around.
+ * <p>
+ * Modes:
+ * <ul>
+ *     <li>{@code exact}: byte for byte.</li>
+ *     <li>{@code lines} (default): line by line, ignoring trailing whitespace
+ *     (including {@code \r}) on every line and trailing empty lines.</li>
+ *     <li>{@code tokens}: whitespace-separated tokens, however they are spaced
+ *     or split into lines. With a float tolerance, numeric tokens match if
+ *     they differ by at most that much, absolutely or relatively.</li>
+ * </ul>
+ * Not thread-safe; fed by {@link FrameCollector} under its lock.
+ */
+final class OutputComparator {
+
+    enum Mode {
+        EXACT, LINES, TOKENS;
+
+        /**
+         * @throws IllegalArgumentException for an unknown mode
+         */
+        static Mode parse(String value) {
+            if (value == null || value.isBlank()) {
+                return LINES;
+            }
+            try {
+                return valueOf(value.trim().toUpperCase());
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException(
+                        "Unknown comparison '" + value + "', expected exact, lines or tokens"
+                );
+            }
+        }
+    }
+
+    // A numeric token may be written longer than expected, e.g. 0.5000000 for 0.5
+    private static final int NUMBER_SLACK_BYTES = 32;
+    private static final int PREVIEW_BYTES = 40;
+    private static final Pattern NUMBER = Pattern.compile("[+-]?(\\d+\\.?\\d*|\\.\\d+)([eE][+-]?\\d+)?");
+
+    private final Mode mode;
+    private final Double floatTolerance;
+    private final byte[] expected; // EXACT
+    private final List<byte[]> units; // Lines (LINES) or tokens (TOKENS)
+
+    private int unitIndex;
+    private int column; // Position in the current line/token, or in the whole output for EXACT
+    private int line = 1;
+    private byte[] token = new byte[64]; // TOKENS: the current token, column bytes long
+    private final byte[] preview = new byte[PREVIEW_BYTES]; // Start of the current line/token for messages
+    private int previewLength;
+    private String mismatch;
+
+    OutputComparator(String expectedOutput, Mode mode, Double floatTolerance) {
+        this.mode = mode;
+        this.floatTolerance = floatTolerance;
+        this.expected = expectedOutput.getBytes(StandardCharsets.UTF_8);
+        this.units = switch (mode) {
+            case EXACT -> List.of();
+            case LINES -> lines(expected);
+            case TOKENS -> tokens(expected);
+        };
+    }
+
+    /**
+     * @return true if the output matches, same as feeding it and calling {@link #finish()}
+     */
+    static boolean matches(String actual, String expected, Mode mode, Double floatTolerance) {
+        OutputComparator comparator = new OutputComparator(expected, mode, floatTolerance);
+        byte[] bytes = actual.getBytes(StandardCharsets.UTF_8);
+        comparator.accept(bytes, bytes.length);
+        return comparator.finish();
+    }
+
+    long expectedBytes() {
+        return expected.length;
+    }
+
+    /**
+     * Compares the next {@code length} bytes of stdout. Does nothing once a mismatch was found.
+     */
+    void accept(byte[] payload, int length) {
+        for (int i = 0; i < length && mismatch == null; i++) {
+            byte b = payload[i];
+            switch (mode) {
+                case EXACT -> acceptExact(b);
+                case LINES -> acceptLine(b);
+                case TOKENS -> acceptToken(b);
+            }
+        }
+    }
+
+    /**
+     * @return true once the output can no longer match
+     */
+    boolean mismatched() {
+        return mismatch != null;
+    }
+
+    /**
+     * Checks that the output did not end too early. Call once the program has exited.
+     *
+     * @return true if the whole output matched
+     */
+    boolean finish() {
+        if (mismatch != null) {
+            return false;
+        }
+        switch (mode) {
+            case EXACT -> {
+                if (column < expected.length) {
+                    mismatch = "Output ended at byte " + column + " of " + expected.length;
+                }
+            }
+            case LINES -> {
+                boolean lastLineComplete = unitIndex == units.size() - 1 && column >= units.get(unitIndex).length;
+                if (unitIndex < units.size() && !lastLineComplete) {
+                    mismatch = "Output ended at line " + (unitIndex + 1) + " of " + units.size();
+                }
+            }
+            case TOKENS -> {
+                if (column > 0) {
+                    endToken();
+                }
+                if (mismatch == null && unitIndex < units.size()) {
+                    mismatch = "Output ended after " + unitIndex + " of " + units.size() + " tokens";
+                }
+            }
+        }
+        return mismatch == null;
+    }
+
+    /**
+     * @return where and how the output first differed, or null if it did not
+     */
+    String mismatch() {
+        return mismatch;
+    }
+
+    private void acceptExact(byte b) {
+        remember(b);
+        if (column >= expected.length) {
+            mismatch = "Extra output after the expected " + expected.length + " bytes";
+        } else if (expected[column] != b) {
+            mismatch = "Line " + line + " differs at byte " + column + ": got \"" + preview() + "\"";
+        }
+        column++;
+        if (b == '\n') {
+            line++;
+            previewLength = 0;
+        }
+    }
+
+    private void acceptLine(byte b) {
+        if (b == '\n') {
+            if (unitIndex < units.size() && column < units.get(unitIndex).length) {
+                mismatch = differs("Line " + (unitIndex + 1), units.get(unitIndex));
+                return;
+            }
+            unitIndex++;
+            column = 0;
+            previewLength = 0;
+            return;
+        }
+        remember(b);
+        if (unitIndex >= units.size()) {
+            if (!isSpace(b)) {
+                mismatch = "Extra output after the expected " + units.size() + " lines: \"" + preview() + "\"";
+            }
+            return;
+        }
+        byte[] expectedLine = units.get(unitIndex);
+        // Past the end of the expected line only trailing whitespace may follow
+        boolean matches = column < expectedLine.length ? expectedLine[column] == b : isSpace(b);
+        column++;
+        if (!matches) {
+            mismatch = differs("Line " + (unitIndex + 1), expectedLine);
+        }
+    }
+
+    private void acceptToken(byte b) {
+        if (isSpace(b) || b == '\n') {
+            if (column > 0) {
+                endToken();
+            }
+            return;
+        }
+        if (unitIndex >= units.size()) {
+            remember(b);
+            mismatch = "Extra output after the expected " + units.size() + " tokens: \"" + preview() + "\"";
+            return;
+        }
+        byte[] expectedToken = units.get(unitIndex);
+        remember(b);
+        if (floatTolerance == null) {
+            if (column >= expectedToken.length || expectedToken[column] != b) {
+                mismatch = differs("Token " + (unitIndex + 1), expectedToken);
+                return;
+            }
+        } else if (column >= expectedToken.length + NUMBER_SLACK_BYTES) {
+            mismatch = differs("Token " + (unitIndex + 1), expectedToken);
+            return;
+        }
+        if (column == token.length) {
+            token = Arrays.copyOf(token, token.length * 2);
+        }
+        token[column++] = b;
+    }
+
+    private void endToken() {
+        byte[] expectedToken = units.get(unitIndex);
+        byte[] actualToken = Arrays.copyOf(token, column);
+        boolean matches = Arrays.equals(actualToken, expectedToken) ||
+                (floatTolerance != null && numbersMatch(actualToken, expectedToken));
+        if (!matches) {
+            mismatch = differs("Token " + (unitIndex + 1), expectedToken);
+            return;
+        }
+        unitIndex++;
+        column = 0;
+        previewLength = 0;
+    }
+
+    private boolean numbersMatch(byte[] actualToken, byte[] expectedToken) {
+        String actual = new String(actualToken, StandardCharsets.US_ASCII);
+        String wanted = new String(expectedToken, StandardCharsets.US_ASCII);
+        if (!NUMBER.matcher(actual).matches() || !NUMBER.matcher(wanted).matches()) {
+            return false;
+        }
+        double a = Double.parseDouble(actual);
+        double b = Double.parseDouble(wanted);
+        double difference = Math.abs(a - b);
+        return difference <= floatTolerance || difference <= floatTolerance * Math.abs(b);
+    }
+
+    private void remember(byte b) {
+        if (previewLength < preview.length) {
+            preview[previewLength++] = b;
+        }
+    }
+
+    private String preview() {
+        return new String(preview, 0, previewLength, StandardCharsets.UTF_8);
+    }
+
+    private String differs(String unit, byte[] expectedUnit) {
+        String wanted = new String(expectedUnit, 0, Math.min(expectedUnit.length, PREVIEW_BYTES), StandardCharsets.UTF_8);
+        return unit + " differs: expected \"" + wanted + "\", got \"" + preview() + "\"";
+    }
+
+    private static boolean isSpace(byte b) {
+        return b == ' ' || b == '\t' || b == '\r' || b == 0x0B || b == 0x0C;
+    }
+
+    private static List<byte[]> lines(byte[] text) {
+        List<byte[]> lines = new ArrayList<>();
+        int start = 0;
+        for (int i = 0; i <= text.length; i++) {
+            if (i == text.length || text[i] == '\n') {
+                int end = i;
+                while (end > start && isSpace(text[end - 1])) {
+                    end--;
+                }
+                lines.add(Arrays.copyOfRange(text, start, end));
+                start = i + 1;
+            }
+        }
+        while (!lines.isEmpty() && lines.get(lines.size() - 1).length == 0) {
+            lines.remove(lines.size() - 1);
+        }
+        return lines;
+    }
+
+    private static List<byte[]> tokens(byte[] text) {
+        List<byte[]> tokens = new ArrayList<>();
+        int start = -1;
+        for (int i = 0; i <= text.length; i++) {
+            boolean separator = i == text.length || isSpace(text[i]) || text[i] == '\n';
+            if (separator && start >= 0) {
+                tokens.add(Arrays.copyOfRange(text, start, i));
+                start = -1;
+            } else if (!separator && start < 0) {
+                start = i;
+            }
+        }
+        return tokens;
+    }
+}
@@ -0,0 +1,98 @@
+package com.biye_daalt.code_execution_service.service;
+
+/**
+ * CPU time and peak memory of a run, read from the sandbox container's cgroup
+ * (v2) by the run itself when the program exits.
+ * <p>
+ * {@link #wrap} surrounds the run command with a few shell lines that copy
+ * {@code cpu.stat} before and after the program, and {@code memory.peak} after
+ * it, into {@link #FILE_NAME} in the working directory. The service fetches
+ * that file once the program has exited and {@link #parse}s it. This costs one
+ * control call per run, instead of a stats stream held open for the whole run,
+ * and is exact even for runs shorter than the daemon's one-second samples.
+ * <p>
+ * CPU time is the difference of the two readings, so it also holds in a
+ * long-lived exec sandbox. {@code memory.peak} covers the container's whole
+ * life, so it is only reported for single-use containers. The figures stay
+ * null on cgroup v1 hosts, when the report is missing (e.g. the run was
+ * killed), and when it cannot be parsed. The program could overwrite its own
+ * report, so the figures are for tuning limits, never for enforcing them.
+ */
+final class ResourceUsageReport {
+
+    static final String FILE_NAME = ".usage";
+
+    private static final String CGROUP_DIR = "/sys/fs/cgroup";
+    private static final String CPU_BEFORE = "cpu.before";
+    private static final String CPU_AFTER = "cpu.after";
+    private static final String MEMORY_PEAK = "memory.peak";
+
+    private final Long cpuTimeMillis;
+    private final Long peakMemoryBytes;
+
+    private ResourceUsageReport(Long cpuTimeMillis, Long peakMemoryBytes) {
+        this.cpuTimeMillis = cpuTimeMillis;
+        this.peakMemoryBytes = peakMemoryBytes;
+    }
+
+    Long cpuTimeMillis() {
+        return cpuTimeMillis;
+    }
+
+    Long peakMemoryBytes() {
+        return peakMemoryBytes;
+    }
+
+    /**
+     * Runs the command in a subshell (so that an {@code exec} in it does not
+     * skip the final reading) and exits with its status. The readings never
+     * reach the program's stdout or stderr.
+     */
+    static String wrap(String command) {
+        return "{ echo " + CPU_BEFORE + "; cat " + CGROUP_DIR + "/cpu.stat; } 2>/dev/null >" + FILE_NAME + "\n" +
+                "( " + command + "\n)\n" +
+                "status=$?\n" +
+                "{ echo " + CPU_AFTER + "; cat " + CGROUP_DIR + "/cpu.stat; " +
+                "echo " + MEMORY_PEAK + "; cat " + CGROUP_DIR + "/" + MEMORY_PEAK + "; } 2>/dev/null >>" + FILE_NAME + "\n" +
+                "exit $status";
+    }
+
+    /**
+     * @param report       the contents of {@link #FILE_NAME}, or null if there was none
+     * @param sharedCgroup true if the container ran other work before this
+     *                     program (an exec sandbox), so its memory peak is not the program's
+     */
+    static ResourceUsageReport parse(String report, boolean sharedCgroup) {
+        if (report == null) {
+            return new ResourceUsageReport(null, null);
+        }
+        Long cpuBefore = null;
+        Long cpuAfter = null;
+        Long memoryPeak = null;
+        String section = null;
+        for (String line : report.split("\n")) {
+            line = line.trim();
+            if (line.equals(CPU_BEFORE) || line.equals(CPU_AFTER) || line.equals(MEMORY_PEAK)) {
+                section = line;
+            } else if (CPU_BEFORE.equals(section) && line.startsWith("usage_usec ")) {
+                cpuBefore = parseLong(line.substring("usage_usec ".length()));
+            } else if (CPU_AFTER.equals(section) && line.startsWith("usage_usec ")) {
+                cpuAfter = parseLong(line.substring("usage_usec ".length()));
+            } else if (MEMORY_PEAK.equals(section) && memoryPeak == null) {
+                memoryPeak = parseLong(line);
+            }
+        }
+        Long cpuTimeMillis = cpuBefore != null && cpuAfter != null && cpuAfter >= cpuBefore
+                ? (cpuAfter - cpuBefore) / 1_000
+                : null;
+        return new ResourceUsageReport(cpuTimeMillis, sharedCgroup ? null : memoryPeak);
+    }
+
+    private static Long parseLong(String value) {
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+}
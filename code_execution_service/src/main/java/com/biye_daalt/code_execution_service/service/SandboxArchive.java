@@ -0,0 +1,74 @@
+package com.biye_daalt.code_execution_service.service;
+
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveOutputStream;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * In-memory tar archive of files to place in a sandbox container's working
+ * directory (the user's script, stdin data, test files...). Built entirely on
+ * the heap so delivery never touches the service's filesystem.
+ */
+final class SandboxArchive {
+
+    private static final int FILE_MODE = 0644;
+
+    private final Map<String, Integer> directories = new LinkedHashMap<>();
+    private final Map<String, byte[]> files = new LinkedHashMap<>();
+
+    /**
+     * Adds a directory entry, e.g. to create a run directory with a mode that
+     * lets the sandbox user write to it. Directories are written before files.
+     */
+    SandboxArchive addDirectory(String name, int mode) {
+        directories.put(name, mode);
+        return this;
+    }
+
+    SandboxArchive addFile(String name, String content) {
+        return addFile(name, content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    SandboxArchive addFile(String name, byte[] content) {
+        files.put(name, content);
+        return this;
+    }
+
+    boolean isEmpty() {
+        return files.isEmpty() && directories.isEmpty();
+    }
+
+    InputStream toInputStream() throws IOException {
+        int estimatedSize = 1024;
+        for (byte[] content : files.values()) {
+            estimatedSize += 512 + content.length;
+        }
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream(estimatedSize);
+        try (TarArchiveOutputStream tar = new TarArchiveOutputStream(buffer)) {
+            tar.setLongFileMode(TarArchiveOutputStream.LONGFILE_POSIX);
+            for (Map.Entry<String, Integer> directory : directories.entrySet()) {
+                TarArchiveEntry entry = new TarArchiveEntry(directory.getKey() + "/");
+                entry.setMode(TarArchiveEntry.DEFAULT_DIR_MODE & ~0777 | directory.getValue());
+                tar.putArchiveEntry(entry);
+                tar.closeArchiveEntry();
+            }
+            for (Map.Entry<String, byte[]> file : files.entrySet()) {
+                TarArchiveEntry entry = new TarArchiveEntry(file.getKey());
+                entry.setSize(file.getValue().length);
+                entry.setMode(FILE_MODE);
+                tar.putArchiveEntry(entry);
+                tar.write(file.getValue());
+                tar.closeArchiveEntry();
+            }
+            tar.finish();
+        }
+        return new ByteArrayInputStream(buffer.toByteArray());
+    }
+}
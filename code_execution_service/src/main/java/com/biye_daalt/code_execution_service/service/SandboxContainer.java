@@ -0,0 +1,27 @@
+package com.biye_daalt.code_execution_service.service;
+
+import com.biye_daalt.code_execution_service.config.DockerDaemon;
+
+import java.nio.file.Path;
+
+/**
+ * A created (not yet started) sandbox container and the daemon it lives on.
+ * In bind delivery mode it also carries the host file that is bind-mounted
+ * into it as the user's script; in archive mode {@code hostScriptFilePath}
+ * is null.
+ */
+final class SandboxContainer {
+    final DockerDaemon daemon;
+    final String containerId;
+    final String language;
+    final Path hostScriptFilePath;
+    final long createdAtMillis;
+
+    SandboxContainer(DockerDaemon daemon, String containerId, String language, Path hostScriptFilePath) {
+        this.daemon = daemon;
+        this.containerId = containerId;
+        this.language = language;
+        this.hostScriptFilePath = hostScriptFilePath;
+        this.createdAtMillis = System.currentTimeMillis();
+    }
+}
@@ -0,0 +1,563 @@
+package com.biye_daalt.code_execution_service.service;
+
+import com.biye_daalt.code_execution_service.config.ConditionalOnDockerExecutor;
+import com.biye_daalt.code_execution_service.config.DockerDaemon;
+import com.github.dockerjava.api.async.ResultCallback;
+import com.github.dockerjava.api.command.CreateContainerCmd;
+import com.github.dockerjava.api.command.CreateContainerResponse;
+import com.github.dockerjava.api.command.ExecCreateCmdResponse;
+import com.github.dockerjava.api.command.UpdateContainerCmd;
+import com.github.dockerjava.api.exception.NotFoundException;
+import com.github.dockerjava.api.model.AccessMode;
+import com.github.dockerjava.api.model.Bind;
+import com.github.dockerjava.api.model.Frame;
+import com.github.dockerjava.api.model.HostConfig;
+import com.github.dockerjava.api.model.Volume;
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveInputStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Creates and destroys sandbox containers and delivers user code into them.
+ * Used both for on-demand creation and by {@link ContainerPool} to pre-create
+ * containers ahead of requests.
+ * <p>
+ * Two delivery modes are supported (see {@code execution.delivery.mode}):
+ * <ul>
+ *   <li>{@code bind} - the script is written to a temp file under
+ *   {@code execution.temp.host.basepath} and bind-mounted read-only. Requires
+ *   that directory to be shared with the Docker daemon.</li>
+ *   <li>{@code archive} - the script is streamed as an in-memory tar archive
+ *   through the Docker API. No shared filesystem is needed.</li>
+ * </ul>
+ */
+@ConditionalOnDockerExecutor
+@Component
+public class SandboxContainerFactory {
+
+    private static final Logger logger = LoggerFactory
+            .getLogger(SandboxContainerFactory.class);
+
+    static final String CONTAINER_WORKING_DIR = "/app";
+    // Per-run directories of long-lived exec sandboxes, the only writable place besides /tmp
+    static final String RUNS_DIR = CONTAINER_WORKING_DIR + "/runs";
+    // User code in long-lived sandboxes runs as nobody:nogroup, never as the image's
+    // (usually root) user; the uid works whether or not the image has a passwd entry for it
+    static final String SANDBOX_USER = "65534:65534";
+    // kill(-1) as root signals every process except PID 1 and the calling shell itself
+    static final String[] KILL_COMMAND = {"sh", "-c", "kill -9 -1"};
+    // nobody's home directory does not exist and the root filesystem is read-only
+    static final List<String> SANDBOX_ENVIRONMENT = List.of("HOME=/tmp");
+    // Delivered next to the script when the run has stdin, see withStdin
+    static final String STDIN_FILE = ".stdin";
+    private static final int TAR_RECORD_BYTES = 512;
+    // PID 1 of long-lived exec sandboxes: idles until the container is removed
+    private static final String[] KEEP_ALIVE_COMMAND = {
+            "sh", "-c", "trap 'exit 0' TERM; while :; do sleep 3600; done"
+    };
+
+    // Every sandbox container carries these labels so that leftovers can be found and pruned
+    static final String SANDBOX_LABEL = "code-execution.sandbox";
+    static final String OWNER_LABEL = "code-execution.owner";
+
+    static final String SCRIPT_FILE_PREFIX = "userscript_";
+
+    enum DeliveryMode { BIND, ARCHIVE }
+
+    private final DeliveryMode deliveryMode;
+    private final String tempFileHostBasePath;
+    private final boolean resourceUsageEnabled;
+    // Identifies containers created by this process, as opposed to a previous or parallel instance
+    private final String instanceId = UUID.randomUUID().toString();
+
+    @Autowired
+    public SandboxContainerFactory(
+            @Value("${execution.delivery.mode:bind}") String deliveryMode,
+            // This path MUST be accessible by the Docker daemon AND the service container.
+            // If service is in a container, this path inside service container should be a mount
+            // from a host path that Docker daemon can see.
+            @Value(
+                    "${execution.temp.host.basepath:/tmp/code_execution_service_temp}"
+            ) String tempFileHostBasePath,
+            @Value("${execution.metrics.resource-usage.enabled:true}") boolean resourceUsageEnabled
+    ) {
+        this.deliveryMode = DeliveryMode.valueOf(deliveryMode.trim().toUpperCase());
+        this.tempFileHostBasePath = tempFileHostBasePath;
+        this.resourceUsageEnabled = resourceUsageEnabled;
+        logger.info("Code delivery mode: {}", this.deliveryMode);
+        if (this.deliveryMode != DeliveryMode.BIND) {
+            return;
+        }
+        logger.info(
+                "Temporary script files will be created in host base path: {}",
+                this.tempFileHostBasePath
+        );
+        try {
+            Files.createDirectories(Paths.get(this.tempFileHostBasePath));
+            logger.info(
+                    "Ensured temporary file base directory exists: {}",
+                    this.tempFileHostBasePath
+            );
+        } catch (IOException e) {
+            logger.error(
+                    "CRITICAL: Failed to create temporary file base directory: {}. " +
+                            "Please ensure this path is writable by the service and " +
+                            "accessible by the Docker daemon for bind mounts.",
+                    this.tempFileHostBasePath,
+                    e
+            );
+            // Consider throwing a runtime exception here to prevent service startup
+            // if this directory is essential and cannot be created.
+        }
+    }
+
+    /**
+     * Creates a container for the language and leaves it in the created state;
+     * the caller delivers the user's code with {@link #deliverCode} and starts it.
+     * In bind mode an empty script file is created in the shared temp directory
+     * and bind-mounted read-only.
+     */
+    SandboxContainer create(DockerDaemon daemon, String language, LanguageConfig config) throws IOException {
+        return create(daemon, language, config, null, null);
+    }
+
+    /**
+     * Same as {@link #create(DockerDaemon, String, LanguageConfig)}, but runs the given command
+     * (instead of the image's default one) with extra environment variables.
+     */
+    SandboxContainer create(
+            DockerDaemon daemon,
+            String language,
+            LanguageConfig config,
+            String[] command,
+            List<String> environment
+    ) throws IOException {
+        HostConfig hostConfig = limitedHostConfig(config);
+        Path hostScriptFilePath = null;
+
+        if (deliveryMode == DeliveryMode.BIND) {
+            hostScriptFilePath = createScriptFile(config);
+            // This hostPathForBind MUST be the path as seen by the Docker Daemon
+            String hostPathForBind = hostScriptFilePath
+                    .toAbsolutePath()
+                    .toString();
+            String containerPath = CONTAINER_WORKING_DIR +
+                    "/" +
+                    config.scriptFileName; // e.g., /app/script.py
+
+            logger.debug(
+                    "Binding hostPath: [{}] to containerPath: [{}]",
+                    hostPathForBind,
+                    containerPath
+            );
+            hostConfig.withBinds(new Bind(
+                    hostPathForBind,
+                    new Volume(containerPath),
+                    AccessMode.ro
+            ));
+        } else {
+            // Scratch space for the program lives in memory. /app itself cannot be a
+            // tmpfs: tmpfs mounts only exist while the container runs, so files copied
+            // in before start would be hidden behind it.
+            hostConfig.withTmpFs(Map.of("/tmp", "rw,size=64m"));
+        }
+
+        try {
+            logger.debug(
+                    "Creating container with image: {}",
+                    config.imageName
+            );
+            CreateContainerCmd createCmd = daemon.control()
+                    .createContainerCmd(config.imageName)
+                    .withHostConfig(hostConfig)
+                    .withWorkingDir(CONTAINER_WORKING_DIR)
+                    .withNetworkDisabled(true)
+                    .withLabels(labels())
+                    .withAttachStdout(true)
+                    .withAttachStderr(true);
+            if (command != null) {
+                createCmd.withCmd(command);
+            }
+            if (environment != null) {
+                createCmd.withEnv(environment);
+            }
+            CreateContainerResponse containerResponse = createCmd.exec();
+            logger.info(
+                    "Container created: {} for language: {} on {}",
+                    containerResponse.getId(),
+                    language,
+                    daemon.id()
+            );
+            return new SandboxContainer(daemon, containerResponse.getId(), language, hostScriptFilePath);
+        } catch (RuntimeException e) {
+            if (hostScriptFilePath != null) {
+                deleteScriptFile(hostScriptFilePath);
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Creates and starts a container that idles until removed, for running
+     * many submissions one after another via exec (see {@link ExecSandboxPool}).
+     * Code is always delivered through the Docker API, whatever the delivery mode.
+     * <p>
+     * Whatever a run leaves behind must not reach the next one, so the root
+     * filesystem is read-only and user code (run as {@link #SANDBOX_USER}) can
+     * only write to {@code /tmp}, {@code /dev/shm} and {@link #RUNS_DIR}, all of
+     * which are wiped between runs. {@code /tmp} is a tmpfs; the runs directory
+     * is an anonymous volume instead, because the daemon refuses to copy files
+     * into a read-only container anywhere but into a volume. It is removed
+     * together with the container.
+     */
+    SandboxContainer createLongLived(DockerDaemon daemon, String language, LanguageConfig config) {
+        HostConfig hostConfig = limitedHostConfig(config)
+                .withReadonlyRootfs(true)
+                .withTmpFs(Map.of("/tmp", "rw,mode=1777,size=64m"));
+        CreateContainerResponse containerResponse = daemon.control()
+                .createContainerCmd(config.imageName)
+                .withHostConfig(hostConfig)
+                .withWorkingDir(CONTAINER_WORKING_DIR)
+                .withVolumes(new Volume(RUNS_DIR))
+                .withNetworkDisabled(true)
+                .withLabels(labels())
+                .withCmd(KEEP_ALIVE_COMMAND)
+                .exec();
+        SandboxContainer container = new SandboxContainer(daemon, containerResponse.getId(), language, null);
+        try {
+            daemon.control().startContainerCmd(container.containerId).exec();
+        } catch (RuntimeException e) {
+            destroy(container);
+            throw e;
+        }
+        logger.info(
+                "Long-lived container started: {} for language: {}",
+                container.containerId,
+                language
+        );
+        return container;
+    }
+
+    /**
+     * Runs a service-side command (kill, wipe...) as root in a running
+     * container, discarding its output.
+     *
+     * @return the exit code, or null if it did not finish in time
+     */
+    Long runAsRoot(SandboxContainer container, String[] command, long timeoutSeconds) throws InterruptedException {
+        DockerDaemon daemon = container.daemon;
+        ExecCreateCmdResponse exec = daemon.control()
+                .execCreateCmd(container.containerId)
+                .withCmd(command)
+                .withUser("root")
+                .withAttachStdout(true)
+                .withAttachStderr(true)
+                .exec();
+        boolean finished = daemon.streaming()
+                .execStartCmd(exec.getId())
+                .exec(new ResultCallback.Adapter<Frame>())
+                .awaitCompletion(timeoutSeconds, TimeUnit.SECONDS);
+        if (!finished) {
+            return null;
+        }
+        return daemon.control().inspectExecCmd(exec.getId()).exec().getExitCodeLong();
+    }
+
+    String instanceId() {
+        return instanceId;
+    }
+
+    private Map<String, String> labels() {
+        return Map.of(SANDBOX_LABEL, "true", OWNER_LABEL, instanceId);
+    }
+
+    private static HostConfig limitedHostConfig(LanguageConfig config) {
+        return HostConfig
+                .newHostConfig()
+                .withMemory(config.memoryLimitBytes)
+                .withCpuShares(config.cpuShares);
+    }
+
+    /**
+     * Restricts the container to the CPUs of the slot. Works on created and on
+     * running containers, so exec sandboxes are re-pinned for every run.
+     */
+    void applyCpuSlot(SandboxContainer container, CpuAllocator.Mode mode, CpuAllocator.CpuSlot slot) {
+        UpdateContainerCmd update = container.daemon.control().updateContainerCmd(container.containerId);
+        if (mode == CpuAllocator.Mode.CPUSET) {
+            update.withCpusetCpus(slot.cpuset());
+        } else {
+            update.withCpuPeriod(CpuAllocator.CFS_PERIOD_MICROS)
+                    .withCpuQuota(CpuAllocator.CFS_PERIOD_MICROS * slot.cores().size());
+        }
+        update.exec();
+        logger.debug("Container {} limited to CPUs {} ({})", container.containerId, slot.cpuset(), mode);
+    }
+
+    /**
+     * Places the user's code in the container's working directory as the
+     * language's script file. Must be called before the container is started.
+     */
+    void deliverCode(SandboxContainer sandbox, LanguageConfig config, String code) throws IOException {
+        if (sandbox.hostScriptFilePath != null) {
+            Files.writeString(
+                    sandbox.hostScriptFilePath,
+                    code,
+                    StandardCharsets.UTF_8
+            );
+            logger.debug(
+                    "User code written to host path: {}",
+                    sandbox.hostScriptFilePath.toAbsolutePath()
+            );
+        } else {
+            copyToContainer(
+                    sandbox,
+                    new SandboxArchive().addFile(config.scriptFileName, code)
+            );
+        }
+    }
+
+    /**
+     * Streams the archive into the container's working directory. Works in
+     * either delivery mode, e.g. for stdin or test data next to the script.
+     */
+    void copyToContainer(SandboxContainer container, SandboxArchive archive) throws IOException {
+        copyToContainer(container, CONTAINER_WORKING_DIR, archive);
+    }
+
+    /**
+     * Streams the archive into an existing directory of the container.
+     */
+    void copyToContainer(SandboxContainer container, String remotePath, SandboxArchive archive) throws IOException {
+        if (archive.isEmpty()) {
+            return;
+        }
+        try (InputStream tarStream = archive.toInputStream()) {
+            copyTarToContainer(container, tarStream, remotePath);
+        }
+    }
+
+    /**
+     * Streams one file into a directory of the container without holding it in
+     * memory: the tar is the entry header, the file's own stream and the
+     * padding/end-of-archive records, read one after the other.
+     */
+    void copyFileToContainer(
+            SandboxContainer container,
+            String remotePath,
+            String fileName,
+            ExecutionInput content
+    ) throws IOException {
+        TarArchiveEntry entry = new TarArchiveEntry(fileName);
+        entry.setSize(content.size());
+        entry.setMode(0644);
+        byte[] header = new byte[TAR_RECORD_BYTES];
+        entry.writeEntryHeader(header);
+        int padding = (int) ((TAR_RECORD_BYTES - content.size() % TAR_RECORD_BYTES) % TAR_RECORD_BYTES);
+        byte[] trailer = new byte[padding + 2 * TAR_RECORD_BYTES];
+        try (
+                InputStream data = content.open();
+                InputStream tarStream = new SequenceInputStream(Collections.enumeration(List.of(
+                        new ByteArrayInputStream(header),
+                        data,
+                        new ByteArrayInputStream(trailer)
+                )))
+        ) {
+            copyTarToContainer(container, tarStream, remotePath);
+        }
+        logger.debug("{} ({} bytes) streamed into container {}", fileName, content.size(), container.containerId);
+    }
+
+    /**
+     * Wraps a shell command so that it reads {@link #STDIN_FILE} from its
+     * working directory as stdin, if that file was delivered.
+     */
+    static String withStdin(String command) {
+        return "[ ! -e " + STDIN_FILE + " ] || exec < " + STDIN_FILE + "; " + command;
+    }
+
+    /**
+     * The shell command that runs a user program: {@link #withStdin} and, with
+     * {@code execution.metrics.resource-usage.enabled}, a
+     * {@link ResourceUsageReport} left in the working directory.
+     */
+    String runCommand(String command) {
+        return resourceUsageEnabled ? ResourceUsageReport.wrap(withStdin(command)) : withStdin(command);
+    }
+
+    /**
+     * Reads the {@link ResourceUsageReport} of a program that has exited.
+     *
+     * @param sharedCgroup true for an exec sandbox, see {@link ResourceUsageReport#parse}
+     */
+    ResourceUsageReport readUsage(SandboxContainer container, String workingDir, boolean sharedCgroup) {
+        String report = null;
+        if (resourceUsageEnabled) {
+            try {
+                report = readFile(container, workingDir + "/" + ResourceUsageReport.FILE_NAME, 4096);
+            } catch (Exception e) {
+                logger.debug("Failed to read resource usage of container {}: {}", container.containerId, e.getMessage());
+            }
+        }
+        return ResourceUsageReport.parse(report, sharedCgroup);
+    }
+
+    /**
+     * @return the contents of a small file in the container (running or
+     * exited), at most {@code maxBytes} of it, or null if it does not exist
+     */
+    String readFile(SandboxContainer container, String path, int maxBytes) throws IOException {
+        try (TarArchiveInputStream tar = new TarArchiveInputStream(container.daemon.control()
+                .copyArchiveFromContainerCmd(container.containerId, path)
+                .exec())) {
+            if (tar.getNextEntry() == null) {
+                return null;
+            }
+            return new String(tar.readNBytes(maxBytes), StandardCharsets.UTF_8);
+        } catch (NotFoundException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Streams an existing tar (e.g. cached compiler output) into the
+     * container's working directory.
+     */
+    void copyTarToContainer(SandboxContainer container, InputStream tarStream) {
+        copyTarToContainer(container, tarStream, CONTAINER_WORKING_DIR);
+    }
+
+    /**
+     * Streams a tar into an existing directory of the container.
+     */
+    void copyTarToContainer(SandboxContainer container, InputStream tarStream, String remotePath) {
+        container.daemon.control()
+                .copyArchiveToContainerCmd(container.containerId)
+                .withRemotePath(remotePath)
+                .withTarInputStream(tarStream)
+                .exec();
+        logger.debug("Archive copied into container {}", container.containerId);
+    }
+
+    private Path createScriptFile(LanguageConfig config) throws IOException {
+        Path tempDir = Paths.get(this.tempFileHostBasePath);
+        // Ensure the directory exists (it should from constructor, but good practice)
+        if (!Files.exists(tempDir)) {
+            Files.createDirectories(tempDir);
+        }
+
+        // Create a uniquely named file in the shared directory
+        return Files.createTempFile(
+                tempDir, // Directory for the temp file
+                SCRIPT_FILE_PREFIX, // Prefix
+                "_" + config.scriptFileName // Suffix (e.g., "_script.py")
+        );
+    }
+
+    /**
+     * Force-removes the container and deletes its script file. Never throws;
+     * failures are logged. Request paths should hand containers to
+     * {@link ContainerReaper} instead of calling this directly.
+     *
+     * @return false if the container could not be removed and may still exist
+     */
+    boolean destroy(SandboxContainer container) {
+        boolean removed = remove(container.daemon, container.containerId);
+        if (container.hostScriptFilePath != null) {
+            deleteScriptFile(container.hostScriptFilePath);
+        }
+        return removed;
+    }
+
+    /**
+     * Force-removes a container by id, treating an already removed container
+     * as success. Never throws.
+     */
+    boolean remove(DockerDaemon daemon, String containerId) {
+        try {
+            logger.debug("Removing container: {}", containerId);
+            daemon.control()
+                    .removeContainerCmd(containerId)
+                    .withForce(true)
+                    .withRemoveVolumes(true) // The runs volume of exec sandboxes
+                    .exec();
+            logger.info("Container removed: {}", containerId);
+            return true;
+        } catch (NotFoundException e) {
+            logger.debug("Container {} was already removed", containerId);
+            return true;
+        } catch (Exception e) {
+            logger.error(
+                    "Failed to remove container {}: {}",
+                    containerId,
+                    e.getMessage()
+            );
+            return false;
+        }
+    }
+
+    /**
+     * Deletes script files in bind mode's temp directory that were last
+     * modified before the cutoff, e.g. left behind by a crashed instance.
+     *
+     * @return the number of files deleted
+     */
+    int deleteScriptFilesOlderThan(long cutoffMillis) {
+        if (deliveryMode != DeliveryMode.BIND) {
+            return 0;
+        }
+        int deleted = 0;
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(
+                Paths.get(tempFileHostBasePath),
+                SCRIPT_FILE_PREFIX + "*"
+        )) {
+            for (Path file : files) {
+                try {
+                    if (Files.getLastModifiedTime(file).toMillis() < cutoffMillis && Files.deleteIfExists(file)) {
+                        deleted++;
+                    }
+                } catch (IOException e) {
+                    logger.warn("Failed to delete stale script file {}: {}", file, e.getMessage());
+                }
+            }
+        } catch (IOException e) {
+            logger.warn("Failed to list temp directory {}: {}", tempFileHostBasePath, e.getMessage());
+        }
+        return deleted;
+    }
+
+    private void deleteScriptFile(Path hostScriptFilePath) {
+        try {
+            Files.deleteIfExists(hostScriptFilePath);
+            logger.debug(
+                    "Temporary script file deleted: {}",
+                    hostScriptFilePath.toAbsolutePath()
+            );
+        } catch (IOException e) {
+            logger.error(
+                    "Failed to delete temporary script file {}: {}",
+                    hostScriptFilePath,
+                    e.getMessage()
+            );
+        }
+    }
+}
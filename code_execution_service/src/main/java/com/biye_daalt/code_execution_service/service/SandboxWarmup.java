@@ -0,0 +1,261 @@
+package com.biye_daalt.code_execution_service.service;
+
+import com.biye_daalt.code_execution_service.config.ConditionalOnDockerExecutor;
+import com.biye_daalt.code_execution_service.config.DockerDaemon;
+import com.github.dockerjava.api.exception.NotFoundException;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.HealthIndicator;
+import org.springframework.stereotype.Component;
+
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Gets every language ready before the first user request needs it: the image
+ * is pulled on each healthy daemon if missing, optionally pinned to the digest
+ * its tag points to, and the language's {@code warmupCode} is run once per
+ * daemon so that the image layers and runtime are in the page cache.
+ * <p>
+ * Until every language has been warmed on at least one daemon, this health
+ * indicator reports {@code OUT_OF_SERVICE}; with
+ * {@code eureka.client.healthcheck.enabled} Eureka then keeps the instance out
+ * of rotation. Failed languages are retried, and languages that change in the
+ * {@link LanguageRegistry} are warmed again.
+ */
+@ConditionalOnDockerExecutor
+@Component
+public class SandboxWarmup implements HealthIndicator {
+
+    private static final Logger logger = LoggerFactory
+            .getLogger(SandboxWarmup.class);
+
+    private static final String PENDING = "pending";
+    private static final String READY = "ready";
+
+    private final LanguageRegistry languageRegistry;
+    private final DaemonScheduler daemonScheduler;
+    private final SandboxContainerFactory containerFactory;
+    private final ContainerExitDispatcher exitDispatcher;
+    private final ContainerReaper containerReaper;
+    private final boolean enabled;
+    private final boolean pinDigests;
+    private final long pullTimeoutSeconds;
+    private final long retryIntervalSeconds;
+
+    private final Map<String, String> states = new ConcurrentHashMap<>();
+    // Digests this class pinned, so that its own pin does not trigger another warmup
+    private final Map<String, String> pinnedImages = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService warmupExecutor;
+
+    @Autowired
+    public SandboxWarmup(
+            LanguageRegistry languageRegistry,
+            DaemonScheduler daemonScheduler,
+            SandboxContainerFactory containerFactory,
+            ContainerExitDispatcher exitDispatcher,
+            ContainerReaper containerReaper,
+            @Value("${execution.warmup.enabled:true}") boolean enabled,
+            @Value("${execution.images.pin-digests:true}") boolean pinDigests,
+            @Value("${execution.images.pull-timeout-seconds:600}") long pullTimeoutSeconds,
+            @Value("${execution.warmup.retry-interval-seconds:30}") long retryIntervalSeconds
+    ) {
+        this.languageRegistry = languageRegistry;
+        this.daemonScheduler = daemonScheduler;
+        this.containerFactory = containerFactory;
+        this.exitDispatcher = exitDispatcher;
+        this.containerReaper = containerReaper;
+        this.enabled = enabled;
+        this.pinDigests = pinDigests;
+        this.pullTimeoutSeconds = pullTimeoutSeconds;
+        this.retryIntervalSeconds = retryIntervalSeconds;
+        this.warmupExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "sandbox-warmup");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PostConstruct
+    void start() {
+        if (!enabled) {
+            logger.info("Sandbox warmup disabled");
+            return;
+        }
+        for (String language : languageRegistry.all().keySet()) {
+            states.put(language, PENDING);
+        }
+        languageRegistry.addListener(this::onLanguagesChanged);
+        warmupExecutor.execute(() -> warm(languageRegistry.all().keySet()));
+    }
+
+    @Override
+    public Health health() {
+        if (!enabled) {
+            return Health.up().build();
+        }
+        Map<String, Object> details = new LinkedHashMap<>(states);
+        boolean ready = states.values().stream().allMatch(READY::equals);
+        return (ready ? Health.up() : Health.outOfService()).withDetails(details).build();
+    }
+
+    private void onLanguagesChanged(Set<String> changed) {
+        for (String language : changed) {
+            LanguageConfig config = languageRegistry.forLanguage(language);
+            if (config == null) {
+                states.remove(language);
+                pinnedImages.remove(language);
+            } else if (!config.imageName.equals(pinnedImages.get(language))) {
+                states.put(language, PENDING);
+                warmupExecutor.execute(() -> warm(Set.of(language)));
+            }
+        }
+    }
+
+    private void warm(Set<String> languages) {
+        boolean anyFailed = false;
+        for (String language : languages) {
+            if (!warm(language)) {
+                anyFailed = true;
+            }
+        }
+        if (anyFailed) {
+            warmupExecutor.schedule(this::retryFailed, retryIntervalSeconds, TimeUnit.SECONDS);
+        }
+    }
+
+    private void retryFailed() {
+        Set<String> failed = new HashSet<>();
+        states.forEach((language, state) -> {
+            if (!READY.equals(state)) {
+                failed.add(language);
+            }
+        });
+        if (!failed.isEmpty()) {
+            warm(failed);
+        }
+    }
+
+    /**
+     * @return true if the language is ready on at least one daemon
+     */
+    private boolean warm(String language) {
+        LanguageConfig config = languageRegistry.forLanguage(language);
+        if (config == null) {
+            return true;
+        }
+        List<DockerDaemon> daemons = daemonScheduler.healthy();
+        String failure = "no healthy Docker daemon";
+        boolean ready = false;
+        for (DockerDaemon daemon : daemons) {
+            try {
+                long startedAt = System.currentTimeMillis();
+                ensureImage(daemon, config.imageName);
+                if (pinDigests && !config.imageName.contains("@")) {
+                    String digest = repoDigest(daemon, config.imageName);
+                    if (digest != null) {
+                        pinnedImages.put(language, digest);
+                        languageRegistry.pinImage(language, digest);
+                        config = languageRegistry.forLanguage(language);
+                    }
+                }
+                if (config.warmupCode != null) {
+                    runWarmup(daemon, language, config);
+                }
+                ready = true;
+                logger.info(
+                        "Language {} is ready on {} ({} ms, image {})",
+                        language,
+                        daemon,
+                        System.currentTimeMillis() - startedAt,
+                        config.imageName
+                );
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            } catch (Exception e) {
+                failure = e.getMessage();
+                logger.warn("Failed to warm up {} on {}: {}", language, daemon, e.getMessage());
+            }
+        }
+        states.put(language, ready ? READY : "failed: " + failure);
+        return ready;
+    }
+
+    private void ensureImage(DockerDaemon daemon, String image) throws InterruptedException {
+        try {
+            daemon.control().inspectImageCmd(image).exec();
+            return;
+        } catch (NotFoundException e) {
+            logger.info("Pulling image {} on {}", image, daemon);
+        }
+        boolean pulled = daemon.streaming()
+                .pullImageCmd(image)
+                .start()
+                .awaitCompletion(pullTimeoutSeconds, TimeUnit.SECONDS);
+        if (!pulled) {
+            throw new IllegalStateException("Pulling " + image + " did not finish within " + pullTimeoutSeconds + "s");
+        }
+    }
+
+    /**
+     * @return {@code repo@sha256:...} for a tagged image, or null if the image
+     * was built or loaded locally and has no registry digest
+     */
+    private static String repoDigest(DockerDaemon daemon, String image) {
+        List<String> repoDigests = daemon.control().inspectImageCmd(image).exec().getRepoDigests();
+        if (repoDigests == null) {
+            return null;
+        }
+        int tagStart = image.lastIndexOf(':');
+        String repository = tagStart > image.lastIndexOf('/') ? image.substring(0, tagStart) : image;
+        for (String repoDigest : repoDigests) {
+            if (repoDigest.startsWith(repository + "@")) {
+                return repoDigest;
+            }
+        }
+        return null;
+    }
+
+    private void runWarmup(DockerDaemon daemon, String language, LanguageConfig config) throws Exception {
+        String command = config.compileCommand != null
+                ? config.compileCommand + " && " + config.runCommand
+                : config.runCommand;
+        SandboxContainer sandbox = containerFactory.create(
+                daemon,
+                language,
+                config,
+                new String[]{"sh", "-c", command},
+                null
+        );
+        try {
+            containerFactory.deliverCode(sandbox, config, config.warmupCode);
+            exitDispatcher.start(sandbox);
+            ContainerExitDispatcher.ContainerExit exit = exitDispatcher.await(sandbox, config.timeoutSeconds);
+            if (exit.timedOut() || exit.exitCode() != 0) {
+                throw new IllegalStateException(
+                        "warmup run " + (exit.timedOut() ? "timed out" : "exited with " + exit.exitCode())
+                );
+            }
+        } finally {
+            containerReaper.submit(sandbox);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        warmupExecutor.shutdownNow();
+    }
+}
@@ -0,0 +1,38 @@
+package com.biye_daalt.code_execution_service;
+
+import com.biye_daalt.code_execution_service.service.DaemonScheduler;
+import com.biye_daalt.code_execution_service.service.SandboxWarmup;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.health.HealthEndpoint;
+import org.springframework.boot.actuate.health.Status;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.ApplicationContext;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// No daemon listens on docker.host, so any Docker bean that got created would keep the instance out of service
+@SpringBootTest(properties = {
+		"execution.executor=local",
+		"docker.host=unix:///nonexistent/docker.sock"
+})
+class LocalExecutorContextTests {
+
+	@Autowired
+	private ApplicationContext context;
+
+	@Autowired
+	private HealthEndpoint healthEndpoint;
+
+	@Test
+	void startsWithoutDockerBeans() {
+		assertEquals(0, context.getBeanNamesForType(DaemonScheduler.class).length);
+		assertEquals(0, context.getBeanNamesForType(SandboxWarmup.class).length);
+		assertFalse(context.containsBean("dockerDaemons"));
+	}
+
+	@Test
+	void reportsUp() {
+		assertEquals(Status.UP, healthEndpoint.health().getStatus());
+	}
+}
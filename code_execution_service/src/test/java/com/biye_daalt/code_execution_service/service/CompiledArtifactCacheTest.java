@@ -0,0 +1,67 @@
+package com.biye_daalt.code_execution_service.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CompiledArtifactCacheTest {
+
+	private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+	@Test
+	void evictsLeastRecentlyUsedArtifactsOnceOverTheByteLimit() {
+		CompiledArtifactCache cache = new CompiledArtifactCache(meterRegistry, 10, 10);
+		cache.put("a", new byte[4]);
+		cache.put("b", new byte[4]);
+		assertNotNull(cache.get("a"));
+
+		cache.put("c", new byte[4]);
+
+		assertNull(cache.get("b"), "b was used least recently");
+		assertNotNull(cache.get("a"));
+		assertNotNull(cache.get("c"));
+		assertEquals(8, cache.totalBytes());
+		assertEquals(8, meterRegistry.get("execution.compile-cache.bytes").gauge().value());
+	}
+
+	@Test
+	void oneLargeArtifactCanEvictSeveralSmallOnes() {
+		CompiledArtifactCache cache = new CompiledArtifactCache(meterRegistry, 10, 10);
+		cache.put("a", new byte[3]);
+		cache.put("b", new byte[3]);
+		cache.put("c", new byte[3]);
+
+		cache.put("large", new byte[8]);
+
+		assertNull(cache.get("a"));
+		assertNull(cache.get("b"));
+		assertNull(cache.get("c"));
+		assertEquals(8, cache.totalBytes());
+	}
+
+	@Test
+	void skipsArtifactsOverTheEntryLimit() {
+		CompiledArtifactCache cache = new CompiledArtifactCache(meterRegistry, 100, 10);
+		cache.put("small", new byte[10]);
+
+		cache.put("large", new byte[11]);
+
+		assertNull(cache.get("large"));
+		assertNotNull(cache.get("small"), "a skipped artifact evicts nothing");
+		assertEquals(10, cache.totalBytes());
+	}
+
+	@Test
+	void replacingAnArtifactCountsOnlyTheNewOne() {
+		CompiledArtifactCache cache = new CompiledArtifactCache(meterRegistry, 10, 10);
+		cache.put("a", new byte[6]);
+		cache.put("b", new byte[4]);
+
+		cache.put("a", new byte[2]);
+
+		assertEquals(6, cache.totalBytes());
+		assertEquals(2, cache.get("a").length);
+		assertNotNull(cache.get("b"));
+	}
+}
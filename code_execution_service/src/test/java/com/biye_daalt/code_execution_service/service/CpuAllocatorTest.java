@@ -0,0 +1,45 @@
+package com.biye_daalt.code_execution_service.service;
+
+import com.biye_daalt.code_execution_service.config.DockerDaemon;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CpuAllocatorTest {
+
+	// The inventory is configured, so the daemon is never asked for its CPU count
+	private final DockerDaemon daemon = new DockerDaemon("daemon-0", "tcp://daemon:2375", 1, null, null);
+
+	@Test
+	void parsesCpusetLists() {
+		assertEquals(List.of(0, 1, 2, 3, 6), CpuAllocator.parseCores("0-3, 6"));
+		assertEquals(List.of(), CpuAllocator.parseCores(" "));
+	}
+
+	@Test
+	void handsOutDistinctCoresAndTakesThemBack() throws InterruptedException {
+		CpuAllocator allocator = new CpuAllocator(new SimpleMeterRegistry(), "cpuset", "2-3", 1, 0);
+
+		CpuAllocator.CpuSlot first = allocator.acquire(daemon);
+		CpuAllocator.CpuSlot second = allocator.acquire(daemon);
+
+		assertEquals("2", first.cpuset());
+		assertEquals("3", second.cpuset());
+		assertNull(allocator.acquire(daemon), "all cores are taken");
+
+		allocator.release(first);
+
+		assertEquals("2", allocator.acquire(daemon).cpuset());
+	}
+
+	@Test
+	void givesSeveralCoresPerRun() throws InterruptedException {
+		CpuAllocator allocator = new CpuAllocator(new SimpleMeterRegistry(), "quota", "0-3", 2, 0);
+
+		assertEquals(List.of(0, 1), allocator.acquire(daemon).cores());
+		assertEquals(List.of(2, 3), allocator.acquire(daemon).cores());
+	}
+}
@@ -0,0 +1,85 @@
+package com.biye_daalt.code_execution_service.service;
+
+import com.biye_daalt.code_execution_service.config.DockerDaemon;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DaemonSchedulerTest {
+
+	private static final String IMAGE = "dukunuu/python-executor:latest";
+
+	// Health checks are never started, so the clients are not needed
+	private final DockerDaemon small = new DockerDaemon("daemon-0", "tcp://small:2375", 1, null, null);
+	private final DockerDaemon large = new DockerDaemon("daemon-1", "tcp://large:2375", 2, null, null);
+
+	private final LanguageRegistry languages = new LanguageRegistry("classpath:sandbox/languages.json", 0, 15);
+
+	private DaemonScheduler scheduler(DockerDaemon... daemons) {
+		return new DaemonScheduler(List.of(daemons), languages, new SimpleMeterRegistry(), 10, 3);
+	}
+
+	@Test
+	void spreadsLoadInProportionToWeight() {
+		DaemonScheduler scheduler = scheduler(small, large);
+
+		int onLarge = 0;
+		for (int i = 0; i < 3; i++) {
+			if (scheduler.acquire(IMAGE) == large) {
+				onLarge++;
+			}
+		}
+
+		assertEquals(2, onLarge);
+	}
+
+	@Test
+	void releasedRunsNoLongerCount() {
+		DaemonScheduler scheduler = scheduler(small, large);
+		DockerDaemon first = scheduler.acquire(IMAGE);
+		scheduler.release(first, false);
+
+		assertSame(first, scheduler.acquire(IMAGE));
+	}
+
+	@Test
+	void drainsAfterConsecutiveFailuresAndRecoversOnPing() {
+		DaemonScheduler scheduler = scheduler(small, large);
+		for (int i = 0; i < 3; i++) {
+			scheduler.recordFailure(large);
+		}
+
+		assertFalse(scheduler.isHealthy(large));
+		assertEquals(List.of(small), scheduler.healthy());
+		assertSame(small, scheduler.acquire(IMAGE));
+
+		scheduler.recordPing(large, 1);
+
+		assertTrue(scheduler.isHealthy(large));
+		assertSame(large, scheduler.acquire(IMAGE));
+	}
+
+	@Test
+	void stillReturnsADaemonWhenAllAreDrained() {
+		DaemonScheduler scheduler = scheduler(small);
+		for (int i = 0; i < 3; i++) {
+			scheduler.recordFailure(small);
+		}
+
+		assertSame(small, scheduler.acquire(IMAGE));
+	}
+
+	@Test
+	void prefersDaemonsThatAlreadyHaveTheImage() {
+		DaemonScheduler scheduler = scheduler(small, large);
+		scheduler.recordImages(small, Set.of(IMAGE));
+		scheduler.recordImages(large, Set.of());
+
+		assertSame(small, scheduler.acquire(IMAGE));
+		assertSame(small, scheduler.acquire(IMAGE));
+	}
+}
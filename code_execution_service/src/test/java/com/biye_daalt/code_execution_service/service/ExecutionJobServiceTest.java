@@ -0,0 +1,67 @@
+package com.biye_daalt.code_execution_service.service;
+
+import com.biye_daalt.code_execution_service.dto.ExecutionResponse;
+import com.biye_daalt.code_execution_service.service.ExecutionScheduler.PriorityClass;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class ExecutionJobServiceTest {
+
+	private final CountDownLatch batchReleased = new CountDownLatch(1);
+	private final CodeExecutionService codeExecutionService = mock(CodeExecutionService.class);
+	// 2 workers and 2 slots, of which batch may take 1
+	private final ExecutionScheduler scheduler = new ExecutionScheduler(
+			new SimpleMeterRegistry(), 2, 60, 4, 2, 10, 1, 1, 10, false);
+	private final ExecutionJobService jobService = new ExecutionJobService(
+			codeExecutionService, scheduler, new SimpleMeterRegistry(), 2, 2, 300);
+
+	@AfterEach
+	void tearDown() {
+		batchReleased.countDown();
+		jobService.shutdown();
+	}
+
+	@Test
+	void queuedBatchJobsDoNotHoldWorkersFromInteractiveStreams() throws Exception {
+		CountDownLatch batchRunning = new CountDownLatch(1);
+		when(codeExecutionService.executeCode(eq("grade"), any(), any())).thenAnswer(invocation -> {
+			batchRunning.countDown();
+			batchReleased.await();
+			return response("graded");
+		});
+		when(codeExecutionService.executeCode(eq("run"), any(), any(), any())).thenReturn(response("ran"));
+
+		// One job runs, the rest wait for the batch slot: with a worker each they would take both workers
+		List<ExecutionJob> jobs = new ArrayList<>();
+		for (int i = 0; i < 3; i++) {
+			jobs.add(jobService.submit("grade", "python", null, PriorityClass.BATCH, "grader"));
+		}
+		assertTrue(batchRunning.await(5, TimeUnit.SECONDS));
+
+		ExecutionResponse streamed = jobService
+				.submitStreaming("run", "python", null, null, PriorityClass.INTERACTIVE, "student")
+				.get(5, TimeUnit.SECONDS);
+
+		assertEquals("ran", streamed.getOutput());
+		assertEquals(ExecutionJob.Status.RUNNING, jobs.get(0).getStatus(), "the batch job is still running");
+		batchReleased.countDown();
+	}
+
+	private static ExecutionResponse response(String output) {
+		ExecutionResponse response = new ExecutionResponse();
+		response.setOutput(output);
+		return response;
+	}
+}
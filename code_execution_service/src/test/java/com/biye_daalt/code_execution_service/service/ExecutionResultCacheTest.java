@@ -0,0 +1,114 @@
+package com.biye_daalt.code_execution_service.service;
+
+import com.biye_daalt.code_execution_service.dto.ExecutionResponse;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ExecutionResultCacheTest {
+
+	private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+	private final AtomicInteger executions = new AtomicInteger();
+
+	@Test
+	void identicalRequestsShareOneRunningExecution() throws Exception {
+		ExecutionResultCache cache = new ExecutionResultCache(meterRegistry, true, 10, 600);
+		CountDownLatch running = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+		CompletableFuture<ExecutionResponse> first = CompletableFuture.supplyAsync(() -> cache.getOrExecute("key", () -> {
+			running.countDown();
+			try {
+				release.await();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			return run("shared");
+		}));
+		assertTrue(running.await(5, TimeUnit.SECONDS));
+
+		CompletableFuture<ExecutionResponse> second = CompletableFuture.supplyAsync(
+				() -> cache.getOrExecute("key", () -> run("second")));
+		long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+		while (meterRegistry.counter("execution.cache.requests", "result", "coalesced").count() < 1) {
+			assertTrue(System.nanoTime() < deadline, "second request did not join the first");
+			Thread.sleep(1);
+		}
+		release.countDown();
+
+		assertEquals("shared", first.get(5, TimeUnit.SECONDS).getOutput());
+		ExecutionResponse joined = second.get(5, TimeUnit.SECONDS);
+		assertEquals("shared", joined.getOutput());
+		assertNotSame(first.get(), joined, "every caller gets its own copy");
+		assertEquals(0, executions.get(), "the joining request never ran");
+	}
+
+	@Test
+	void evictsTheLeastRecentlyUsedEntry() {
+		ExecutionResultCache cache = new ExecutionResultCache(meterRegistry, true, 2, 600);
+		cache.getOrExecute("a", counting("a"));
+		cache.getOrExecute("b", counting("b"));
+		cache.getOrExecute("a", counting("a"));
+
+		cache.getOrExecute("c", counting("c"));
+		assertEquals(3, executions.get());
+
+		cache.getOrExecute("a", counting("a"));
+		assertEquals(3, executions.get(), "a was used more recently than b");
+		cache.getOrExecute("b", counting("b"));
+		assertEquals(4, executions.get());
+	}
+
+	@Test
+	void expiredEntriesRunAgain() throws InterruptedException {
+		ExecutionResultCache cache = new ExecutionResultCache(meterRegistry, true, 10, 0);
+		cache.getOrExecute("key", counting("out"));
+		Thread.sleep(5);
+
+		cache.getOrExecute("key", counting("out"));
+
+		assertEquals(2, executions.get());
+	}
+
+	@Test
+	void cachesOnlyDeterministicOutcomes() {
+		assertTrue(ExecutionResultCache.isCacheable(new ExecutionResponse("", "", 0, false)));
+		assertTrue(ExecutionResultCache.isCacheable(new ExecutionResponse("", "", 1, false)));
+		assertTrue(ExecutionResultCache.isCacheable(new ExecutionResponse("", "", 128, false)));
+		assertFalse(ExecutionResultCache.isCacheable(new ExecutionResponse("", "", 129, false)), "killed by a signal");
+		assertFalse(ExecutionResultCache.isCacheable(new ExecutionResponse("", "", 137, false)), "OOM killed");
+		assertFalse(ExecutionResultCache.isCacheable(new ExecutionResponse("", "", -1, false)), "service error");
+		assertFalse(ExecutionResultCache.isCacheable(new ExecutionResponse("", "", 0, true)), "timed out");
+	}
+
+	@Test
+	void uncacheableResultsRunAgain() {
+		ExecutionResultCache cache = new ExecutionResultCache(meterRegistry, true, 10, 600);
+		Supplier<ExecutionResponse> killed = () -> {
+			executions.incrementAndGet();
+			return new ExecutionResponse("", "", 137, false);
+		};
+
+		cache.getOrExecute("key", killed);
+		cache.getOrExecute("key", killed);
+
+		assertEquals(2, executions.get());
+	}
+
+	private Supplier<ExecutionResponse> counting(String output) {
+		return () -> {
+			executions.incrementAndGet();
+			return run(output);
+		};
+	}
+
+	private static ExecutionResponse run(String output) {
+		return new ExecutionResponse(output, "", 0, false);
+	}
+}
@@ -0,0 +1,126 @@
+package com.biye_daalt.code_execution_service.service;
+
+import com.biye_daalt.code_execution_service.service.ExecutionScheduler.PriorityClass;
+import com.biye_daalt.code_execution_service.service.ExecutionScheduler.Ticket;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ExecutionSchedulerTest {
+
+	private static ExecutionScheduler scheduler(int maxConcurrent, int batchMaxConcurrent, int maxQueued) {
+		return scheduler(maxConcurrent, batchMaxConcurrent, maxQueued, false);
+	}
+
+	private static ExecutionScheduler scheduler(int maxConcurrent, int batchMaxConcurrent, int maxQueued, boolean clientHeaderTrusted) {
+		return new ExecutionScheduler(
+				new SimpleMeterRegistry(),
+				maxConcurrent,
+				60,
+				4, maxConcurrent, maxQueued,
+				1, batchMaxConcurrent, maxQueued,
+				clientHeaderTrusted
+		);
+	}
+
+	@Test
+	void interactiveOvertakesQueuedBatchWork() {
+		ExecutionScheduler scheduler = scheduler(1, 1, 10);
+		Ticket running = scheduler.enqueue(PriorityClass.BATCH, "grader");
+		Ticket batch = scheduler.enqueue(PriorityClass.BATCH, "grader");
+		Ticket interactive = scheduler.enqueue(PriorityClass.INTERACTIVE, "student");
+
+		assertTrue(running.isAdmitted());
+		assertFalse(interactive.isAdmitted());
+
+		scheduler.complete(running);
+
+		assertTrue(interactive.isAdmitted());
+		assertFalse(batch.isAdmitted());
+	}
+
+	@Test
+	void clientsTakeTurnsWithinAClass() {
+		ExecutionScheduler scheduler = scheduler(1, 1, 10);
+		Ticket first = scheduler.enqueue(PriorityClass.BATCH, "bulk");
+		Ticket bulkSecond = scheduler.enqueue(PriorityClass.BATCH, "bulk");
+		scheduler.enqueue(PriorityClass.BATCH, "bulk");
+		Ticket other = scheduler.enqueue(PriorityClass.BATCH, "other");
+
+		scheduler.complete(first);
+
+		assertTrue(bulkSecond.isAdmitted(), "same finish tag as other's run, but queued first");
+		scheduler.complete(bulkSecond);
+
+		assertTrue(other.isAdmitted(), "other goes before bulk's third run");
+	}
+
+	@Test
+	void batchCapKeepsSlotsForInteractiveRuns() {
+		ExecutionScheduler scheduler = scheduler(2, 1, 10);
+		Ticket batch = scheduler.enqueue(PriorityClass.BATCH, "grader");
+		Ticket secondBatch = scheduler.enqueue(PriorityClass.BATCH, "grader");
+		Ticket interactive = scheduler.enqueue(PriorityClass.INTERACTIVE, "student");
+
+		assertTrue(batch.isAdmitted());
+		assertFalse(secondBatch.isAdmitted());
+		assertTrue(interactive.isAdmitted());
+	}
+
+	@Test
+	void handsAdmittedWorkToTheExecutorOutsideTheLock() throws Exception {
+		ExecutionScheduler scheduler = scheduler(1, 1, 10);
+		Ticket running = scheduler.enqueue(PriorityClass.INTERACTIVE, "student");
+		AtomicBoolean lockHeld = new AtomicBoolean();
+		CompletableFuture<String> queued = scheduler.submit(PriorityClass.INTERACTIVE, "student", () -> "ran", work -> {
+			lockHeld.set(Thread.holdsLock(scheduler));
+			work.run();
+		});
+
+		scheduler.complete(running);
+
+		assertEquals("ran", queued.get(5, TimeUnit.SECONDS));
+		assertFalse(lockHeld.get());
+	}
+
+	@Test
+	void refusedWorkPassesItsSlotOn() {
+		ExecutionScheduler scheduler = scheduler(1, 1, 10);
+		Ticket running = scheduler.enqueue(PriorityClass.INTERACTIVE, "student");
+		CompletableFuture<String> refused = scheduler.submit(PriorityClass.INTERACTIVE, "student", () -> "ran", work -> {
+			throw new RejectedExecutionException("shutting down");
+		});
+		Ticket next = scheduler.enqueue(PriorityClass.INTERACTIVE, "other");
+
+		scheduler.complete(running);
+
+		ExecutionException e = assertThrows(ExecutionException.class, () -> refused.get(5, TimeUnit.SECONDS));
+		assertInstanceOf(RejectedExecutionException.class, e.getCause());
+		assertTrue(next.isAdmitted());
+	}
+
+	@Test
+	void clientHeaderCountsOnlyWhenTrusted() {
+		assertEquals("10.0.0.7", scheduler(1, 1, 10).clientKey("rotated-1", "10.0.0.7"));
+
+		ExecutionScheduler behindGateway = scheduler(1, 1, 10, true);
+		assertEquals("203.0.113.5", behindGateway.clientKey("203.0.113.5", "10.0.0.2"));
+		assertEquals("10.0.0.2", behindGateway.clientKey(" ", "10.0.0.2"));
+	}
+
+	@Test
+	void rejectsWhenTheClassQueueIsFull() {
+		ExecutionScheduler scheduler = scheduler(1, 1, 1);
+		scheduler.enqueue(PriorityClass.BATCH, "grader"); // running
+		scheduler.enqueue(PriorityClass.BATCH, "grader"); // queued
+
+		assertThrows(RejectedExecutionException.class, () -> scheduler.enqueue(PriorityClass.BATCH, "grader"));
+	}
+}
@@ -0,0 +1,50 @@
+package com.biye_daalt.code_execution_service.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LanguageRegistryTest {
+
+	@Test
+	void loadsBundledLanguagesWithDefaultLimits() {
+		LanguageRegistry registry = new LanguageRegistry("classpath:sandbox/languages.json", 0, 15);
+
+		LanguageConfig java = registry.forLanguage("java");
+		assertEquals("Main.java", java.scriptFileName);
+		assertEquals("classes", java.artifactPath);
+		assertEquals(256L * 1024 * 1024, java.memoryLimitBytes);
+		assertEquals(15, java.timeoutSeconds);
+		assertNull(registry.forLanguage("cobol"));
+	}
+
+	@Test
+	void rejectsIncompleteDefinitions() {
+		LanguageRegistry.LanguageDefinition noRunCommand = new LanguageRegistry.LanguageDefinition(
+				"img", "a.py", null, null, null, null, null, null, null);
+		LanguageRegistry.LanguageDefinition compileWithoutArtifact = new LanguageRegistry.LanguageDefinition(
+				"img", "Main.java", "javac Main.java", "java Main", null, null, null, null, null);
+
+		assertThrows(IllegalArgumentException.class,
+				() -> LanguageRegistry.parse(Map.of("python", noRunCommand), 15));
+		assertThrows(IllegalArgumentException.class,
+				() -> LanguageRegistry.parse(Map.of("java", compileWithoutArtifact), 15));
+	}
+
+	@Test
+	void keepsPinnedDigestAndNotifiesListeners() {
+		LanguageRegistry registry = new LanguageRegistry("classpath:sandbox/languages.json", 0, 15);
+		List<Set<String>> notifications = new ArrayList<>();
+		registry.addListener(notifications::add);
+
+		registry.pinImage("python", "dukunuu/python-executor@sha256:abc");
+
+		assertEquals("dukunuu/python-executor@sha256:abc", registry.forLanguage("python").imageName);
+		assertEquals(List.of(Set.of("python")), notifications);
+	}
+}
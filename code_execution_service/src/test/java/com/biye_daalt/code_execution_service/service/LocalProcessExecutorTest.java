@@ -0,0 +1,79 @@
+package com.biye_daalt.code_execution_service.service;
+
+import com.biye_daalt.code_execution_service.dto.ExecutionResponse;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LocalProcessExecutorTest {
+
+	// Host network and no cgroup, so the test runs on any machine with a POSIX shell
+	private final LocalProcessExecutor executor = new LocalProcessExecutor(
+			"", "host", "", 64, 1, 16, 64, 0, 100, 4);
+
+	private static LanguageConfig shell(long timeoutSeconds) {
+		return new LanguageConfig("none", "script.sh", null, "sh script.sh", null,
+				256L * 1024 * 1024, 512, timeoutSeconds, null);
+	}
+
+	private ExecutionResponse run(String code, long timeoutSeconds) {
+		return run(code, timeoutSeconds, null);
+	}
+
+	private ExecutionResponse run(String code, long timeoutSeconds, OutputComparator comparator) {
+		return run(code, null, timeoutSeconds, comparator);
+	}
+
+	private ExecutionResponse run(String code, ExecutionInput stdin, long timeoutSeconds, OutputComparator comparator) {
+		ExecutionResponse response = new ExecutionResponse();
+		executor.execute("shell", shell(timeoutSeconds), code, stdin, null, comparator, response, new ExecutionPhases());
+		return response;
+	}
+
+	@Test
+	void capturesOutputAndExitCode() {
+		ExecutionResponse response = run("echo hello; echo oops >&2; exit 3", 5);
+
+		assertEquals("hello", response.getOutput());
+		assertEquals("oops", response.getError());
+		assertEquals(3, response.getExitCode());
+		assertFalse(response.isTimeout());
+	}
+
+	@Test
+	void feedsInputToStdin() {
+		ExecutionResponse response = run("read a b; echo $((a + b)); cat", ExecutionInput.ofText("2 3\nrest\n"), 5, null);
+
+		assertEquals("5\nrest", response.getOutput());
+		assertEquals(0, response.getExitCode());
+	}
+
+	@Test
+	void killsProgramAfterTimeout() {
+		long startedAt = System.currentTimeMillis();
+		ExecutionResponse response = run("echo started; sleep 30", 1);
+
+		assertTrue(response.isTimeout());
+		assertEquals("started", response.getOutput());
+		assertTrue(System.currentTimeMillis() - startedAt < 10_000, "the sleep must not run to the end");
+	}
+
+	@Test
+	void killsProgramThatExceedsOutputLimit() {
+		ExecutionResponse response = run("while true; do echo spam; done", 5);
+
+		assertFalse(response.isTimeout());
+		assertTrue(response.isOutputTruncated());
+		assertTrue(response.getError().contains("Execution stopped: output exceeded 400 bytes"));
+	}
+
+	@Test
+	void stopsProgramAtFirstWrongLine() {
+		OutputComparator comparator = new OutputComparator("1\n2\n", OutputComparator.Mode.LINES, null);
+
+		ExecutionResponse response = run("echo 1; echo 3; sleep 30", 5, comparator);
+
+		assertFalse(response.isTimeout(), "the program is stopped before its time limit");
+		assertTrue(comparator.mismatched());
+	}
+}
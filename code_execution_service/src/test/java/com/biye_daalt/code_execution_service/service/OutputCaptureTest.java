@@ -0,0 +1,59 @@
+package com.biye_daalt.code_execution_service.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class OutputCaptureTest {
+
+	@Test
+	void decodesCharacterSplitAcrossFrames() {
+		byte[] bytes = "héllo €".getBytes(StandardCharsets.UTF_8);
+		OutputCapture capture = new OutputCapture(100);
+
+		// Split inside the 3-byte euro sign
+		capture.append(Arrays.copyOfRange(bytes, 0, bytes.length - 2));
+		capture.append(Arrays.copyOfRange(bytes, bytes.length - 2, bytes.length));
+
+		assertEquals("héllo €", capture.toString());
+		assertFalse(capture.isTruncated());
+		assertEquals(bytes.length, capture.totalBytes());
+	}
+
+	@Test
+	void stopsAtLimitAndKeepsCountingBytes() {
+		OutputCapture capture = new OutputCapture(5);
+
+		capture.append("abc".getBytes(StandardCharsets.UTF_8));
+		capture.append("defgh".getBytes(StandardCharsets.UTF_8));
+		capture.append("ijk".getBytes(StandardCharsets.UTF_8));
+
+		assertTrue(capture.isTruncated());
+		assertEquals(5, capture.length());
+		assertEquals(11, capture.totalBytes());
+		assertTrue(capture.toString().startsWith("abcde\n[Output truncated"));
+	}
+
+	@Test
+	void exactLimitIsNotTruncated() {
+		OutputCapture capture = new OutputCapture(3);
+
+		capture.append("abc".getBytes(StandardCharsets.UTF_8));
+
+		assertFalse(capture.isTruncated());
+		assertEquals("abc", capture.toString());
+	}
+
+	@Test
+	void notesBypassLimit() {
+		OutputCapture capture = new OutputCapture(2);
+
+		capture.append("abc".getBytes(StandardCharsets.UTF_8));
+		capture.appendNote("\n[note]");
+
+		assertTrue(capture.toString().endsWith("\n[note]"));
+	}
+}
@@ -0,0 +1,65 @@
+package com.biye_daalt.code_execution_service.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static com.biye_daalt.code_execution_service.service.OutputComparator.Mode.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+class OutputComparatorTest {
+
+	@Test
+	void linesIgnoreTrailingWhitespaceAndLineEndings() {
+		assertTrue(OutputComparator.matches("1 2\r\n3  \n\n\n", "1 2\n3", LINES, null));
+		assertTrue(OutputComparator.matches("", "\n", LINES, null));
+		assertFalse(OutputComparator.matches("1  2\n3", "1 2\n3", LINES, null));
+		assertFalse(OutputComparator.matches("1 2", "1 2\n3", LINES, null));
+		assertFalse(OutputComparator.matches("1 2\n3\n4", "1 2\n3", LINES, null));
+	}
+
+	@Test
+	void exactComparesEveryByte() {
+		assertTrue(OutputComparator.matches("a\nb\n", "a\nb\n", EXACT, null));
+		assertFalse(OutputComparator.matches("a\r\nb\n", "a\nb\n", EXACT, null));
+		assertFalse(OutputComparator.matches("a\nb", "a\nb\n", EXACT, null));
+	}
+
+	@Test
+	void tokensIgnoreLayoutAndAllowFloatTolerance() {
+		assertTrue(OutputComparator.matches("1\n  2\t3", "1 2 3\n", TOKENS, null));
+		assertFalse(OutputComparator.matches("0.3333", "0.333333", TOKENS, null));
+		assertTrue(OutputComparator.matches("0.3333 1e6", "0.333333 1000000.5", TOKENS, 1e-3));
+		assertFalse(OutputComparator.matches("0.34", "0.333333", TOKENS, 1e-3));
+		assertFalse(OutputComparator.matches("abc", "abd", TOKENS, 1e-3));
+	}
+
+	@Test
+	void reportsMismatchAtTheFirstWrongByte() {
+		OutputComparator comparator = new OutputComparator("1\n2\n3\n", LINES, null);
+
+		feed(comparator, "1\n");
+		assertFalse(comparator.mismatched());
+		feed(comparator, "5");
+
+		assertTrue(comparator.mismatched(), "no later output can make line 2 match");
+		assertEquals("Line 2 differs: expected \"2\", got \"5\"", comparator.mismatch());
+		assertFalse(comparator.finish());
+	}
+
+	@Test
+	void outputEndingEarlyIsOnlyWrongAtTheEnd() {
+		OutputComparator comparator = new OutputComparator("1 2 3", TOKENS, null);
+
+		feed(comparator, "1 2");
+
+		assertFalse(comparator.mismatched());
+		assertFalse(comparator.finish());
+		assertEquals("Output ended after 2 of 3 tokens", comparator.mismatch());
+	}
+
+	private static void feed(OutputComparator comparator, String output) {
+		byte[] bytes = output.getBytes(StandardCharsets.UTF_8);
+		comparator.accept(bytes, bytes.length);
+	}
+}
@@ -0,0 +1,71 @@
+package com.biye_daalt.code_execution_service.service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ResourceUsageReportTest {
+
+	private static final String REPORT = """
+			cpu.before
+			usage_usec 1500000
+			user_usec 1000000
+			cpu.after
+			usage_usec 1742000
+			user_usec 1200000
+			memory.peak
+			52428800
+			""";
+
+	@Test
+	void cpuTimeIsTheDifferenceOfBothReadings() {
+		ResourceUsageReport usage = ResourceUsageReport.parse(REPORT, false);
+
+		assertEquals(242L, usage.cpuTimeMillis());
+		assertEquals(52428800L, usage.peakMemoryBytes());
+	}
+
+	@Test
+	void sharedCgroupReportsNoMemoryPeak() {
+		ResourceUsageReport usage = ResourceUsageReport.parse(REPORT, true);
+
+		assertEquals(242L, usage.cpuTimeMillis());
+		assertNull(usage.peakMemoryBytes());
+	}
+
+	@Test
+	void missingOrIncompleteReportHasNoFigures() {
+		assertNull(ResourceUsageReport.parse(null, false).cpuTimeMillis());
+
+		// Killed before the final reading; cgroup v1 has no cpu.stat or memory.peak at all
+		ResourceUsageReport killed = ResourceUsageReport.parse("cpu.before\nusage_usec 10\n", false);
+		ResourceUsageReport noCgroupV2 = ResourceUsageReport.parse("cpu.before\ncpu.after\nmemory.peak\n", false);
+
+		assertNull(killed.cpuTimeMillis());
+		assertNull(killed.peakMemoryBytes());
+		assertNull(noCgroupV2.cpuTimeMillis());
+		assertNull(noCgroupV2.peakMemoryBytes());
+	}
+
+	@Test
+	void wrappedCommandKeepsItsOutputAndExitStatus(@TempDir Path workDir) throws Exception {
+		// exec replaces the subshell only, so the final reading is still written
+		Process process = new ProcessBuilder("sh", "-c", ResourceUsageReport.wrap("echo out; echo err >&2; exec sh -c 'exit 3'"))
+				.directory(workDir.toFile())
+				.start();
+		assertTrue(process.waitFor(10, TimeUnit.SECONDS));
+
+		assertEquals(3, process.exitValue());
+		assertEquals("out\n", new String(process.getInputStream().readAllBytes(), StandardCharsets.UTF_8));
+		assertEquals("err\n", new String(process.getErrorStream().readAllBytes(), StandardCharsets.UTF_8));
+		String report = Files.readString(workDir.resolve(ResourceUsageReport.FILE_NAME));
+		assertTrue(report.startsWith("cpu.before\n"));
+		assertTrue(report.contains("cpu.after\n"));
+	}
+}
@@ -0,0 +1,88 @@
+package com.biye_daalt.code_management_service.config;
+
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.sqlite.SQLiteConfig;
+import org.sqlite.SQLiteDataSource;
+
+import javax.sql.DataSource;
+
+/**
+ * SQLite connections for the service: one pool with a single connection for
+ * writes and a pool of query-only connections for reads, both in WAL mode so
+ * that reads never wait for the writer.
+ * <p>
+ * The primary {@link DataSource} hands out connections lazily: read-only
+ * transactions ({@code @Transactional(readOnly = true)}) get a read
+ * connection, everything else the write connection. Writes from request
+ * threads go through {@link com.biye_daalt.code_management_service.service.SingleWriterQueue}
+ * instead of competing for that connection.
+ */
+@Configuration
+public class StorageConfig {
+
+    @Bean(destroyMethod = "close")
+    public HikariDataSource writeDataSource(
+            @Value("${spring.datasource.url}") String url,
+            @Value("${storage.busy-timeout-ms:5000}") int busyTimeoutMillis,
+            @Value("${storage.synchronous:NORMAL}") SQLiteConfig.SynchronousMode synchronous
+    ) {
+        SQLiteConfig config = baseConfig(busyTimeoutMillis);
+        // WAL is persistent in the database file; readers rely on the writer having switched it on
+        config.setJournalMode(SQLiteConfig.JournalMode.WAL);
+        // NORMAL in WAL mode stays consistent after a crash, only the last commits may be lost on power failure
+        config.setSynchronous(synchronous);
+        // Take the write lock at BEGIN rather than failing to upgrade a read lock halfway through
+        config.setTransactionMode(SQLiteConfig.TransactionMode.IMMEDIATE);
+
+        HikariConfig pool = new HikariConfig();
+        pool.setPoolName("sqlite-write");
+        pool.setDataSource(dataSource(url, config));
+        pool.setMaximumPoolSize(1); // SQLite has one writer at a time anyway
+        return new HikariDataSource(pool);
+    }
+
+    @Bean(destroyMethod = "close")
+    public HikariDataSource readDataSource(
+            @Qualifier("writeDataSource") HikariDataSource writeDataSource, // Opened first, see above
+            @Value("${spring.datasource.url}") String url,
+            @Value("${storage.busy-timeout-ms:5000}") int busyTimeoutMillis,
+            @Value("${storage.read-pool-size:4}") int readPoolSize
+    ) {
+        HikariConfig pool = new HikariConfig();
+        pool.setPoolName("sqlite-read");
+        pool.setDataSource(dataSource(url, baseConfig(busyTimeoutMillis)));
+        pool.setMaximumPoolSize(readPoolSize);
+        pool.setConnectionInitSql("PRAGMA query_only = true");
+        return new HikariDataSource(pool);
+    }
+
+    @Bean
+    @Primary
+    public DataSource dataSource(
+            @Qualifier("writeDataSource") DataSource writeDataSource,
+            @Qualifier("readDataSource") DataSource readDataSource
+    ) {
+        LazyConnectionDataSourceProxy dataSource = new LazyConnectionDataSourceProxy(writeDataSource);
+        dataSource.setReadOnlyDataSource(readDataSource);
+        return dataSource;
+    }
+
+    private static SQLiteConfig baseConfig(int busyTimeoutMillis) {
+        SQLiteConfig config = new SQLiteConfig();
+        config.setBusyTimeout(busyTimeoutMillis);
+        return config;
+    }
+
+    private static DataSource dataSource(String url, SQLiteConfig config) {
+        SQLiteDataSource dataSource = new SQLiteDataSource(config);
+        dataSource.setUrl(url);
+        return dataSource;
+    }
+}
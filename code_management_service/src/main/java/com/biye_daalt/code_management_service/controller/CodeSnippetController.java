@@ -1,18 +1,25 @@
 package com.biye_daalt.code_management_service.controller;
 
+import com.biye_daalt.code_management_service.dto.CodeSnippetPage;
+import com.biye_daalt.code_management_service.dto.SnippetCommentPage;
 import com.biye_daalt.code_management_service.model.CodeSnippet;
+import com.biye_daalt.code_management_service.model.SnippetComment;
 import com.biye_daalt.code_management_service.service.CodeSnippetService;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
 import org.springframework.web.bind.annotation.*;
 
-import java.util.List;
 import java.util.Map;
 
 @RestController
 @RequestMapping("/code-snippets")
 public class CodeSnippetController {
+    private static final int DEFAULT_PAGE_SIZE = 20;
+    private static final int MAX_PAGE_SIZE = 100;
+
     private final CodeSnippetService codeSnippetService;
 
     @Autowired
@@ -20,15 +27,54 @@ public class CodeSnippetController {
         this.codeSnippetService = service;
     }
 
+    /**
+     * Lists snippet summaries, newest first. Full snippets are loaded one at a
+     * time through {@code GET /{id}}.
+     */
     @GetMapping
-    public ResponseEntity<List<CodeSnippet>> getAllCodeSnippets() {
-        return ResponseEntity.ok(codeSnippetService.getAllCodeSnippets());
+    public ResponseEntity<CodeSnippetPage> getCodeSnippets(
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "" + DEFAULT_PAGE_SIZE) int limit
+    ) {
+        if (limit < 1 || limit > MAX_PAGE_SIZE) {
+            return ResponseEntity.badRequest().build();
+        }
+        try {
+            return ResponseEntity.ok(codeSnippetService.getCodeSnippetSummaries(cursor, limit));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
+    }
+
+    /**
+     * Searches name, problem text and solution; results are summaries, best
+     * match first. Pass {@code nextCursor} as {@code cursor} for more.
+     */
+    @GetMapping("/search")
+    public ResponseEntity<CodeSnippetPage> searchCodeSnippets(
+            @RequestParam String q,
+            @RequestParam(required = false) String language,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "" + DEFAULT_PAGE_SIZE) int limit
+    ) {
+        if (limit < 1 || limit > MAX_PAGE_SIZE) {
+            return ResponseEntity.badRequest().build();
+        }
+        try {
+            return ResponseEntity.ok(codeSnippetService.searchCodeSnippets(q, language, cursor, limit));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
     }
 
+    /**
+     * Returns the full snippet with a strong ETag. Spring answers a matching
+     * {@code If-None-Match} with 304 before the body is written.
+     */
     @GetMapping("/{id}")
     public ResponseEntity<CodeSnippet> getCodeSnippetById(@PathVariable Long id){
         return codeSnippetService.getCodeSnippetById(id)
-                .map(ResponseEntity::ok)
+                .map(snippet -> ResponseEntity.ok().eTag(etagOf(snippet)).body(snippet))
                 .orElse(ResponseEntity.notFound().build());
     }
 
@@ -44,11 +90,26 @@ public class CodeSnippetController {
         return ResponseEntity.status(HttpStatus.CREATED).body(createdSnippet);
     }
 
+    /**
+     * Replaces the snippet. With {@code If-Match} (the ETag of a previous
+     * {@code GET}) it is only replaced if nobody changed it since; otherwise
+     * the answer is 412 and the client should reload it.
+     */
     @PutMapping("/{id}")
-    public ResponseEntity<CodeSnippet> updateCodeSnippet(@PathVariable Long id, @RequestBody CodeSnippet codeSnippet) {
-        return codeSnippetService.updateCodeSnippet(id, codeSnippet)
-                .map(ResponseEntity::ok)
-                .orElse(ResponseEntity.notFound().build());
+    public ResponseEntity<CodeSnippet> updateCodeSnippet(
+            @PathVariable Long id,
+            @RequestBody CodeSnippet codeSnippet,
+            @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch
+    ) {
+        try {
+            return codeSnippetService
+                    .updateCodeSnippet(id, codeSnippet, existing -> ifMatch == null || matches(ifMatch, etagOf(existing)))
+                    .map(snippet -> ResponseEntity.ok().eTag(etagOf(snippet)).body(snippet))
+                    .orElse(ResponseEntity.notFound().build());
+        } catch (ObjectOptimisticLockingFailureException e) {
+            // If-Match names a version that another update has already replaced
+            return ResponseEntity.status(HttpStatus.PRECONDITION_FAILED).build();
+        }
     }
 
     @DeleteMapping("/{id}")
@@ -59,21 +120,58 @@ public class CodeSnippetController {
         return ResponseEntity.notFound().build();
     }
 
+    /**
+     * Lists the snippet's comments, oldest first.
+     */
+    @GetMapping("/{id}/comments")
+    public ResponseEntity<SnippetCommentPage> getComments(
+            @PathVariable Long id,
+            @RequestParam(required = false) Long after,
+            @RequestParam(defaultValue = "" + DEFAULT_PAGE_SIZE) int limit
+    ) {
+        if (limit < 1 || limit > MAX_PAGE_SIZE) {
+            return ResponseEntity.badRequest().build();
+        }
+        return codeSnippetService.getComments(id, after, limit)
+                .map(ResponseEntity::ok)
+                .orElse(ResponseEntity.notFound().build());
+    }
+
     @PostMapping("/{id}/comments")
-    public ResponseEntity<CodeSnippet> addComment(@PathVariable Long id, @RequestBody Map<String,String> payload) {
+    public ResponseEntity<SnippetComment> addComment(@PathVariable Long id, @RequestBody Map<String,String> payload) {
         String commentText = payload.get("comment");
         if (commentText == null || commentText.isBlank()) {
             return ResponseEntity.badRequest().build();
         }
         return codeSnippetService.addCommentToSnippet(id, commentText)
-                .map(ResponseEntity::ok)
+                .map(comment -> ResponseEntity.status(HttpStatus.CREATED).body(comment))
                 .orElse(ResponseEntity.notFound().build());
     }
 
     @DeleteMapping("/{id}/comments")
-    public ResponseEntity<CodeSnippet> clearComments(@PathVariable Long id) {
-        return codeSnippetService.clearCommentsFromSnippet(id)
-                .map(ResponseEntity::ok)
-                .orElse(ResponseEntity.notFound().build());
+    public ResponseEntity<Void> clearComments(@PathVariable Long id) {
+        if (codeSnippetService.clearCommentsFromSnippet(id)) {
+            return ResponseEntity.noContent().build();
+        }
+        return ResponseEntity.notFound().build();
+    }
+
+    /**
+     * Strong comparison, as {@code If-Match} requires: weak tags never match.
+     */
+    private static boolean matches(String ifMatch, String etag) {
+        for (String candidate : ifMatch.split(",")) {
+            String tag = candidate.trim();
+            if (tag.equals("*") || tag.equals(etag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String etagOf(CodeSnippet snippet) {
+        // SQLite may hand a deleted snippet's id to the next one, so the creation time is part of it
+        return "\"" + snippet.getId() + "-" + snippet.getVersion() + "-" +
+                Integer.toHexString(snippet.getCreatedAt().hashCode()) + "\"";
     }
 }
@@ -0,0 +1,31 @@
+package com.biye_daalt.code_management_service.dto;
+
+import java.util.List;
+
+public class CodeSnippetPage {
+    private List<CodeSnippetSummary> items;
+    private String nextCursor; // Pass as ?cursor= for the next page; null on the last page
+
+    public CodeSnippetPage() {}
+
+    public CodeSnippetPage(List<CodeSnippetSummary> items, String nextCursor) {
+        this.items = items;
+        this.nextCursor = nextCursor;
+    }
+
+    public List<CodeSnippetSummary> getItems() {
+        return items;
+    }
+
+    public void setItems(List<CodeSnippetSummary> items) {
+        this.items = items;
+    }
+
+    public String getNextCursor() {
+        return nextCursor;
+    }
+
+    public void setNextCursor(String nextCursor) {
+        this.nextCursor = nextCursor;
+    }
+}
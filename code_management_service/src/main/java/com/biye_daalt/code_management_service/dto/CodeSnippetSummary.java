@@ -0,0 +1,66 @@
+package com.biye_daalt.code_management_service.dto;
+
+import java.time.LocalDateTime;
+
+/**
+ * A snippet as shown in the listing: no problem text, solution or comments,
+ * only their count. Built directly by the listing query, so the TEXT columns
+ * are never read.
+ */
+public class CodeSnippetSummary {
+    private Long id;
+    private String name;
+    private String language;
+    private LocalDateTime createdAt;
+    private long commentCount;
+
+    public CodeSnippetSummary() {}
+
+    public CodeSnippetSummary(Long id, String name, String language, LocalDateTime createdAt, long commentCount) {
+        this.id = id;
+        this.name = name;
+        this.language = language;
+        this.createdAt = createdAt;
+        this.commentCount = commentCount;
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    public String getLanguage() {
+        return language;
+    }
+
+    public void setLanguage(String language) {
+        this.language = language;
+    }
+
+    public LocalDateTime getCreatedAt() {
+        return createdAt;
+    }
+
+    public void setCreatedAt(LocalDateTime createdAt) {
+        this.createdAt = createdAt;
+    }
+
+    public long getCommentCount() {
+        return commentCount;
+    }
+
+    public void setCommentCount(long commentCount) {
+        this.commentCount = commentCount;
+    }
+}
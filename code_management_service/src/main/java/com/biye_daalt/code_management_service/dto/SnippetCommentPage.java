@@ -0,0 +1,33 @@
+package com.biye_daalt.code_management_service.dto;
+
+import com.biye_daalt.code_management_service.model.SnippetComment;
+
+import java.util.List;
+
+public class SnippetCommentPage {
+    private List<SnippetComment> items;
+    private Long nextAfter; // Pass as ?after= for the next page; null on the last page
+
+    public SnippetCommentPage() {}
+
+    public SnippetCommentPage(List<SnippetComment> items, Long nextAfter) {
+        this.items = items;
+        this.nextAfter = nextAfter;
+    }
+
+    public List<SnippetComment> getItems() {
+        return items;
+    }
+
+    public void setItems(List<SnippetComment> items) {
+        this.items = items;
+    }
+
+    public Long getNextAfter() {
+        return nextAfter;
+    }
+
+    public void setNextAfter(Long nextAfter) {
+        this.nextAfter = nextAfter;
+    }
+}
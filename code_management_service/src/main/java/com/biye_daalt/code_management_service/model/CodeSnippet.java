@@ -4,12 +4,13 @@ import jakarta.persistence.*;
 import org.hibernate.annotations.CreationTimestamp;
 
 import java.time.LocalDateTime;
-import java.util.ArrayList;
-import java.util.List;
 import java.util.Objects;
 
 @Entity
-@Table(name="code_snippets")
+@Table(name="code_snippets", indexes = {
+        // Keyset order of the listing, see CodeSnippetRepository
+        @Index(name = "idx_code_snippets_created_at_id", columnList = "created_at, id")
+})
 public class CodeSnippet {
 
     @Id
@@ -34,10 +35,11 @@ public class CodeSnippet {
     @Column(nullable = false, updatable = false)
     private LocalDateTime createdAt;
 
-    @ElementCollection(fetch = FetchType.EAGER) // EAGER or LAZY, EAGER is simpler for now
-    @CollectionTable(name = "problem_comments", joinColumns = @JoinColumn(name = "problem_id"))
-    @Column(name = "comment", columnDefinition = "TEXT")
-    private List<String> comments = new ArrayList<>();
+    @Version // Bumped by Hibernate on every update; the ETag of GET /code-snippets/{id}
+    @Column(nullable = false, columnDefinition = "bigint default 0")
+    private long version;
+
+    // Comments are SnippetComment rows, fetched page by page through GET /code-snippets/{id}/comments
 
     public CodeSnippet(){}
 
@@ -96,12 +98,12 @@ public class CodeSnippet {
         this.createdAt = createdAt;
     }
 
-    public List<String> getComments() {
-        return comments;
+    public long getVersion() {
+        return version;
     }
 
-    public void setComments(List<String> comments) {
-        this.comments = comments;
+    public void setVersion(long version) {
+        this.version = version;
     }
 
     // equals, hashCode, toString
@@ -129,7 +131,7 @@ public class CodeSnippet {
                 ", solution='" + (solution != null ? solution.substring(0, Math.min(solution.length(), 50)) + "..." : "null") + '\'' +
                 ", language='" + language + '\'' +
                 ", createdAt=" + createdAt +
-                ", commentsCount=" + (comments != null ? comments.size() : 0) +
+                ", version=" + version +
                 '}';
     }
 }
@@ -0,0 +1,80 @@
+package com.biye_daalt.code_management_service.model;
+
+import jakarta.persistence.*;
+import org.hibernate.annotations.CreationTimestamp;
+
+import java.time.LocalDateTime;
+
+/**
+ * A comment on a snippet. Stored apart from the snippet and only referenced by
+ * its id, so adding one is a plain INSERT that never loads the snippet.
+ */
+@Entity
+@Table(name = "snippet_comments", indexes = {
+        // Comments of one snippet in insertion order, see SnippetCommentRepository
+        @Index(name = "idx_snippet_comments_snippet_id_id", columnList = "snippet_id, id")
+})
+public class SnippetComment {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "snippet_id", nullable = false, updatable = false)
+    private Long snippetId;
+
+    @Column(nullable = false, columnDefinition = "TEXT")
+    private String text;
+
+    @CreationTimestamp
+    @Column(nullable = false, updatable = false)
+    private LocalDateTime createdAt;
+
+    public SnippetComment() {}
+
+    public SnippetComment(Long snippetId, String text) {
+        this.snippetId = snippetId;
+        this.text = text;
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public Long getSnippetId() {
+        return snippetId;
+    }
+
+    public void setSnippetId(Long snippetId) {
+        this.snippetId = snippetId;
+    }
+
+    public String getText() {
+        return text;
+    }
+
+    public void setText(String text) {
+        this.text = text;
+    }
+
+    public LocalDateTime getCreatedAt() {
+        return createdAt;
+    }
+
+    public void setCreatedAt(LocalDateTime createdAt) {
+        this.createdAt = createdAt;
+    }
+
+    @Override
+    public String toString() {
+        return "SnippetComment{" +
+                "id=" + id +
+                ", snippetId=" + snippetId +
+                ", createdAt=" + createdAt +
+                '}';
+    }
+}
@@ -1,9 +1,46 @@
 package com.biye_daalt.code_management_service.repository;
 
+import com.biye_daalt.code_management_service.dto.CodeSnippetSummary;
 import com.biye_daalt.code_management_service.model.CodeSnippet;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.time.LocalDateTime;
+import java.util.List;
+
 @Repository
 public interface CodeSnippetRepository extends JpaRepository<CodeSnippet, Long> {
+
+    // Newest first. Both queries walk idx_code_snippets_created_at_id and select no TEXT columns.
+
+    @Query("""
+            select new com.biye_daalt.code_management_service.dto.CodeSnippetSummary(
+                s.id, s.name, s.language, s.createdAt,
+                (select count(c) from SnippetComment c where c.snippetId = s.id))
+            from CodeSnippet s
+            order by s.createdAt desc, s.id desc
+            """)
+    List<CodeSnippetSummary> findSummaries(Limit limit);
+
+    /**
+     * The page after the snippet at ({@code createdAt}, {@code id}), i.e. the
+     * keyset continuation of {@link #findSummaries(Limit)}. The leading
+     * {@code <=} gives SQLite a range on the index to start the scan from.
+     */
+    @Query("""
+            select new com.biye_daalt.code_management_service.dto.CodeSnippetSummary(
+                s.id, s.name, s.language, s.createdAt,
+                (select count(c) from SnippetComment c where c.snippetId = s.id))
+            from CodeSnippet s
+            where s.createdAt <= :createdAt and (s.createdAt < :createdAt or s.id < :id)
+            order by s.createdAt desc, s.id desc
+            """)
+    List<CodeSnippetSummary> findSummariesAfter(
+            @Param("createdAt") LocalDateTime createdAt,
+            @Param("id") Long id,
+            Limit limit
+    );
 }
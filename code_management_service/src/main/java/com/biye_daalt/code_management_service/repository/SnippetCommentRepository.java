@@ -0,0 +1,23 @@
+package com.biye_daalt.code_management_service.repository;
+
+import com.biye_daalt.code_management_service.model.SnippetComment;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+
+@Repository
+public interface SnippetCommentRepository extends JpaRepository<SnippetComment, Long> {
+
+    // Oldest first; ids only grow, so "after id" is the keyset continuation
+
+    List<SnippetComment> findBySnippetIdAndIdGreaterThanOrderByIdAsc(Long snippetId, Long afterId, Limit limit);
+
+    @Modifying
+    @Query("delete from SnippetComment c where c.snippetId = :snippetId")
+    int deleteBySnippetId(@Param("snippetId") Long snippetId);
+}
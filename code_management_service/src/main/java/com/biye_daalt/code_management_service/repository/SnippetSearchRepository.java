@@ -0,0 +1,77 @@
+package com.biye_daalt.code_management_service.repository;
+
+import com.biye_daalt.code_management_service.dto.CodeSnippetSummary;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.nio.charset.StandardCharsets;
+import java.util.HexFormat;
+import java.util.List;
+
+/**
+ * Queries the FTS5 index {@code code_snippets_fts} (see
+ * {@link com.biye_daalt.code_management_service.service.SnippetSearchIndex}),
+ * which JPA cannot map.
+ */
+@Repository
+public class SnippetSearchRepository {
+
+    // Only the page is taken from the index before the join, ordered by the
+    // table's rank setting (bm25, see SnippetSearchIndex) and then by id
+    private static final String SEARCH = """
+            with hits as (
+                select rowid as id, rank
+                from code_snippets_fts
+                where code_snippets_fts match ?
+                order by rank, rowid
+                limit ? offset ?
+            )
+            select s.id, s.name, s.language, s.created_at,
+                   (select count(*) from snippet_comments c where c.snippet_id = s.id) as comment_count
+            from hits
+            join code_snippets s on s.id = hits.id
+            order by hits.rank, hits.id
+            """;
+
+    private final JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    public SnippetSearchRepository(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    /**
+     * @param matchExpression an FTS5 query, e.g. {@code "two" "sum"*}; it is
+     *                        matched against name, problem text and solution
+     * @param language only snippets in this language, or null for all
+     * @return summaries, best match first
+     */
+    public List<CodeSnippetSummary> search(String matchExpression, String language, int limit, long offset) {
+        String query = "{name problem_markdown solution} : (" + matchExpression + ")";
+        if (language != null) {
+            query += " AND language_key : \"" + languageKey(language) + "\"";
+        }
+        return jdbcTemplate.query(
+                SEARCH,
+                (rs, rowNum) -> new CodeSnippetSummary(
+                        rs.getLong("id"),
+                        rs.getString("name"),
+                        rs.getString("language"),
+                        rs.getTimestamp("created_at").toLocalDateTime(),
+                        rs.getLong("comment_count")
+                ),
+                query,
+                limit,
+                offset
+        );
+    }
+
+    /**
+     * @return the language as indexed: SQLite's {@code hex()} of its UTF-8 bytes,
+     * one token that matches only exactly this language
+     */
+    private static String languageKey(String language) {
+        return HexFormat.of().withUpperCase().formatHex(language.getBytes(StandardCharsets.UTF_8));
+    }
+}
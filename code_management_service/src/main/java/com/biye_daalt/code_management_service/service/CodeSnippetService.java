@@ -1,77 +1,272 @@
 package com.biye_daalt.code_management_service.service;
 
+import com.biye_daalt.code_management_service.dto.CodeSnippetPage;
+import com.biye_daalt.code_management_service.dto.CodeSnippetSummary;
+import com.biye_daalt.code_management_service.dto.SnippetCommentPage;
 import com.biye_daalt.code_management_service.model.CodeSnippet;
+import com.biye_daalt.code_management_service.model.SnippetComment;
 import com.biye_daalt.code_management_service.repository.CodeSnippetRepository;
-import jakarta.transaction.Transactional;
+import com.biye_daalt.code_management_service.repository.SnippetCommentRepository;
+import com.biye_daalt.code_management_service.repository.SnippetSearchRepository;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Limit;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.Base64;
 import java.util.List;
 import java.util.Optional;
+import java.util.function.Predicate;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 @Service
 public class CodeSnippetService {
+    private static final String CURSOR_SEPARATOR = "|";
+    // What the unicode61 tokenizer treats as word characters
+    private static final Pattern SEARCH_WORD = Pattern.compile("[\\p{L}\\p{N}]+");
+
     private final CodeSnippetRepository codeSnippetRepository;
+    private final SnippetCommentRepository snippetCommentRepository;
+    private final SnippetCache snippetCache;
+    private final SingleWriterQueue singleWriterQueue;
+    private final SnippetSearchRepository snippetSearchRepository;
 
     @Autowired
-    public CodeSnippetService(CodeSnippetRepository repository) {
+    public CodeSnippetService(
+            CodeSnippetRepository repository,
+            SnippetCommentRepository commentRepository,
+            SnippetCache snippetCache,
+            SingleWriterQueue singleWriterQueue,
+            SnippetSearchRepository searchRepository
+    ) {
         this.codeSnippetRepository = repository;
+        this.snippetCommentRepository = commentRepository;
+        this.snippetCache = snippetCache;
+        this.singleWriterQueue = singleWriterQueue;
+        this.snippetSearchRepository = searchRepository;
     }
 
-    public List<CodeSnippet> getAllCodeSnippets() {
-        return codeSnippetRepository.findAll();
+    /**
+     * Lists snippet summaries newest first, {@code limit} at a time. The cursor
+     * is the position of the last snippet of the previous page, so pages stay
+     * cheap however deep they go and do not shift when snippets are added.
+     *
+     * @param cursor {@link CodeSnippetPage#getNextCursor()} of the previous page, or null for the first page
+     * @throws IllegalArgumentException if the cursor is malformed
+     */
+    @Transactional(readOnly = true)
+    public CodeSnippetPage getCodeSnippetSummaries(String cursor, int limit) {
+        // One extra row tells whether there is a next page
+        Limit fetchLimit = Limit.of(limit + 1);
+        List<CodeSnippetSummary> summaries;
+        if (cursor == null || cursor.isBlank()) {
+            summaries = codeSnippetRepository.findSummaries(fetchLimit);
+        } else {
+            String[] position = decodeCursor(cursor);
+            summaries = codeSnippetRepository.findSummariesAfter(
+                    LocalDateTime.parse(position[0]),
+                    Long.valueOf(position[1]),
+                    fetchLimit
+            );
+        }
+
+        if (summaries.size() <= limit) {
+            return new CodeSnippetPage(summaries, null);
+        }
+        List<CodeSnippetSummary> page = new ArrayList<>(summaries.subList(0, limit));
+        CodeSnippetSummary last = page.get(page.size() - 1);
+        return new CodeSnippetPage(page, encodeCursor(last.getCreatedAt(), last.getId()));
+    }
+
+    /**
+     * Full-text search over name, problem text and solution, best match first.
+     * Every word of the query must occur; the last one may be the start of a word.
+     * Ranked results have no stable keyset, so the cursor is an offset.
+     *
+     * @param language only snippets in this language, or null for all
+     * @throws IllegalArgumentException if the query has no words or the cursor is malformed
+     */
+    @Transactional(readOnly = true)
+    public CodeSnippetPage searchCodeSnippets(String query, String language, String cursor, int limit) {
+        String matchExpression = toMatchExpression(query);
+        long offset = parseOffset(cursor);
+
+        // One extra row tells whether there is a next page
+        List<CodeSnippetSummary> results = snippetSearchRepository.search(
+                matchExpression,
+                language == null || language.isBlank() ? null : language,
+                limit + 1,
+                offset
+        );
+        if (results.size() <= limit) {
+            return new CodeSnippetPage(results, null);
+        }
+        return new CodeSnippetPage(new ArrayList<>(results.subList(0, limit)), String.valueOf(offset + limit));
     }
 
+    /**
+     * Served from {@link SnippetCache}; the returned snippet must not be modified.
+     */
     public Optional<CodeSnippet> getCodeSnippetById(Long id){
-        return codeSnippetRepository.findById(id);
+        return snippetCache.getOrLoad(id, () -> codeSnippetRepository.findById(id));
     }
 
-    @Transactional
+    // Writes run on the SingleWriterQueue, possibly in one transaction with other callers' writes
+
     public CodeSnippet createCodeSnippet(CodeSnippet snippet) {
-        if (snippet.getComments()==null) {
-            snippet.setComments(new ArrayList<>());
-        }
-        return codeSnippetRepository.save(snippet);
+        // A fresh entity per run: a run rolled back with its batch leaves the id it was given on the entity
+        return singleWriterQueue.execute(() -> {
+            CodeSnippet created = new CodeSnippet(snippet.getName(), snippet.getProblemMarkdown(), snippet.getLanguage());
+            created.setSolution(snippet.getSolution());
+            return codeSnippetRepository.save(created);
+        });
     }
 
-    @Transactional
     public Optional<CodeSnippet> updateCodeSnippet(Long id, CodeSnippet details) {
-        return codeSnippetRepository.findById(id)
+        return updateCodeSnippet(id, details, existing -> true);
+    }
+
+    /**
+     * Updates the snippet only if {@code precondition} holds for it as stored
+     * at the time of the write (e.g. an {@code If-Match} ETag), so that a
+     * concurrent update in between is never silently overwritten.
+     *
+     * @throws ObjectOptimisticLockingFailureException if the precondition does not hold
+     */
+    public Optional<CodeSnippet> updateCodeSnippet(Long id, CodeSnippet details, Predicate<CodeSnippet> precondition) {
+        return singleWriterQueue.execute(() -> codeSnippetRepository.findById(id)
                 .map(existingSnippet -> {
+                    if (!precondition.test(existingSnippet)) {
+                        throw new ObjectOptimisticLockingFailureException(CodeSnippet.class, id);
+                    }
                     existingSnippet.setName(details.getName());
                     existingSnippet.setProblemMarkdown(details.getProblemMarkdown());
-                    existingSnippet.setLanguage(details.getSolution());
+                    existingSnippet.setSolution(details.getSolution());
                     existingSnippet.setLanguage(details.getLanguage());
 
+                    snippetCache.invalidateAfterCommit(id);
                     return codeSnippetRepository.save(existingSnippet);
-                });
+                }));
     }
 
-    @Transactional
     public boolean deleteCodeSnippet(Long id) {
-        if (codeSnippetRepository.existsById(id)) {
-            codeSnippetRepository.deleteById(id);
+        return singleWriterQueue.execute(() -> {
+            if (codeSnippetRepository.existsById(id)) {
+                snippetCommentRepository.deleteBySnippetId(id);
+                codeSnippetRepository.deleteById(id);
+                snippetCache.invalidateAfterCommit(id);
+                return true;
+            }
+            return false;
+        });
+    }
+
+    /**
+     * Lists a snippet's comments oldest first, {@code limit} at a time.
+     *
+     * @param afterId {@link SnippetCommentPage#getNextAfter()} of the previous page, or null for the first page
+     * @return the page, or empty if the snippet does not exist
+     */
+    @Transactional(readOnly = true)
+    public Optional<SnippetCommentPage> getComments(Long snippetId, Long afterId, int limit) {
+        if (!codeSnippetRepository.existsById(snippetId)) {
+            return Optional.empty();
+        }
+        // One extra row tells whether there is a next page
+        List<SnippetComment> comments = snippetCommentRepository.findBySnippetIdAndIdGreaterThanOrderByIdAsc(
+                snippetId,
+                afterId == null ? 0L : afterId,
+                Limit.of(limit + 1)
+        );
+        if (comments.size() <= limit) {
+            return Optional.of(new SnippetCommentPage(comments, null));
+        }
+        List<SnippetComment> page = new ArrayList<>(comments.subList(0, limit));
+        return Optional.of(new SnippetCommentPage(page, page.get(page.size() - 1).getId()));
+    }
+
+    /**
+     * Appends a comment with a single INSERT; the snippet is only checked for
+     * existence, never loaded.
+     *
+     * @return the stored comment, or empty if the snippet does not exist
+     */
+    public Optional<SnippetComment> addCommentToSnippet(Long snippetId, String comment){
+        return singleWriterQueue.execute(() -> {
+            if (!codeSnippetRepository.existsById(snippetId)) {
+                return Optional.empty();
+            }
+            return Optional.of(snippetCommentRepository.save(new SnippetComment(snippetId, comment)));
+        });
+    }
+
+    /**
+     * @return false if the snippet does not exist
+     */
+    public boolean clearCommentsFromSnippet(Long snippetId) {
+        return singleWriterQueue.execute(() -> {
+            if (!codeSnippetRepository.existsById(snippetId)) {
+                return false;
+            }
+            snippetCommentRepository.deleteBySnippetId(snippetId);
             return true;
+        });
+    }
+
+    /**
+     * Turns free text into an FTS5 query: each word quoted (so nothing the user
+     * types is taken as query syntax) and all of them required. Only the last
+     * word, which may still be being typed, matches as a prefix; prefixes of
+     * every word would match, and rank, far more rows.
+     */
+    static String toMatchExpression(String query) {
+        List<String> words = new ArrayList<>();
+        Matcher matcher = SEARCH_WORD.matcher(query == null ? "" : query);
+        while (matcher.find()) {
+            words.add("\"" + matcher.group() + "\"");
+        }
+        if (words.isEmpty()) {
+            throw new IllegalArgumentException("Search query has no words");
         }
-        return false;
+        return String.join(" ", words) + "*";
     }
 
-    @Transactional
-    public Optional<CodeSnippet> addCommentToSnippet(Long snippetId, String comment){
-        return codeSnippetRepository.findById(snippetId)
-                .map(snippet -> {
-                    snippet.getComments().add(comment);
-                    return codeSnippetRepository.save(snippet);
-                });
+    private static long parseOffset(String cursor) {
+        if (cursor == null || cursor.isBlank()) {
+            return 0;
+        }
+        try {
+            long offset = Long.parseLong(cursor);
+            if (offset >= 0) {
+                return offset;
+            }
+        } catch (NumberFormatException e) {
+            // Reported below
+        }
+        throw new IllegalArgumentException("Invalid cursor: " + cursor);
     }
 
-    @Transactional
-    public Optional<CodeSnippet> clearCommentsFromSnippet(Long snippetId) {
-        return codeSnippetRepository.findById(snippetId)
-                .map(snippet -> {
-                    snippet.getComments().clear();
-                    return codeSnippetRepository.save(snippet);
-                });
+    private static String encodeCursor(LocalDateTime createdAt, Long id) {
+        String position = createdAt + CURSOR_SEPARATOR + id;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(position.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String[] decodeCursor(String cursor) {
+        try {
+            String position = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            int separator = position.lastIndexOf(CURSOR_SEPARATOR);
+            String[] parts = {position.substring(0, separator), position.substring(separator + 1)};
+            // Validate both halves here so that a bad cursor is a 400, not a query error
+            LocalDateTime.parse(parts[0]);
+            Long.parseLong(parts[1]);
+            return parts;
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException("Invalid cursor: " + cursor);
+        }
     }
 }
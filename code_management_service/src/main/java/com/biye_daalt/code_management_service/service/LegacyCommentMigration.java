@@ -0,0 +1,57 @@
+package com.biye_daalt.code_management_service.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Moves comments from the old {@code problem_comments} collection table (no
+ * id, no timestamp) into {@code snippet_comments} once, then drops it. The old
+ * comments keep their order and get their snippet's creation time.
+ * <p>
+ * It runs before the web server is started, so the first requests already
+ * see every comment and nobody pages through a half-moved list.
+ */
+@Component
+public class LegacyCommentMigration implements SmartInitializingSingleton {
+
+    private static final Logger logger = LoggerFactory.getLogger(LegacyCommentMigration.class);
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+
+    @Autowired
+    public LegacyCommentMigration(JdbcTemplate jdbcTemplate, TransactionTemplate transactionTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = transactionTemplate;
+    }
+
+    @Override
+    public void afterSingletonsInstantiated() {
+        Integer legacyTables = jdbcTemplate.queryForObject(
+                "select count(*) from sqlite_master where type = 'table' and name = 'problem_comments'",
+                Integer.class
+        );
+        if (legacyTables == null || legacyTables == 0) {
+            return;
+        }
+
+        Integer moved = transactionTemplate.execute(status -> {
+            int rows = jdbcTemplate.update("""
+                    insert into snippet_comments (snippet_id, text, created_at)
+                    select pc.problem_id, pc.comment, s.created_at
+                    from problem_comments pc
+                    join code_snippets s on s.id = pc.problem_id
+                    where pc.comment is not null
+                    order by pc.rowid
+                    """);
+            jdbcTemplate.execute("drop table problem_comments");
+            return rows;
+        });
+        logger.info("Moved {} comments from problem_comments to snippet_comments", moved);
+    }
+}
@@ -0,0 +1,171 @@
+package com.biye_daalt.code_management_service.service;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Supplier;
+
+/**
+ * Runs all database writes on one thread, so that SQLite's single write lock
+ * is never contended and callers never see {@code SQLITE_BUSY}.
+ * <p>
+ * Mutations that queue up while a transaction commits are committed together
+ * in the next one (group commit): under load one fsync covers many writes,
+ * while a lone write is committed right away without waiting for company.
+ * Each caller blocks until its own write is committed. If a mutation fails,
+ * the batch is rolled back and its mutations are retried one per transaction,
+ * so a failure only reaches the caller that caused it. A mutation may
+ * therefore run more than once and must start from scratch every time: it
+ * builds the entities it saves instead of saving objects handed in by the
+ * caller, which a rolled-back run leaves holding a generated id.
+ */
+@Component
+public class SingleWriterQueue {
+
+    private static final Logger logger = LoggerFactory.getLogger(SingleWriterQueue.class);
+
+    private record Write<T>(Supplier<T> mutation, CompletableFuture<T> result) {
+
+        void complete(Object value) {
+            @SuppressWarnings("unchecked")
+            T typed = (T) value;
+            result.complete(typed);
+        }
+    }
+
+    private final BlockingQueue<Write<?>> queue;
+    private final TransactionTemplate transactionTemplate;
+    private final int maxBatch;
+    private final DistributionSummary batchSizes;
+    private final Thread writer;
+
+    @Autowired
+    public SingleWriterQueue(
+            PlatformTransactionManager transactionManager,
+            MeterRegistry meterRegistry,
+            @Value("${storage.write-queue.capacity:1000}") int capacity,
+            @Value("${storage.write-queue.max-batch:64}") int maxBatch
+    ) {
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.maxBatch = maxBatch;
+        this.batchSizes = DistributionSummary.builder("storage.write.batch.size")
+                .description("Mutations committed per write transaction")
+                .register(meterRegistry);
+        meterRegistry.gaugeCollectionSize("storage.write.queue.size", Tags.empty(), queue);
+
+        this.writer = new Thread(this::writeLoop, "sqlite-writer");
+        this.writer.setDaemon(true);
+        this.writer.start();
+        logger.info("Single writer started with queue capacity {} and batches of up to {}", capacity, maxBatch);
+    }
+
+    /**
+     * Queues the mutation and waits until it is committed. The mutation runs
+     * inside a transaction shared with other callers' mutations; it must not
+     * start its own. If the shared transaction fails it is run again on its
+     * own, so it must not depend on state left by an earlier run. Blocks while
+     * the queue is full.
+     *
+     * @return the mutation's result
+     */
+    public <T> T execute(Supplier<T> mutation) {
+        if (Thread.currentThread() == writer) {
+            // Called from inside another mutation: already in the write transaction
+            return mutation.get();
+        }
+        CompletableFuture<T> result = new CompletableFuture<>();
+        try {
+            queue.put(new Write<>(mutation, result));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while queueing a write", e);
+        }
+        try {
+            return result.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
+    private void writeLoop() {
+        List<Write<?>> batch = new ArrayList<>(maxBatch);
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                batch.add(queue.take());
+            } catch (InterruptedException e) {
+                break;
+            }
+            // Whatever queued up meanwhile joins the batch; no waiting for more
+            queue.drainTo(batch, maxBatch - 1);
+            try {
+                commit(batch);
+            } catch (Throwable t) {
+                // Keep the writer alive; nobody may be left waiting on a write that will never happen
+                logger.error("Write batch failed unexpectedly: {}", t.getMessage(), t);
+                batch.forEach(write -> write.result().completeExceptionally(t));
+            }
+            batch.clear();
+        }
+
+        List<Write<?>> abandoned = new ArrayList<>();
+        queue.drainTo(abandoned);
+        abandoned.forEach(write -> write.result().completeExceptionally(
+                new IllegalStateException("Shutting down, write was not executed")
+        ));
+    }
+
+    private void commit(List<Write<?>> batch) {
+        batchSizes.record(batch.size());
+        List<Object> results = new ArrayList<>(batch.size());
+        try {
+            transactionTemplate.executeWithoutResult(status -> {
+                for (Write<?> write : batch) {
+                    results.add(write.mutation().get());
+                }
+            });
+        } catch (RuntimeException e) {
+            if (batch.size() == 1) {
+                batch.get(0).result().completeExceptionally(e);
+                return;
+            }
+            logger.debug("Write batch of {} failed, retrying one by one: {}", batch.size(), e.getMessage());
+            batch.forEach(this::commitAlone);
+            return;
+        }
+        for (int i = 0; i < batch.size(); i++) {
+            batch.get(i).complete(results.get(i));
+        }
+    }
+
+    private void commitAlone(Write<?> write) {
+        try {
+            write.complete(transactionTemplate.execute(status -> write.mutation().get()));
+        } catch (RuntimeException e) {
+            write.result().completeExceptionally(e);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        writer.interrupt();
+    }
+}
@@ -0,0 +1,151 @@
+package com.biye_daalt.code_management_service.service;
+
+import com.biye_daalt.code_management_service.model.CodeSnippet;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Read-through cache of snippets by id, so that popular problems are served
+ * from memory. Concurrent misses for the same id share one query.
+ * <p>
+ * Writers invalidate the id once their transaction has committed. A load
+ * that started before any invalidation is returned but not stored, so an
+ * older row can never replace a newer one. Entries are evicted
+ * least-recently-used beyond {@code snippets.cache.max-entries} and expire
+ * after {@code snippets.cache.ttl-seconds}, which also bounds how long other
+ * instances' writes stay invisible.
+ */
+@Component
+public class SnippetCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(SnippetCache.class);
+
+    private record Entry(CodeSnippet snippet, long expiresAtMillis) {
+    }
+
+    private final boolean enabled;
+    private final long ttlMillis;
+    private final MeterRegistry meterRegistry;
+
+    private final Map<Long, Entry> entries;
+    private final Map<Long, CompletableFuture<Optional<CodeSnippet>>> inFlight = new ConcurrentHashMap<>();
+    private final AtomicLong invalidations = new AtomicLong();
+
+    @Autowired
+    public SnippetCache(
+            MeterRegistry meterRegistry,
+            @Value("${snippets.cache.enabled:true}") boolean enabled,
+            @Value("${snippets.cache.max-entries:500}") int maxEntries,
+            @Value("${snippets.cache.ttl-seconds:600}") long ttlSeconds
+    ) {
+        this.meterRegistry = meterRegistry;
+        this.enabled = enabled;
+        this.ttlMillis = TimeUnit.SECONDS.toMillis(ttlSeconds);
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, Entry> eldest) {
+                return size() > maxEntries;
+            }
+        };
+        meterRegistry.gaugeMapSize("snippets.cache.size", Tags.empty(), entries);
+        logger.info("Snippet cache {}", enabled ? "enabled" : "disabled");
+    }
+
+    /**
+     * Returns the cached snippet, joins a load of the same id that is already
+     * running, or loads it. Missing snippets are not cached.
+     * <p>
+     * Cached snippets are shared between requests and must not be modified.
+     */
+    public Optional<CodeSnippet> getOrLoad(Long id, Supplier<Optional<CodeSnippet>> loader) {
+        if (!enabled) {
+            return loader.get();
+        }
+
+        CodeSnippet cached = lookup(id);
+        if (cached != null) {
+            meterRegistry.counter("snippets.cache.requests", "result", "hit").increment();
+            return Optional.of(cached);
+        }
+
+        CompletableFuture<Optional<CodeSnippet>> ownFuture = new CompletableFuture<>();
+        CompletableFuture<Optional<CodeSnippet>> running = inFlight.putIfAbsent(id, ownFuture);
+        if (running != null) {
+            meterRegistry.counter("snippets.cache.requests", "result", "coalesced").increment();
+            return running.join();
+        }
+
+        meterRegistry.counter("snippets.cache.requests", "result", "miss").increment();
+        long invalidationsBefore = invalidations.get();
+        try {
+            Optional<CodeSnippet> snippet = loader.get();
+            snippet.ifPresent(loaded -> store(id, loaded, invalidationsBefore));
+            ownFuture.complete(snippet);
+            return snippet;
+        } catch (RuntimeException e) {
+            ownFuture.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(id, ownFuture);
+        }
+    }
+
+    /**
+     * Drops the snippet once the current transaction commits (right away
+     * outside of one), so that readers never reload the row before the write
+     * is visible.
+     */
+    public void invalidateAfterCommit(Long id) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            invalidate(id);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                // Rolled back writes change nothing, but dropping the entry is always safe
+                invalidate(id);
+            }
+        });
+    }
+
+    private synchronized void invalidate(Long id) {
+        invalidations.incrementAndGet();
+        entries.remove(id);
+    }
+
+    private synchronized CodeSnippet lookup(Long id) {
+        Entry entry = entries.get(id);
+        if (entry == null) {
+            return null;
+        }
+        if (entry.expiresAtMillis() < System.currentTimeMillis()) {
+            entries.remove(id);
+            return null;
+        }
+        return entry.snippet();
+    }
+
+    private synchronized void store(Long id, CodeSnippet snippet, long invalidationsBefore) {
+        // Any write since the load started may have made this copy stale
+        if (invalidations.get() == invalidationsBefore) {
+            entries.put(id, new Entry(snippet, System.currentTimeMillis() + ttlMillis));
+        }
+    }
+}
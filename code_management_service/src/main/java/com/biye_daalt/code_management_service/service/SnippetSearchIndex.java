@@ -0,0 +1,125 @@
+package com.biye_daalt.code_management_service.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.List;
+
+/**
+ * Sets up {@code code_snippets_fts}, the FTS5 index behind
+ * {@code GET /code-snippets/search}. It is an external-content table: it
+ * stores only the index and reads name, problem text and solution from
+ * {@code code_snippets} (through the view {@code code_snippets_fts_content}).
+ * Triggers update it in the same transaction as every insert, update and
+ * delete of a snippet, so it never needs a full rebuild except when it is
+ * first created over existing rows.
+ * <p>
+ * The language is indexed too, as a single token (the hex of its UTF-8
+ * bytes), so that the language filter is part of the full-text query and
+ * only matching snippets of that language are ever ranked. The ranking
+ * (bm25 weights per column) is stored in the table's {@code rank} setting.
+ * <p>
+ * The setup runs once every singleton (Hibernate's schema included) exists
+ * but before the web server is started, so no request ever writes a snippet
+ * while the triggers are missing or searches a table still being rebuilt.
+ */
+@Component
+public class SnippetSearchIndex implements SmartInitializingSingleton {
+
+    private static final Logger logger = LoggerFactory.getLogger(SnippetSearchIndex.class);
+
+    static final String TABLE = "code_snippets_fts";
+
+    // Only the language column was added after the index first shipped; older tables are rebuilt
+    private static final String LANGUAGE_COLUMN = "language_key";
+
+    private static final String CONTENT_VIEW = """
+            create view if not exists code_snippets_fts_content as
+            select id, name, problem_markdown, solution, hex(language) as language_key
+            from code_snippets
+            """;
+
+    // A hit in the name counts most, in the solution least; the language key never ranks
+    private static final String RANKING = "bm25(10.0, 3.0, 1.0, 0.0)";
+
+    private static final List<String> TRIGGERS = List.of(
+            """
+            create trigger code_snippets_fts_insert after insert on code_snippets begin
+                insert into code_snippets_fts (rowid, name, problem_markdown, solution, language_key)
+                values (new.id, new.name, new.problem_markdown, new.solution, hex(new.language));
+            end
+            """,
+            // External-content tables are updated by deleting the old values and inserting the new ones
+            """
+            create trigger code_snippets_fts_delete after delete on code_snippets begin
+                insert into code_snippets_fts (code_snippets_fts, rowid, name, problem_markdown, solution, language_key)
+                values ('delete', old.id, old.name, old.problem_markdown, old.solution, hex(old.language));
+            end
+            """,
+            """
+            create trigger code_snippets_fts_update
+            after update of name, problem_markdown, solution, language on code_snippets begin
+                insert into code_snippets_fts (code_snippets_fts, rowid, name, problem_markdown, solution, language_key)
+                values ('delete', old.id, old.name, old.problem_markdown, old.solution, hex(old.language));
+                insert into code_snippets_fts (rowid, name, problem_markdown, solution, language_key)
+                values (new.id, new.name, new.problem_markdown, new.solution, hex(new.language));
+            end
+            """
+    );
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+
+    @Autowired
+    public SnippetSearchIndex(JdbcTemplate jdbcTemplate, TransactionTemplate transactionTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = transactionTemplate;
+    }
+
+    @Override
+    public void afterSingletonsInstantiated() {
+        transactionTemplate.executeWithoutResult(status -> {
+            Integer existing = jdbcTemplate.queryForObject(
+                    "select count(*) from sqlite_master where type = 'table' and name = ?",
+                    Integer.class,
+                    TABLE
+            );
+            Integer current = jdbcTemplate.queryForObject(
+                    "select count(*) from pragma_table_info(?) where name = ?",
+                    Integer.class,
+                    TABLE,
+                    LANGUAGE_COLUMN
+            );
+            boolean outdated = existing != null && existing > 0 && (current == null || current == 0);
+            if (outdated) {
+                jdbcTemplate.execute("drop table " + TABLE);
+            }
+            // Triggers are on code_snippets and outlive the table; recreated, they always match it
+            for (String action : List.of("insert", "delete", "update")) {
+                jdbcTemplate.execute("drop trigger if exists " + TABLE + "_" + action);
+            }
+
+            jdbcTemplate.execute(CONTENT_VIEW);
+            // unicode61 folds case (Cyrillic included); prefix indexes keep search-as-you-type fast
+            jdbcTemplate.execute("""
+                    create virtual table if not exists code_snippets_fts using fts5(
+                        name, problem_markdown, solution, language_key,
+                        content = 'code_snippets_fts_content', content_rowid = 'id',
+                        tokenize = 'unicode61 remove_diacritics 2', prefix = '2 3'
+                    )
+                    """);
+            TRIGGERS.forEach(jdbcTemplate::execute);
+
+            if (existing == null || existing == 0 || outdated) {
+                jdbcTemplate.update("insert into code_snippets_fts (code_snippets_fts, rank) values ('rank', ?)", RANKING);
+                jdbcTemplate.execute("insert into code_snippets_fts (code_snippets_fts) values ('rebuild')");
+                logger.info("Created search index {} over existing snippets", TABLE);
+            }
+        });
+    }
+}
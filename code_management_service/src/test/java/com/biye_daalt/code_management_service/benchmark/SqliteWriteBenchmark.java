@@ -0,0 +1,186 @@
+package com.biye_daalt.code_management_service.benchmark;
+
+import com.biye_daalt.code_management_service.config.StorageConfig;
+import com.biye_daalt.code_management_service.service.SingleWriterQueue;
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.sqlite.SQLiteConfig;
+import org.sqlite.SQLiteDataSource;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Write throughput of the old and new SQLite setups: concurrent clients each
+ * adding comments, one INSERT per request. Not part of the test suite; run
+ * {@link #main} from the IDE, or after {@code mvn test-compile} with
+ * <pre>
+ * mvn dependency:build-classpath -Dmdep.outputFile=cp.txt
+ * java -cp target/test-classes:target/classes:$(cat cp.txt) \
+ *     com.biye_daalt.code_management_service.benchmark.SqliteWriteBenchmark [clients] [writes per client]
+ * </pre>
+ * Each setup writes to a fresh database in the temp directory; put that on a
+ * real disk ({@code -Djava.io.tmpdir}) to see the cost of fsync.
+ */
+public class SqliteWriteBenchmark {
+
+    private static final String INSERT =
+            "insert into snippet_comments (snippet_id, text, created_at) values (?, ?, ?)";
+
+    public static void main(String[] args) throws Exception {
+        int clients = args.length > 0 ? Integer.parseInt(args[0]) : 16;
+        int writesPerClient = args.length > 1 ? Integer.parseInt(args[1]) : 200;
+        System.out.printf("%d clients x %d writes%n%n", clients, writesPerClient);
+
+        // Before: default pragmas (rollback journal, synchronous=FULL), a pool of connections
+        // and one transaction per write, as with spring.datasource.url alone
+        run("default settings, pooled writers", clients, writesPerClient, url -> {
+            HikariConfig pool = new HikariConfig();
+            pool.setDataSource(dataSource(url, new SQLiteConfig()));
+            pool.setMaximumPoolSize(clients);
+            return new PerTransactionWriter(new HikariDataSource(pool));
+        });
+
+        // WAL and busy timeout alone, still one transaction per write
+        run("WAL, pooled writers", clients, writesPerClient, url -> {
+            SQLiteConfig config = new SQLiteConfig();
+            config.setJournalMode(SQLiteConfig.JournalMode.WAL);
+            config.setSynchronous(SQLiteConfig.SynchronousMode.NORMAL);
+            config.setBusyTimeout(5000);
+            config.setTransactionMode(SQLiteConfig.TransactionMode.IMMEDIATE);
+            HikariConfig pool = new HikariConfig();
+            pool.setDataSource(dataSource(url, config));
+            pool.setMaximumPoolSize(clients);
+            return new PerTransactionWriter(new HikariDataSource(pool));
+        });
+
+        // After: StorageConfig's write connection behind the SingleWriterQueue
+        run("WAL, single writer, group commit", clients, writesPerClient, url -> {
+            HikariDataSource dataSource = new StorageConfig()
+                    .writeDataSource(url, 5000, SQLiteConfig.SynchronousMode.NORMAL);
+            return new QueuedWriter(dataSource);
+        });
+    }
+
+    private interface Writer extends AutoCloseable {
+        void write(long snippetId, String text);
+
+        JdbcTemplate jdbc();
+
+        @Override
+        void close();
+    }
+
+    private interface WriterFactory {
+        Writer open(String url);
+    }
+
+    private record PerTransactionWriter(HikariDataSource dataSource, JdbcTemplate jdbc,
+                                        TransactionTemplate transactions) implements Writer {
+
+        PerTransactionWriter(HikariDataSource dataSource) {
+            this(dataSource, new JdbcTemplate(dataSource),
+                    new TransactionTemplate(new DataSourceTransactionManager(dataSource)));
+        }
+
+        @Override
+        public void write(long snippetId, String text) {
+            transactions.executeWithoutResult(status -> insert(jdbc, snippetId, text));
+        }
+
+        @Override
+        public void close() {
+            dataSource.close();
+        }
+    }
+
+    private record QueuedWriter(HikariDataSource dataSource, JdbcTemplate jdbc,
+                                SingleWriterQueue queue) implements Writer {
+
+        QueuedWriter(HikariDataSource dataSource) {
+            this(dataSource, new JdbcTemplate(dataSource), new SingleWriterQueue(
+                    new DataSourceTransactionManager(dataSource), new SimpleMeterRegistry(), 1000, 64));
+        }
+
+        @Override
+        public void write(long snippetId, String text) {
+            queue.execute(() -> insert(jdbc, snippetId, text));
+        }
+
+        @Override
+        public void close() {
+            queue.shutdown();
+            dataSource.close();
+        }
+    }
+
+    private static int insert(JdbcTemplate jdbc, long snippetId, String text) {
+        return jdbc.update(INSERT, snippetId, text, new Timestamp(System.currentTimeMillis()));
+    }
+
+    private static void run(String name, int clients, int writesPerClient, WriterFactory factory) throws Exception {
+        Path directory = Files.createTempDirectory("sqlite-write-benchmark");
+        String url = "jdbc:sqlite:" + directory.resolve("benchmark.db");
+        AtomicInteger failures = new AtomicInteger();
+
+        try (Writer writer = factory.open(url)) {
+            writer.jdbc().execute("create table if not exists snippet_comments (id integer primary key, " +
+                    "created_at timestamp not null, snippet_id bigint not null, text TEXT not null)");
+
+            ExecutorService threads = Executors.newFixedThreadPool(clients);
+            long startedAt = System.nanoTime();
+            List<Future<?>> running = new ArrayList<>();
+            for (int client = 0; client < clients; client++) {
+                long snippetId = client;
+                running.add(threads.submit(() -> eachWrite(writesPerClient, i -> {
+                    try {
+                        writer.write(snippetId, "comment " + i);
+                    } catch (RuntimeException e) {
+                        // SQLITE_BUSY once the busy timeout is exhausted
+                        failures.incrementAndGet();
+                    }
+                })));
+            }
+            for (Future<?> future : running) {
+                future.get();
+            }
+            double seconds = (System.nanoTime() - startedAt) / 1e9;
+            threads.shutdown();
+
+            Integer stored = writer.jdbc().queryForObject("select count(*) from snippet_comments", Integer.class);
+            System.out.printf("%-34s %8.0f writes/s  %6d stored  %6d failed  (%.1f s)%n",
+                    name, stored / seconds, stored, failures.get(), seconds);
+        } finally {
+            try (var files = Files.list(directory)) {
+                for (Path file : files.toList()) {
+                    Files.deleteIfExists(file);
+                }
+            }
+            Files.deleteIfExists(directory);
+        }
+    }
+
+    private static void eachWrite(int count, Consumer<Integer> write) {
+        for (int i = 0; i < count; i++) {
+            write.accept(i);
+        }
+    }
+
+    private static SQLiteDataSource dataSource(String url, SQLiteConfig config) {
+        SQLiteDataSource dataSource = new SQLiteDataSource(config);
+        dataSource.setUrl(url);
+        return dataSource;
+    }
+}
@@ -0,0 +1,249 @@
+package com.biye_daalt.code_management_service.service;
+
+import com.biye_daalt.code_management_service.config.StorageConfig;
+import com.biye_daalt.code_management_service.dto.CodeSnippetPage;
+import com.biye_daalt.code_management_service.dto.CodeSnippetSummary;
+import com.biye_daalt.code_management_service.dto.SnippetCommentPage;
+import com.biye_daalt.code_management_service.model.CodeSnippet;
+import com.biye_daalt.code_management_service.model.SnippetComment;
+import com.biye_daalt.code_management_service.repository.SnippetSearchRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DataJpaTest
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@TestPropertySource(properties = "spring.datasource.url=jdbc:sqlite:target/code_snippets_test.db")
+@Import({StorageConfig.class, CodeSnippetService.class, SnippetCache.class, SingleWriterQueue.class,
+		SnippetSearchIndex.class, SnippetSearchRepository.class, SimpleMeterRegistry.class})
+// Writes are committed by the writer thread, so the test must not hold a transaction of its own
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class CodeSnippetServiceTests {
+
+	@Autowired
+	private CodeSnippetService codeSnippetService;
+
+	@Autowired
+	private TestEntityManager entityManager;
+
+	@Autowired
+	private JdbcTemplate jdbcTemplate;
+
+	@Autowired
+	private PlatformTransactionManager transactionManager;
+
+	@Autowired
+	private SingleWriterQueue singleWriterQueue;
+
+	@Autowired
+	private MeterRegistry meterRegistry;
+
+	@BeforeEach
+	void setUp() {
+		jdbcTemplate.update("delete from snippet_comments");
+		jdbcTemplate.update("delete from code_snippets");
+	}
+
+	@Test
+	void pagesThroughSnippetsNewestFirstWithoutGapsOrRepeats() {
+		LocalDateTime sameInstant = LocalDateTime.of(2025, 5, 1, 12, 0);
+		for (int i = 0; i < 5; i++) {
+			// Equal timestamps must be ordered by id across page boundaries
+			save("snippet " + i, sameInstant.plusMinutes(i / 2));
+		}
+
+		List<String> names = new ArrayList<>();
+		CodeSnippetPage page = codeSnippetService.getCodeSnippetSummaries(null, 2);
+		int pages = 1;
+		page.getItems().forEach(summary -> names.add(summary.getName()));
+		while (page.getNextCursor() != null) {
+			page = codeSnippetService.getCodeSnippetSummaries(page.getNextCursor(), 2);
+			page.getItems().forEach(summary -> names.add(summary.getName()));
+			pages++;
+		}
+
+		assertEquals(3, pages);
+		assertEquals(List.of("snippet 4", "snippet 3", "snippet 2", "snippet 1", "snippet 0"), names);
+	}
+
+	@Test
+	void summariesCountComments() {
+		CodeSnippet snippet = save("with comments", LocalDateTime.of(2025, 5, 1, 12, 0));
+		codeSnippetService.addCommentToSnippet(snippet.getId(), "first");
+		codeSnippetService.addCommentToSnippet(snippet.getId(), "second");
+
+		CodeSnippetSummary summary = codeSnippetService.getCodeSnippetSummaries(null, 10).getItems().get(0);
+
+		assertEquals(2, summary.getCommentCount());
+		assertEquals("python", summary.getLanguage());
+	}
+
+	@Test
+	void pagesThroughCommentsOldestFirst() {
+		CodeSnippet snippet = save("discussed", LocalDateTime.of(2025, 5, 1, 12, 0));
+		for (int i = 0; i < 3; i++) {
+			codeSnippetService.addCommentToSnippet(snippet.getId(), "comment " + i);
+		}
+
+		SnippetCommentPage first = codeSnippetService.getComments(snippet.getId(), null, 2).orElseThrow();
+		SnippetCommentPage second = codeSnippetService.getComments(snippet.getId(), first.getNextAfter(), 2).orElseThrow();
+
+		assertEquals(List.of("comment 0", "comment 1"), first.getItems().stream().map(SnippetComment::getText).toList());
+		assertEquals(List.of("comment 2"), second.getItems().stream().map(SnippetComment::getText).toList());
+		assertNull(second.getNextAfter());
+		assertTrue(codeSnippetService.addCommentToSnippet(snippet.getId() + 1, "orphan").isEmpty());
+	}
+
+	@Test
+	void createSurvivesABatchRolledBackByAnotherWrite() throws Exception {
+		CountDownLatch writing = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+		CompletableFuture<Object> blocker = CompletableFuture.supplyAsync(() -> singleWriterQueue.execute(() -> {
+			writing.countDown();
+			try {
+				release.await();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			return null;
+		}));
+		assertTrue(writing.await(5, TimeUnit.SECONDS));
+
+		// Queued behind the blocker, so both run in one transaction: the create gets an id, then the batch rolls back
+		CompletableFuture<CodeSnippet> created = CompletableFuture.supplyAsync(
+				() -> codeSnippetService.createCodeSnippet(new CodeSnippet("Innocent", "# Innocent", "python")));
+		awaitQueued(1);
+		CompletableFuture<Object> failing = CompletableFuture.supplyAsync(() -> singleWriterQueue.execute(() -> {
+			throw new IllegalStateException("bad write");
+		}));
+		awaitQueued(2);
+		release.countDown();
+		blocker.get(5, TimeUnit.SECONDS);
+
+		CodeSnippet snippet = created.get(5, TimeUnit.SECONDS);
+		assertThrows(Exception.class, () -> failing.get(5, TimeUnit.SECONDS));
+		assertEquals("Innocent", codeSnippetService.getCodeSnippetById(snippet.getId()).orElseThrow().getName());
+		assertEquals(1, jdbcTemplate.queryForObject("select count(*) from code_snippets", Integer.class));
+	}
+
+	@Test
+	void updateChecksItsPreconditionAgainstTheStoredVersion() {
+		CodeSnippet created = codeSnippetService.createCodeSnippet(new CodeSnippet("Two sum", "Find two numbers", "java"));
+		// Read around the snippet cache: setUp deletes rows behind its back and SQLite reuses their ids
+		long seenVersion = storedVersion(created.getId());
+
+		codeSnippetService.updateCodeSnippet(created.getId(), new CodeSnippet("First", "Find two numbers", "java"),
+				existing -> existing.getVersion() == seenVersion);
+
+		assertThrows(ObjectOptimisticLockingFailureException.class, () -> codeSnippetService.updateCodeSnippet(
+				created.getId(), new CodeSnippet("Second", "Find two numbers", "java"),
+				existing -> existing.getVersion() == seenVersion));
+		assertEquals(seenVersion + 1, storedVersion(created.getId()));
+		assertEquals(List.of(created.getId()), searchIds("first", null));
+	}
+
+	@Test
+	void searchRanksNameMatchesFirstAndFollowsWrites() {
+		CodeSnippet inText = codeSnippetService.createCodeSnippet(
+				new CodeSnippet("Binary search", "Find the pair with the given sum", "java"));
+		CodeSnippet inName = codeSnippetService.createCodeSnippet(
+				new CodeSnippet("Two sum", "Find two numbers", "python"));
+
+		assertEquals(List.of(inName.getId(), inText.getId()), searchIds("sum", null));
+		assertEquals(List.of(inText.getId()), searchIds("SUM", "java"));
+		assertEquals(List.of(inName.getId()), searchIds("two numb", null), "the last word matches as a prefix");
+		assertEquals(List.of(), searchIds("tw numbers", null));
+
+		CodeSnippet renamed = new CodeSnippet("Pair product", "Multiply two numbers", "python");
+		codeSnippetService.updateCodeSnippet(inName.getId(), renamed);
+		codeSnippetService.deleteCodeSnippet(inText.getId());
+
+		assertEquals(List.of(), searchIds("sum", null));
+		assertEquals(List.of(inName.getId()), searchIds("product", null));
+	}
+
+	@Test
+	void searchFiltersByExactLanguageBeforePaging() {
+		CodeSnippet inC = codeSnippetService.createCodeSnippet(new CodeSnippet("Sum in C", "Add numbers", "c"));
+		CodeSnippet inCpp = codeSnippetService.createCodeSnippet(new CodeSnippet("Sum in C++", "Add numbers", "c++"));
+		for (int i = 0; i < 3; i++) {
+			codeSnippetService.createCodeSnippet(new CodeSnippet("Sum " + i, "Add numbers", "python"));
+		}
+
+		assertEquals(List.of(inC.getId()), searchIds("sum", "c"));
+		assertEquals(List.of(inCpp.getId()), searchIds("sum", "c++"));
+		assertEquals(List.of(), searchIds("c", "python"), "the language is not matched as text");
+		CodeSnippetPage page = codeSnippetService.searchCodeSnippets("sum", "c", null, 1);
+		assertEquals(1, page.getItems().size());
+		assertNull(page.getNextCursor());
+
+		codeSnippetService.updateCodeSnippet(inC.getId(), new CodeSnippet("Sum in C", "Add numbers", "c++"));
+
+		assertEquals(List.of(), searchIds("sum", "c"));
+		assertEquals(2, searchIds("sum", "c++").size());
+	}
+
+	@Test
+	void searchQueryIsNeverTakenAsSyntax() {
+		assertEquals("\"two\" \"OR\" \"sum\"*", CodeSnippetService.toMatchExpression("two\" OR sum*"));
+		assertThrows(IllegalArgumentException.class,
+				() -> codeSnippetService.searchCodeSnippets(" -*\"", null, null, 10));
+	}
+
+	@Test
+	void rejectsMalformedCursor() {
+		assertThrows(IllegalArgumentException.class,
+				() -> codeSnippetService.getCodeSnippetSummaries("not-a-cursor", 10));
+	}
+
+	private void awaitQueued(int writes) throws InterruptedException {
+		long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+		while (meterRegistry.get("storage.write.queue.size").gauge().value() < writes) {
+			assertTrue(System.nanoTime() < deadline, "write was not queued");
+			Thread.sleep(1);
+		}
+	}
+
+	private long storedVersion(Long id) {
+		return jdbcTemplate.queryForObject("select version from code_snippets where id = ?", Long.class, id);
+	}
+
+	private List<Long> searchIds(String query, String language) {
+		return codeSnippetService.searchCodeSnippets(query, language, null, 10).getItems().stream()
+				.map(CodeSnippetSummary::getId)
+				.toList();
+	}
+
+	private CodeSnippet save(String name, LocalDateTime createdAt) {
+		CodeSnippet snippet = codeSnippetService.createCodeSnippet(new CodeSnippet(name, "# " + name, "python"));
+		// createdAt is not updatable through the entity, so pin it with a query
+		new TransactionTemplate(transactionManager).executeWithoutResult(status -> entityManager.getEntityManager()
+				.createQuery("update CodeSnippet s set s.createdAt = :createdAt where s.id = :id")
+				.setParameter("createdAt", createdAt)
+				.setParameter("id", snippet.getId())
+				.executeUpdate());
+		return snippet;
+	}
+}
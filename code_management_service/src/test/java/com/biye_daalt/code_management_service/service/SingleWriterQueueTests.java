@@ -0,0 +1,180 @@
+package com.biye_daalt.code_management_service.service;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.SimpleTransactionStatus;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SingleWriterQueueTests {
+
+	/**
+	 * Stands in for the database: rows written in a transaction become visible
+	 * on commit and are dropped on rollback.
+	 */
+	private static final class RecordingTransactionManager implements PlatformTransactionManager {
+
+		final List<String> pending = new ArrayList<>();
+		final List<String> committed = new ArrayList<>();
+		final List<Integer> transactionSizes = new ArrayList<>();
+
+		@Override
+		public TransactionStatus getTransaction(TransactionDefinition definition) {
+			return new SimpleTransactionStatus();
+		}
+
+		@Override
+		public void commit(TransactionStatus status) {
+			transactionSizes.add(pending.size());
+			committed.addAll(pending);
+			pending.clear();
+		}
+
+		@Override
+		public void rollback(TransactionStatus status) {
+			pending.clear();
+		}
+	}
+
+	private final RecordingTransactionManager database = new RecordingTransactionManager();
+	private final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+	private final SingleWriterQueue queue = new SingleWriterQueue(database, meterRegistry, 100, 64);
+	private final CountDownLatch writerReleased = new CountDownLatch(1);
+
+	@AfterEach
+	void tearDown() {
+		writerReleased.countDown();
+		queue.shutdown();
+	}
+
+	@Test
+	void commitsWritesQueuedMeanwhileInOneTransaction() throws Exception {
+		CompletableFuture<String> blocker = holdWriter();
+		List<CompletableFuture<String>> writes = new ArrayList<>();
+		for (int i = 0; i < 3; i++) {
+			writes.add(enqueue(write("row " + i)));
+		}
+
+		writerReleased.countDown();
+
+		assertEquals("blocker", blocker.get(5, TimeUnit.SECONDS));
+		for (int i = 0; i < 3; i++) {
+			assertEquals("row " + i, writes.get(i).get(5, TimeUnit.SECONDS));
+		}
+		assertEquals(List.of(1, 3), database.transactionSizes);
+	}
+
+	@Test
+	void failureOnlyReachesTheWriteThatCausedIt() throws Exception {
+		holdWriter();
+		CompletableFuture<String> before = enqueue(write("before"));
+		CompletableFuture<String> failing = enqueue(() -> {
+			database.pending.add("half-done");
+			throw new IllegalStateException("constraint violated");
+		});
+		CompletableFuture<String> after = enqueue(write("after"));
+
+		writerReleased.countDown();
+
+		assertEquals("before", before.get(5, TimeUnit.SECONDS));
+		assertEquals("after", after.get(5, TimeUnit.SECONDS));
+		Exception e = assertThrows(Exception.class, () -> failing.get(5, TimeUnit.SECONDS));
+		assertInstanceOf(IllegalStateException.class, e.getCause());
+		assertEquals(List.of("blocker", "before", "after"), database.committed,
+				"each write committed once, nothing of the failed one");
+	}
+
+	@Test
+	void commitsWritesInTheOrderTheyWereQueued() throws Exception {
+		holdWriter();
+		List<CompletableFuture<String>> writes = new ArrayList<>();
+		for (int i = 0; i < 10; i++) {
+			writes.add(enqueue(write("row " + i)));
+		}
+
+		writerReleased.countDown();
+		for (CompletableFuture<String> write : writes) {
+			write.get(5, TimeUnit.SECONDS);
+		}
+
+		List<String> expected = new ArrayList<>(List.of("blocker"));
+		for (int i = 0; i < 10; i++) {
+			expected.add("row " + i);
+		}
+		assertEquals(expected, database.committed);
+	}
+
+	@Test
+	void nestedWriteJoinsTheCurrentTransaction() {
+		String result = queue.execute(() -> queue.execute(write("nested")));
+
+		assertEquals("nested", result);
+		assertEquals(List.of(1), database.transactionSizes);
+	}
+
+	private Supplier<String> write(String row) {
+		return () -> {
+			database.pending.add(row);
+			return row;
+		};
+	}
+
+	/**
+	 * Occupies the writer until {@link #writerReleased}, so that the writes
+	 * queued meanwhile go into the next transaction together.
+	 */
+	private CompletableFuture<String> holdWriter() throws InterruptedException {
+		CountDownLatch writing = new CountDownLatch(1);
+		CompletableFuture<String> blocker = CompletableFuture.supplyAsync(() -> queue.execute(() -> {
+			writing.countDown();
+			try {
+				writerReleased.await();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			database.pending.add("blocker");
+			return "blocker";
+		}));
+		assertTrue(writing.await(5, TimeUnit.SECONDS));
+		return blocker;
+	}
+
+	/**
+	 * Queues the write from another thread and waits until it is in the queue,
+	 * so that writes are queued in the order of the calls.
+	 */
+	private CompletableFuture<String> enqueue(Supplier<String> mutation) throws InterruptedException {
+		double queued = queueSize();
+		CompletableFuture<String> result = new CompletableFuture<>();
+		Thread caller = new Thread(() -> {
+			try {
+				result.complete(queue.execute(mutation));
+			} catch (RuntimeException e) {
+				result.completeExceptionally(e);
+			}
+		});
+		caller.start();
+		long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+		while (queueSize() <= queued) {
+			assertTrue(System.nanoTime() < deadline, "write was not queued");
+			Thread.sleep(1);
+		}
+		return result;
+	}
+
+	private double queueSize() {
+		return meterRegistry.get("storage.write.queue.size").gauge().value();
+	}
+}
@@ -0,0 +1,61 @@
+package com.biye_daalt.code_management_service.service;
+
+import com.biye_daalt.code_management_service.model.CodeSnippet;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SnippetCacheTests {
+
+	private final SnippetCache cache = new SnippetCache(new SimpleMeterRegistry(), true, 2, 600);
+
+	@Test
+	void loadsEachSnippetOnceUntilInvalidated() {
+		AtomicInteger loads = new AtomicInteger();
+
+		cache.getOrLoad(1L, () -> load(loads, "v1"));
+		Optional<CodeSnippet> cached = cache.getOrLoad(1L, () -> load(loads, "v2"));
+		cache.invalidateAfterCommit(1L);
+		Optional<CodeSnippet> reloaded = cache.getOrLoad(1L, () -> load(loads, "v3"));
+
+		assertEquals("v1", cached.orElseThrow().getName());
+		assertEquals("v3", reloaded.orElseThrow().getName());
+		assertEquals(2, loads.get());
+	}
+
+	@Test
+	void doesNotStoreLoadThatRacedWithAWrite() {
+		AtomicInteger loads = new AtomicInteger();
+
+		cache.getOrLoad(1L, () -> {
+			// The row is updated while the old version is being read
+			cache.invalidateAfterCommit(1L);
+			return load(loads, "stale");
+		});
+		Optional<CodeSnippet> next = cache.getOrLoad(1L, () -> load(loads, "fresh"));
+
+		assertEquals("fresh", next.orElseThrow().getName());
+	}
+
+	@Test
+	void evictsLeastRecentlyUsed() {
+		AtomicInteger loads = new AtomicInteger();
+
+		cache.getOrLoad(1L, () -> load(loads, "one"));
+		cache.getOrLoad(2L, () -> load(loads, "two"));
+		cache.getOrLoad(1L, () -> load(loads, "one"));
+		cache.getOrLoad(3L, () -> load(loads, "three"));
+		cache.getOrLoad(2L, () -> load(loads, "two"));
+
+		assertEquals(4, loads.get(), "2 was the least recently used when 3 came in");
+	}
+
+	private static Optional<CodeSnippet> load(AtomicInteger loads, String name) {
+		loads.incrementAndGet();
+		return Optional.of(new CodeSnippet(name, "# " + name, "python"));
+	}
+}
@@ -1,11 +1,11 @@
 import { useCallback } from "react";
 import { Link, useFetcher, useSubmit } from "react-router";
-import type { CodeSnippet } from "~/types/CodeSnippetTypes";
+import type { CodeSnippetSummary } from "~/types/CodeSnippetTypes";
 import { Button } from "./ui/button";
 import { Trash } from "lucide-react";
 
 interface SnippetCardProps {
-  snippet: CodeSnippet;
+  snippet: CodeSnippetSummary;
 }
 
 export function SnippetCard({ snippet }: SnippetCardProps) {
@@ -29,10 +29,6 @@ export function SnippetCard({ snippet }: SnippetCardProps) {
     },
   );
 
-  const markdownPreview =
-    snippet.problemMarkdown.substring(0, 100) +
-    (snippet.problemMarkdown.length > 100 ? "..." : "");
-
   return (
     <Link
       to={`/${snippet.id}`}
@@ -54,20 +50,13 @@ export function SnippetCard({ snippet }: SnippetCardProps) {
         </span>
       </div>
 
-      <p
-        className="text-sm text-gray-700 mb-4 flex-grow"
-        title={snippet.problemMarkdown}
-      >
-        {markdownPreview}
-      </p>
-
       <div className="border-t border-gray-200 pt-3 mt-auto">
         {" "}
         <div className="flex justify-between items-center text-xs text-gray-500">
           <span>
             Comments:{" "}
             <span className="font-semibold text-gray-700">
-              {snippet.comments?.length || 0}
+              {snippet.commentCount}
             </span>
           </span>
           <span className="font-medium text-gray-600">{formattedDate}</span>
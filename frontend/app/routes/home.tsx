@@ -1,10 +1,9 @@
 import { fetchApi } from "~/utils/fetchData";
 import type { Route } from "./+types/home";
 import { SnippetCard } from "~/components/SnippetCard";
-import { useCallback, useMemo, useState } from "react";
-import { useLoaderData } from "react-router";
+import { Form, useLoaderData } from "react-router";
 import { Link } from "react-router";
-import type { CodeSnippet } from "~/types/CodeSnippetTypes";
+import type { CodeSnippetPage, CodeSnippetSummary } from "~/types/CodeSnippetTypes";
 import { CODE_SNIPPETS } from "~/constants/api-reqests";
 import { useSubmit } from "react-router";
 
@@ -16,18 +15,29 @@ export function meta({}: Route.MetaArgs) {
 }
 
 interface LoaderData {
-  snippets: CodeSnippet[];
+  snippets: CodeSnippetSummary[];
+  query?: string;
+  nextCursor?: string | null;
   error?: string;
 }
 
-export async function loader({}: Route.LoaderArgs): Promise<LoaderData> {
+export async function loader({ request }: Route.LoaderArgs): Promise<LoaderData> {
   try {
-    const result = await fetchApi<CodeSnippet[] | { error: string }>(
-      CODE_SNIPPETS,
+    // Both the listing and the search are paginated; ?cursor= comes from the previous page's "next" link
+    const searchParams = new URL(request.url).searchParams;
+    const query = searchParams.get("q")?.trim() || "";
+    const params = new URLSearchParams();
+    if (query) params.set("q", query);
+    const cursor = searchParams.get("cursor");
+    if (cursor) params.set("cursor", cursor);
+
+    const route = query ? `${CODE_SNIPPETS}/search` : CODE_SNIPPETS;
+    const result = await fetchApi<CodeSnippetPage | { error: string }>(
+      params.size > 0 ? `${route}?${params}` : route,
     );
 
-    if (result && Array.isArray(result)) {
-      return { snippets: result };
+    if (result && "items" in result) {
+      return { snippets: result.items, query, nextCursor: result.nextCursor };
     } else if (result && "error" in result) {
       console.error("Error fetching snippets:", result.error);
       return { snippets: [], error: String(result.error) };
@@ -44,23 +54,7 @@ export async function loader({}: Route.LoaderArgs): Promise<LoaderData> {
 }
 
 export default function Home() {
-  const { snippets, error } = useLoaderData<typeof loader>();
-  const [searchTerm, setSearchTerm] = useState("");
-
-  const filteredSnippets = useMemo(() => {
-    if (!snippets) return [];
-    if (!searchTerm.trim()) {
-      return snippets;
-    }
-    const lowerSearchTerm = searchTerm.toLowerCase();
-    return snippets.filter(
-      (snippet) =>
-        snippet.name.toLowerCase().includes(lowerSearchTerm) ||
-        snippet.problemMarkdown.toLowerCase().includes(lowerSearchTerm) ||
-        (typeof snippet.language === "string" &&
-          snippet.language.toLowerCase().includes(lowerSearchTerm)),
-    );
-  }, [snippets, searchTerm]);
+  const { snippets, query, nextCursor, error } = useLoaderData<typeof loader>();
 
   if (error) {
     return (
@@ -87,33 +81,45 @@ export default function Home() {
         <h1 className="text-4xl font-bold text-gray-800 mb-6">
           Кодын хэсгүүд {/* Code Snippets */}
         </h1>
-        <div className="max-w-xl mx-auto">
+        <Form method="get" className="max-w-xl mx-auto">
           <input
-            type="text"
-            placeholder="Кодын хэсгүүдийг нэр, агуулга, эсвэл хэлээр нь хайх..."
-            value={searchTerm}
-            onChange={(e) => setSearchTerm(e.target.value)}
+            type="search"
+            name="q"
+            placeholder="Кодын хэсгүүдийг нэр, агуулга, эсвэл кодоор нь хайх..."
+            defaultValue={query}
+            key={query}
             className="w-full px-4 text-black py-3 border border-gray-300 rounded-full shadow-sm focus:ring-2 focus:ring-blue-500 focus:border-blue-500 outline-none transition-shadow"
             aria-label="Кодын хэсгүүд хайх"
           />
-        </div>
+        </Form>
       </header>
 
-      {filteredSnippets.length > 0 ? (
+      {snippets.length > 0 ? (
         <div className="grid grid-cols-1 md:grid-cols-2 lg:grid-cols-3 gap-6">
-          {filteredSnippets.map((snippet) => (
+          {snippets.map((snippet) => (
             <SnippetCard key={snippet.id} snippet={snippet} />
           ))}
         </div>
       ) : (
         <div className="text-center text-gray-500 py-10 text-xl">
-          {searchTerm
+          {query
             ? "Таны хайлтад тохирох кодын хэсэг олдсонгүй."
             : "Одоогоор кодын хэсэг алга байна. Та хамгийн түрүүнд нэмээрэй!"
             }
         </div>
       )}
 
+      {nextCursor && (
+        <div className="text-center mt-8">
+          <Link
+            className="text-blue-600 hover:text-blue-700 font-semibold"
+            to={`/?${new URLSearchParams({ ...(query ? { q: query } : {}), cursor: nextCursor })}`}
+          >
+            Дараагийн хуудас {/* Next page */}
+          </Link>
+        </div>
+      )}
+
       <Link className="fixed bottom-10 right-10" to='/create'>
         <button className="bg-blue-700 text-white shadow-xl rounded-full font-bold text-xl px-8 py-7">
           Нэмэх
@@ -11,7 +11,19 @@ export interface CodeSnippet {
   solution: string;
   language: Language
   createdAt: Date
-  comments: string[]
+}
+
+export interface CodeSnippetSummary {
+  id: number;
+  name: string;
+  language: Language
+  createdAt: Date
+  commentCount: number
+}
+
+export interface CodeSnippetPage {
+  items: CodeSnippetSummary[]
+  nextCursor: string | null
 }
 
 export interface CodeExecutionResponse {